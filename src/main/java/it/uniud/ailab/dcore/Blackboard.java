@@ -27,11 +27,17 @@ import it.uniud.ailab.dcore.persistence.DocumentComposite;
 import it.uniud.ailab.dcore.annotation.Annotation;
 import it.uniud.ailab.dcore.persistence.Gram;
 import it.uniud.ailab.dcore.persistence.Keyphrase;
+import it.uniud.ailab.dcore.persistence.Mention;
 import it.uniud.ailab.dcore.persistence.Sentence;
 import it.uniud.ailab.dcore.utils.DocumentUtils;
+import it.uniud.ailab.dcore.utils.KeyphraseRanking;
+import it.uniud.ailab.dcore.utils.SymbolTable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
@@ -77,6 +83,18 @@ public class Blackboard {
      */
     private List<Annotation> annotations;
 
+    /**
+     * The table of the strings of the tokens of the document. A new table is
+     * created with every document, so that the strings of a document are 
+     * released with it.
+     */
+    private SymbolTable symbols;
+
+    /**
+     * The ranking of the keyphrases, kept until the keyphrases change.
+     */
+    private KeyphraseRanking keyphraseRanking;
+
     /**
      * Instantiates an empty blackboard.
      */
@@ -92,10 +110,27 @@ public class Blackboard {
      * @param documentId the output-friendly identifier of the document
      */
     public final void createDocument(String rawText, String documentId) {
+        createDocument(rawText, documentId, new SymbolTable());
+    }
+
+    /**
+     * Initializes the blackboard with a new document whose tokens are 
+     * interned in an existing symbol table, e.g. the table of a larger 
+     * document the new one is part of. This will destroy any information 
+     * previously held by the blackboard.
+     *
+     * @param rawText the text of the new document.
+     * @param documentId the output-friendly identifier of the document
+     * @param symbols the symbol table of the document.
+     */
+    public final void createDocument(String rawText, String documentId,
+            SymbolTable symbols) {
         this.rawText = rawText;
         this.document = new DocumentComposite(rawText, documentId);
         this.generalNGramsContainer = new HashMap<>();
         this.annotations = new ArrayList<>();
+        this.symbols = symbols;
+        this.keyphraseRanking = null;
     }
 
     /**
@@ -109,6 +144,8 @@ public class Blackboard {
         this.document = new DocumentComposite(rawText, DEFAULT_DOCUMENT_ID);
         this.generalNGramsContainer = new HashMap<>();
         this.annotations = new ArrayList<>();
+        this.symbols = new SymbolTable();
+        this.keyphraseRanking = null;
     }
 
     /**
@@ -122,6 +159,17 @@ public class Blackboard {
         return document;
     }
 
+    /**
+     * Gets the symbol table of the document, where the bootstrappers should
+     * intern the strings of the tokens they create.
+     *
+     * @return the symbol table of the document.
+     */
+    @JsonIgnore
+    public SymbolTable getSymbolTable() {
+        return symbols;
+    }
+
     /**
      * Gets the raw text (i.e. unprocessed) of the document.
      *
@@ -164,6 +212,7 @@ public class Blackboard {
         gram.addAppaerance(unit);
         unit.addGram(gram);
         generalNGramsContainer.put(newGram.getType(), grams);
+        keyphraseRanking = null;
     }
 
     public void addGram(Gram newGram) {
@@ -186,8 +235,86 @@ public class Blackboard {
         }
 
         generalNGramsContainer.put(newGram.getType(), grams);
+        keyphraseRanking = null;
     }
     
+    /**
+     * Merges the grams and the document-wide annotations of another 
+     * blackboard into this one. Grams that are not in this blackboard are 
+     * moved as they are, with their annotations; grams that are already 
+     * present get the surfaces, the appearances, the references (for 
+     * mentions) and the annotations they don't have yet of the other gram, 
+     * and the sentences of the other blackboard are updated to point to 
+     * them. The document structure of the other blackboard is not merged.
+     *
+     * @param other the blackboard to merge.
+     */
+    public void merge(Blackboard other) {
+
+        for (Map.Entry<String, Map<String, Gram>> e
+                : other.generalNGramsContainer.entrySet()) {
+
+            Map<String, Gram> grams = generalNGramsContainer.get(e.getKey());
+            if (grams == null) {
+                grams = new HashMap<>();
+                generalNGramsContainer.put(e.getKey(), grams);
+            }
+
+            // the grams of the other blackboard that have been replaced
+            Map<Gram, Gram> replaced = new IdentityHashMap<>();
+
+            for (Gram g : e.getValue().values()) {
+                Gram gram = grams.get(g.getIdentifier());
+                if (gram == null) {
+                    grams.put(g.getIdentifier(), g);
+                } else {
+                    mergeGram(gram, g);
+                    replaced.put(g, gram);
+                }
+            }
+
+            if (!replaced.isEmpty()) {
+                for (Sentence s : DocumentUtils.getSentences(other.document)) {
+                    s.getGrams().replaceAll(
+                            (g) -> replaced.getOrDefault(g, g));
+                }
+            }
+        }
+
+        annotations.addAll(other.annotations);
+        keyphraseRanking = null;
+    }
+
+    /**
+     * Merges a gram in another one with the same identifier.
+     *
+     * @param gram the gram that is kept.
+     * @param other the gram to merge.
+     */
+    private static void mergeGram(Gram gram, Gram other) {
+
+        gram.addSurfaces(other.getSurfaces(), other.getTokenLists());
+
+        if (other.getAppaerances() != null) {
+            for (DocumentComponent c : other.getAppaerances()) {
+                gram.addAppaerance(c);
+            }
+        }
+
+        if (gram instanceof Mention && other instanceof Mention) {
+            for (Mention.Reference r : ((Mention) other).getReferences()) {
+                ((Mention) gram).addReference(
+                        r.getIdentifier(), r.getTokens(), r.getType());
+            }
+        }
+
+        other.forEachAnnotation((a) -> {
+            if (!gram.hasAnnotation(a.getAnnotator())) {
+                gram.addAnnotation(a);
+            }
+        });
+    }
+
     /**
      * Get the all the different kind of grams found in the document. This
      * grams are divided by type, stored in a Map using their identifier as 
@@ -228,6 +355,36 @@ public class Blackboard {
         return kps != null ? new ArrayList(kps.values()) : new ArrayList();
     }
 
+    /**
+     * Ranks the keyphrases found in the document by their score. The ranking
+     * is kept until a gram is added or removed through the blackboard, so 
+     * asking for it many times costs nothing; since the ranking reads the 
+     * scores only when it's created, annotators that change the scores must
+     * call {@link #invalidateKeyphraseRanking()} afterwards.
+     *
+     * @return the ranking of the keyphrases.
+     */
+    @JsonIgnore
+    public KeyphraseRanking getKeyphraseRanking() {
+        if (keyphraseRanking == null) {
+            Collection<Keyphrase> keyphrases
+                    = getGramsByType(Keyphrase.KEYPHRASE);
+            keyphraseRanking = new KeyphraseRanking(keyphrases != null
+                    ? keyphrases : new ArrayList<>());
+        }
+        return keyphraseRanking;
+    }
+
+    /**
+     * Discards the ranking of the keyphrases, so that the next call to
+     * {@link #getKeyphraseRanking()} reads the scores again. Call it after
+     * changing the scores of the keyphrases, or after changing the grams
+     * without using the blackboard, e.g. through {@link #getGrams()}.
+     */
+    public void invalidateKeyphraseRanking() {
+        keyphraseRanking = null;
+    }
+
     /**
      * Removes a keyphrase from the document because it's no more relevant, or
      * useful, or for whatever reason an annotator thinks so.
@@ -249,11 +406,40 @@ public class Blackboard {
     public void removeGram(String type,Gram g) {
         generalNGramsContainer.get(type)
                 .remove(g.getIdentifier());
+        keyphraseRanking = null;
 
         for (Sentence s : DocumentUtils.getSentences(document)) {
             s.removeGram(g);
         }
     }
+    
+    /**
+     * Removes many grams of the same type from the document at once. This 
+     * is equivalent to calling 
+     * {@link #removeGram(java.lang.String, it.uniud.ailab.dcore.persistence.Gram)}
+     * for every gram, but visits the sentences of the document only once.
+     *
+     * @param type the type of the grams to remove
+     * @param toRemove the grams to remove.
+     */
+    public void removeGrams(String type, Collection<? extends Gram> toRemove) {
+        
+        if (toRemove.isEmpty()) {
+            return;
+        }
+        
+        Set<String> identifiers = new HashSet<>();
+        for (Gram g : toRemove) {
+            identifiers.add(g.getIdentifier());
+        }
+        
+        generalNGramsContainer.get(type).keySet().removeAll(identifiers);
+        keyphraseRanking = null;
+
+        for (Sentence s : DocumentUtils.getSentences(document)) {
+            s.removeGrams(identifiers);
+        }
+    }
 
     /**
      * Adds an annotation in the blackboard.
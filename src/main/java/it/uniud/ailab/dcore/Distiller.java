@@ -20,25 +20,35 @@ package it.uniud.ailab.dcore;
 
 import it.uniud.ailab.dcore.DistilledOutput.DetectedGram;
 import it.uniud.ailab.dcore.DistilledOutput.InferredConcept;
+import it.uniud.ailab.dcore.annotation.AnnotationException;
 import it.uniud.ailab.dcore.annotation.Annotator;
 import it.uniud.ailab.dcore.annotation.annotations.InferenceAnnotation;
 import it.uniud.ailab.dcore.annotation.annotations.UriAnnotation;
 import it.uniud.ailab.dcore.annotation.annotators.GenericEvaluatorAnnotator;
 import static it.uniud.ailab.dcore.annotation.annotators.GenericWikipediaAnnotator.WIKIURI;
 import it.uniud.ailab.dcore.annotation.annotators.WikipediaInferenceAnnotator;
-import it.uniud.ailab.dcore.persistence.Gram;
+import it.uniud.ailab.dcore.persistence.DocumentComponent;
+import it.uniud.ailab.dcore.persistence.DocumentComposite;
 import it.uniud.ailab.dcore.persistence.Keyphrase;
+import it.uniud.ailab.dcore.utils.KeyphraseRanking;
+import it.uniud.ailab.dcore.wrappers.external.CybozuLanguageDetectorAnnotator;
 import static it.uniud.ailab.dcore.utils.StageUtils.getStageName;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.Locale;
 import org.springframework.beans.factory.annotation.Required;
 
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * The information extractor object. This is the class that runs the different
@@ -69,7 +79,7 @@ public class Distiller {
     /**
      * The Object that will contain the text all its annotations.
      */
-    private Blackboard blackboard;
+    private volatile Blackboard blackboard;
     
     /**
      * The verbose mode flag. If the flag is set to true, Distiller will
@@ -77,6 +87,22 @@ public class Distiller {
      */
     private boolean verbose = false;
 
+    /**
+     * If true, the language is detected separately for every section of the
+     * document. Default is false.
+     */
+    private boolean sectionLanguageDetection = false;
+
+    /**
+     * The minimum length of a section whose language is detected separately.
+     */
+    private int minSectionLength = 200;
+
+    /**
+     * The maximum number of languages processed at the same time.
+     */
+    private int sectionThreads = Runtime.getRuntime().availableProcessors();
+
     /**
      * Sets the language detector.
      *
@@ -139,6 +165,45 @@ public class Distiller {
         this.verbose = verbose;
     }
 
+    /**
+     * Sets the per-section language detection. If true, and no locale has
+     * been set, the document is split in sections (i.e. paragraphs separated
+     * by an empty line) and the language of every section is detected 
+     * separately. The sections are then processed by the pipeline of their
+     * language, concurrently, and the results are merged in the same 
+     * blackboard. This allows to correctly process documents written in more
+     * than one language. Default is false.
+     *
+     * @param sectionLanguageDetection true to detect the language of every
+     * section.
+     */
+    public void setSectionLanguageDetection(boolean sectionLanguageDetection) {
+        this.sectionLanguageDetection = sectionLanguageDetection;
+    }
+
+    /**
+     * Sets the minimum length of the sections whose language is detected
+     * separately: shorter paragraphs are joined with the following ones, 
+     * because the detection on short texts is not reliable. Default is 200
+     * characters.
+     *
+     * @param minSectionLength the minimum length of a section.
+     */
+    public void setMinSectionLength(int minSectionLength) {
+        this.minSectionLength = minSectionLength;
+    }
+
+    /**
+     * Sets the maximum number of languages processed at the same time when 
+     * per-section language detection is active. Default is the number of 
+     * available processors.
+     *
+     * @param sectionThreads the number of languages processed concurrently.
+     */
+    public void setSectionThreads(int sectionThreads) {
+        this.sectionThreads = Math.max(1, sectionThreads);
+    }
+
     /**
      * Gets the verbose mode of the Distiller.
      * @return TRUE if the Distillation is set to VERBOSE mode.
@@ -151,19 +216,41 @@ public class Distiller {
     /**
      * Perform the extraction of keyphrases of a specified string, and returns
      * the blackboard filled with document and annotations.
+     * 
+     * Many documents can be distilled at the same time by the same Distiller,
+     * as long as its language detector can be used concurrently; in that
+     * case, {@link #getBlackboard()} returns the blackboard of the last 
+     * distillation completed.
      *
      * @param text the text to distill.
      * @return the blackboard filled with the processed text
      */
     public Blackboard distillToBlackboard(String text) {
 
-        blackboard = new Blackboard();
+        Blackboard blackboard = new Blackboard();
         blackboard.createDocument(text);
 
+        // the sections of the document, grouped by language
+        Map<Locale, List<String>> sections = null;
+
         if (documentLocale == null) // if no language has been set, automatically detect it.
         {
             if (languageDetector != null) {
-                languageDetector.annotate(blackboard, blackboard.getStructure());
+                // don't waste time on languages we can't process
+                if (languageDetector instanceof CybozuLanguageDetectorAnnotator
+                        && ((CybozuLanguageDetectorAnnotator) languageDetector)
+                        .isRestrictedToPipelines()) {
+                    ((CybozuLanguageDetectorAnnotator) languageDetector)
+                            .setCandidateLocales(pipelines.keySet());
+                }
+
+                if (sectionLanguageDetection) {
+                    sections = detectSections(text);
+                    blackboard.getStructure().setLanguage(
+                            sections.keySet().iterator().next());
+                } else {
+                    languageDetector.annotate(blackboard, blackboard.getStructure());
+                }
             } else // but if there's no language and no language detector, 
             // throw an exception.
             {
@@ -175,29 +262,237 @@ public class Distiller {
             blackboard.getStructure().setLanguage(documentLocale);
         }
 
-        Pipeline pipeline = pipelines.get(blackboard.getStructure().getLanguage());
+        if (sections != null && sections.size() > 1) {
+            // mixed-language document
+            distillSections(sections, blackboard);
+        } else {
+            runPipeline(blackboard);
+        }
+
+        if (verbose) {
+            System.out.println("Extraction complete!");
+            System.out.println();
+        }
+
+        this.blackboard = blackboard;
+        return blackboard;
+    }
+
+    /**
+     * Runs the pipeline of the language of the document contained in a
+     * blackboard.
+     *
+     * @param b the blackboard to process.
+     */
+    private void runPipeline(Blackboard b) {
+        runStages(getStages(b.getStructure().getLanguage()), b,
+                Collections.emptySet());
+    }
+
+    /**
+     * Gets a copy of the stages of the pipeline of a language.
+     *
+     * @param language the language.
+     * @return the stages of the pipeline.
+     */
+    private List<Stage> getStages(Locale language) {
+
+        Pipeline pipeline = pipelines.get(language);
 
         if (pipeline == null) {
             throw new DistillerException("No pipeline for the language "
-                    + blackboard.getStructure().getLanguage().getLanguage());
+                    + language.getLanguage());
         }
 
-        for (Stage stage : pipeline.getStages()) {
+        return pipeline.getStages();
+    }
+
+    /**
+     * Gets the position of the first document-level stage of a pipeline.
+     *
+     * @param stages the stages of the pipeline.
+     * @return the index of the first document-level stage, or the number of
+     * stages if there is none.
+     */
+    private static int getDocumentLevelStart(List<Stage> stages) {
+        int i = 0;
+        while (i < stages.size() && !stages.get(i).isDocumentLevel()) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Runs some stages on a blackboard.
+     *
+     * @param stages the stages to run.
+     * @param b the blackboard to process.
+     * @param downstreamRequirements the annotations required by the stages
+     * that will run after these ones.
+     */
+    private void runStages(List<Stage> stages, Blackboard b,
+            Set<String> downstreamRequirements) {
+        
+        // let every stage know what the following ones need, so that
+        // expensive annotations are produced only when they will be used
+        Pipeline.prepareStages(stages, downstreamRequirements);
+
+        for (Stage stage : stages) {
             
             if (verbose) {
                 System.out.println(String.format("Running %s...",
                         getStageName(stage)));
             }
             
-            stage.run(blackboard);
+            stage.run(b);
         }
-        
-        if (verbose) {
-            System.out.println("Extraction complete!");
-            System.out.println();
+    }
+
+    /**
+     * Splits a text in sections and detects the language of every section.
+     * Paragraphs shorter than minSectionLength are joined with the following
+     * ones before the detection; if the detection fails, the section gets 
+     * the language of the previous one.
+     *
+     * @param text the text to split.
+     * @return the sections of the document grouped by language, in order of
+     * appearance of the languages.
+     */
+    private Map<Locale, List<String>> detectSections(String text) {
+
+        Map<Locale, List<String>> sections = new LinkedHashMap<>();
+        List<String> undetected = new ArrayList<>();
+        Locale previous = null;
+
+        StringBuilder section = new StringBuilder();
+        String[] paragraphs = text.split("\\n\\s*\\n");
+
+        for (int i = 0; i < paragraphs.length; i++) {
+            if (section.length() > 0) {
+                section.append("\n\n");
+            }
+            section.append(paragraphs[i]);
+
+            if (section.length() < minSectionLength
+                    && i < paragraphs.length - 1) {
+                continue;
+            }
+
+            Locale language = previous;
+            DocumentComponent component = new DocumentComposite(
+                    section.toString(), "Section");
+            try {
+                languageDetector.annotate(new Blackboard(), component);
+                language = component.getLanguage();
+            } catch (AnnotationException ex) {
+                // not enough evidence: keep the previous language
+            }
+
+            if (language == null) {
+                // no language yet: wait for the first detected section
+                undetected.add(section.toString());
+            } else {
+                List<String> texts = sections.get(language);
+                if (texts == null) {
+                    texts = new ArrayList<>();
+                    sections.put(language, texts);
+                }
+                texts.addAll(undetected);
+                undetected.clear();
+                texts.add(section.toString());
+                previous = language;
+            }
+            section.setLength(0);
         }
 
-        return blackboard;
+        if (sections.isEmpty()) {
+            throw new DistillerException(
+                    "I can't decide the language of the document.");
+        }
+
+        return sections;
+    }
+
+    /**
+     * Processes every group of sections with the pipeline of its language, 
+     * concurrently, and merges the results in the blackboard. Every group 
+     * becomes a child of the document root, tagged with its language; the 
+     * document root gets the language with the most text.
+     * 
+     * Only the stages that precede the first document-level stage of every
+     * pipeline are run on the groups; the document-level stages of the 
+     * pipeline of the main language, such as statistics, scoring and 
+     * filtering, run once on the merged document.
+     *
+     * @param sections the sections of the document grouped by language.
+     * @param blackboard the blackboard of the whole document.
+     */
+    private void distillSections(Map<Locale, List<String>> sections,
+            Blackboard blackboard) {
+
+        Map<Locale, Blackboard> blackboards = new LinkedHashMap<>();
+        Locale mainLanguage = null;
+        int mainLength = -1;
+
+        for (Map.Entry<Locale, List<String>> e : sections.entrySet()) {
+            Blackboard b = new Blackboard();
+            // the sections share the symbol table of the document, since 
+            // their grams are merged in it
+            b.createDocument(String.join("\n\n", e.getValue()),
+                    e.getKey().toLanguageTag(), blackboard.getSymbolTable());
+            b.getStructure().setLanguage(e.getKey());
+            blackboards.put(e.getKey(), b);
+
+            if (b.getText().length() > mainLength) {
+                mainLength = b.getText().length();
+                mainLanguage = e.getKey();
+            }
+        }
+
+        // the document-level stages of the main language run on the whole
+        // document, after the others
+        List<Stage> mainStages = getStages(mainLanguage);
+        List<Stage> documentStages = mainStages.subList(
+                getDocumentLevelStart(mainStages), mainStages.size());
+        Set<String> documentRequirements = new HashSet<>();
+        for (Stage stage : documentStages) {
+            documentRequirements.addAll(stage.getRequiredAnnotations());
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(sectionThreads, blackboards.size()));
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (Blackboard b : blackboards.values()) {
+                List<Stage> stages = getStages(b.getStructure().getLanguage());
+                results.add(executor.submit(() -> runStages(
+                        stages.subList(0, getDocumentLevelStart(stages)), b,
+                        documentRequirements)));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new DistillerException("Distillation interrupted", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new DistillerException("Error while processing a section",
+                    ex.getCause());
+        } finally {
+            executor.shutdown();
+        }
+
+        DocumentComposite root = (DocumentComposite) blackboard.getStructure();
+        root.setLanguage(mainLanguage);
+        for (Blackboard b : blackboards.values()) {
+            root.addComponent(b.getStructure());
+            blackboard.merge(b);
+        }
+        
+        runStages(documentStages, blackboard, Collections.emptySet());
     }
 
     /**
@@ -214,30 +509,20 @@ public class Distiller {
 
         output.setOriginalText(text);
 
-        distillToBlackboard(text);
+        Blackboard blackboard = distillToBlackboard(text);
 
         output.setDetectedLanguage(blackboard.getStructure().
                 getLanguage().getLanguage());
 
         // Copy the grams, sorted by descending score
-        output.initializeGrams(blackboard.getKeyphrases().size());
+        KeyphraseRanking ranking = blackboard.getKeyphraseRanking();
+        output.initializeGrams(ranking.size());
         
-        Collection<Gram> grams = blackboard.getKeyphrases();
-        Map<Keyphrase, Double> scoredGrams = new HashMap<>();
-
-        for (Gram g : grams) {
-            Keyphrase k = (Keyphrase)g;
-            scoredGrams.put(k, k.getFeature(GenericEvaluatorAnnotator.SCORE));
-        }
-
-        List<Map.Entry<Keyphrase, Double>> sortedGrams
-                = scoredGrams.entrySet().stream().sorted(
-                        Collections.reverseOrder(Map.Entry.comparingByValue()))
-                .collect(Collectors.toList());
+        List<Keyphrase> sortedGrams = ranking.getTop(ranking.size());
 
         for (int i = 0; i < output.getGrams().length; i++) {
             DetectedGram gram = output.getGrams()[i];
-            Keyphrase originalGram = sortedGrams.get(i).getKey();
+            Keyphrase originalGram = sortedGrams.get(i);
             gram.setSurface(originalGram.getSurface());
             gram.setKeyphraseness(originalGram.getFeature(
                     it.uniud.ailab.dcore.annotation.annotators.GenericEvaluatorAnnotator.SCORE));
@@ -20,8 +20,10 @@ package it.uniud.ailab.dcore;
 
 import com.rits.cloning.Cloner;
 import it.uniud.ailab.dcore.annotation.Annotator;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 
 /**
  * A pipeline of stages.
@@ -69,5 +71,69 @@ public class Pipeline implements Stage {
         for (Stage s : stages)
             s.run(blackboard);
     }
+
+    /**
+     * Returns the annotations required by all the stages of the pipeline.
+     * 
+     * @return the annotations required by the stages of the pipeline.
+     */
+    @Override
+    public Set<String> getRequiredAnnotations() {
+        Set<String> required = new HashSet<>();
+        for (Stage s : stages) {
+            required.addAll(s.getRequiredAnnotations());
+        }
+        return required;
+    }
+
+    /**
+     * A pipeline is document-level if all its stages are.
+     * 
+     * @return true if all the stages of the pipeline are document-level.
+     */
+    @Override
+    public boolean isDocumentLevel() {
+        for (Stage s : stages) {
+            if (!s.isDocumentLevel()) {
+                return false;
+            }
+        }
+        return !stages.isEmpty();
+    }
+
+    /**
+     * Prepares every stage of the pipeline, passing it the annotations 
+     * required by the stages that follow it in the pipeline and by the
+     * stages that will run after the pipeline itself.
+     * 
+     * @param downstreamRequirements the annotations required after the 
+     * pipeline.
+     */
+    @Override
+    public void prepare(Set<String> downstreamRequirements) {
+        prepareStages(stages, downstreamRequirements);
+    }
+
+    /**
+     * Prepares a list of stages, passing to every stage the annotations 
+     * required by the stages that follow it in the list, plus the ones
+     * provided as parameter.
+     * 
+     * @param stages the stages to prepare, in running order.
+     * @param downstreamRequirements the annotations required after the last 
+     * stage of the list.
+     */
+    public static void prepareStages(List<Stage> stages, 
+            Set<String> downstreamRequirements) {
+        
+        // walk the list backwards, so that the requirements of the 
+        // following stages can be accumulated in a single pass
+        Set<String> required = new HashSet<>(downstreamRequirements);
+        for (int i = stages.size() - 1; i >= 0; i--) {
+            Stage s = stages.get(i);
+            s.prepare(new HashSet<>(required));
+            required.addAll(s.getRequiredAnnotations());
+        }
+    }
     
 }
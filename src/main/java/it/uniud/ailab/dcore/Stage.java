@@ -18,6 +18,9 @@
  */
 package it.uniud.ailab.dcore;
 
+import java.util.Collections;
+import java.util.Set;
+
 /**
  * A stage of the pipeline.
  * 
@@ -32,4 +35,45 @@ public interface Stage {
      */
     public abstract void run(Blackboard b);
     
+    /**
+     * Gets the identifiers of the annotations (or gram types) that the stage
+     * expects to find on the blackboard when it runs, for example
+     * {@link it.uniud.ailab.dcore.annotation.DefaultAnnotations#PHRASES_COUNT}.
+     * Stages that precede this one in the pipeline may use this information
+     * to skip the work that nobody is going to read. By default, a stage
+     * requires nothing.
+     * 
+     * @return the identifiers of the annotations required by the stage.
+     */
+    public default Set<String> getRequiredAnnotations() {
+        return Collections.emptySet();
+    }
+    
+    /**
+     * Informs the stage of the annotations required by the stages that will 
+     * run after it. This method is called before the stage runs; stages that
+     * can produce expensive annotations on demand (such as parse-based 
+     * features) should override it to produce only what is actually needed.
+     * By default, nothing is done.
+     * 
+     * @param downstreamRequirements the identifiers of the annotations 
+     * required by the stages that follow this one.
+     */
+    public default void prepare(Set<String> downstreamRequirements) {
+    }
+    
+    /**
+     * Tells if the stage works on the document as a whole, for example
+     * computing statistics over all its sentences, scoring the grams or
+     * filtering them. When the sections of a document are written in 
+     * different languages, the stages that precede the first document-level
+     * one run separately on every language, and the remaining ones run once
+     * on the whole document. By default, a stage is not document-level.
+     * 
+     * @return true if the stage must see the whole document.
+     */
+    public default boolean isDocumentLevel() {
+        return false;
+    }
+    
 }
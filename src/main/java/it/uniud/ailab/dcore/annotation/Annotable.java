@@ -18,21 +18,49 @@
  */
 package it.uniud.ailab.dcore.annotation;
 
-import java.util.HashMap;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * A generic object that can be annotated. 
  * 
+ * Since there are many annotable objects (one for each token of a document)
+ * and most of them have few annotations, the annotations are stored in the
+ * cheapest possible way: objects with no annotations share an empty array,
+ * objects with up to {@link #INLINE_ANNOTATIONS} annotations keep them in a
+ * small array, and only objects with more annotations use a map. Annotations
+ * are returned in the order in which they have been added.
  *
  * @author Marco Basaldella
  */
 public abstract class Annotable {
     
     /**
-     * The list of annotation.
+     * The maximum number of annotations kept in the array; when there are
+     * more annotations, they are moved to a map.
      */
-    private final Map<String,Annotation> annotations = new HashMap<>();
+    public static final int INLINE_ANNOTATIONS = 4;
+    
+    /**
+     * The array shared by all the objects with no annotations.
+     */
+    private static final Annotation[] NO_ANNOTATIONS = new Annotation[0];
+    
+    /**
+     * The annotations, when they are not more than
+     * {@link #INLINE_ANNOTATIONS}; the array is as long as the number of
+     * annotations.
+     */
+    private Annotation[] inlineAnnotations = NO_ANNOTATIONS;
+    
+    /**
+     * The annotations, indexed by annotator, when they are more than
+     * {@link #INLINE_ANNOTATIONS}; null otherwise.
+     */
+    private Map<String,Annotation> annotations = null;
     
     /**
      * The identifier or the annotated object.
@@ -64,7 +92,42 @@ public abstract class Annotable {
      * @param ann the annotation to add.
      */
     public void addAnnotation(Annotation ann) {
-        annotations.put(ann.getAnnotator(),ann);
+        
+        if (annotations != null) {
+            annotations.put(ann.getAnnotator(),ann);
+            return;
+        }
+        
+        int i = indexOf(ann.getAnnotator());
+        if (i >= 0) {
+            inlineAnnotations[i] = ann;
+        } else if (inlineAnnotations.length < INLINE_ANNOTATIONS) {
+            inlineAnnotations = Arrays.copyOf(inlineAnnotations, 
+                    inlineAnnotations.length + 1);
+            inlineAnnotations[inlineAnnotations.length - 1] = ann;
+        } else {
+            annotations = new LinkedHashMap<>();
+            for (Annotation a : inlineAnnotations) {
+                annotations.put(a.getAnnotator(), a);
+            }
+            annotations.put(ann.getAnnotator(), ann);
+            inlineAnnotations = NO_ANNOTATIONS;
+        }
+    }
+    
+    /**
+     * Finds an annotation in the array of the annotations.
+     * 
+     * @param annotator the annotator to search.
+     * @return the position of the annotation, or -1 if not found.
+     */
+    private int indexOf(String annotator) {
+        for (int i = 0; i < inlineAnnotations.length; i++) {
+            if (inlineAnnotations[i].getAnnotator().equals(annotator)) {
+                return i;
+            }
+        }
+        return -1;
     }
     
     /**
@@ -74,16 +137,54 @@ public abstract class Annotable {
      * @return the annotation requested, {@code null} if not found.
      */
     public Annotation getAnnotation(String annotator) {
-        return annotations.get(annotator);
+        if (annotations != null) {
+            return annotations.get(annotator);
+        }
+        int i = indexOf(annotator);
+        return i < 0 ? null : inlineAnnotations[i];
     }
     
     /**
-     * Get all the annotations stored in the object.
+     * Get all the annotations stored in the object. The array is a copy, so
+     * to just read the annotations use 
+     * {@link #forEachAnnotation(java.util.function.Consumer)} instead.
      * 
      * @return all the annotations.
      */
     public Annotation[] getAnnotations() {
-        return annotations.values().toArray(new Annotation[annotations.size()]);
+        if (annotations != null) {
+            return annotations.values().toArray(
+                    new Annotation[annotations.size()]);
+        }
+        return inlineAnnotations.length == 0 ? NO_ANNOTATIONS
+                : inlineAnnotations.clone();
+    }
+    
+    /**
+     * Performs an action on every annotation of the object, without copying
+     * them.
+     * 
+     * @param action the action to perform.
+     */
+    public void forEachAnnotation(Consumer<? super Annotation> action) {
+        if (annotations != null) {
+            annotations.values().forEach(action);
+        } else {
+            for (Annotation a : inlineAnnotations) {
+                action.accept(a);
+            }
+        }
+    }
+    
+    /**
+     * Get the number of annotations stored in the object.
+     * 
+     * @return the number of annotations.
+     */
+    @JsonIgnore
+    public int getAnnotationCount() {
+        return annotations != null 
+                ? annotations.size() : inlineAnnotations.length;
     }
     
     /**
@@ -94,6 +195,7 @@ public abstract class Annotable {
      * annotator provided as input, false otherwise.
      */
     public boolean hasAnnotation(String annotator) {
-        return annotations.containsKey(annotator);
+        return annotations != null 
+                ? annotations.containsKey(annotator) : indexOf(annotator) >= 0;
     }
 }
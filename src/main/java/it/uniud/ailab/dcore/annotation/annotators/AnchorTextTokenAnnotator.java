@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2016 Artificial Intelligence
+ * Laboratory @ University of Udine.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package it.uniud.ailab.dcore.annotation.annotators;
+
+import it.uniud.ailab.dcore.Blackboard;
+import it.uniud.ailab.dcore.annotation.AnnotationException;
+import it.uniud.ailab.dcore.annotation.Annotator;
+import it.uniud.ailab.dcore.annotation.annotations.TextAnnotation;
+import it.uniud.ailab.dcore.persistence.DocumentComponent;
+import it.uniud.ailab.dcore.persistence.Sentence;
+import it.uniud.ailab.dcore.persistence.Token;
+import it.uniud.ailab.dcore.utils.AnchorDictionary;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.springframework.beans.factory.annotation.Required;
+
+/**
+ * Adds the Wikiflag as defined in
+ * {@link it.uniud.ailab.dcore.annotation.annotators.GenericWikipediaAnnotator}
+ * to sequence of tokens which text coincides with the anchor text of a link
+ * of Wikipedia. This annotator is a local alternative to the
+ * {@link it.uniud.ailab.dcore.annotation.annotators.TagMeTokenAnnotator}:
+ * the anchors are looked up in a dictionary (see {@link AnchorDictionary})
+ * with a single pass over the tokens of every sentence, with no need to query
+ * a remote service.
+ *
+ * The dictionaries are loaded once per process and shared by all the
+ * instances of the annotator.
+ *
+ * @author agent
+ */
+public class AnchorTextTokenAnnotator implements Annotator, GenericWikipediaAnnotator {
+
+    /**
+     * The default minimum link probability of an anchor.
+     */
+    public static final double DEFAULT_MIN_LINK_PROBABILITY = 0.15;
+
+    /**
+     * The dictionaries loaded so far, indexed by path and threshold.
+     */
+    private static final Map<String, AnchorDictionary> dictionaries
+            = new HashMap<>();
+
+    /**
+     * The paths of the dictionaries, one for every language.
+     */
+    private Map<Locale, String> dictionaryPaths;
+
+    /**
+     * The minimum link probability of an anchor: anchors that are rarely
+     * used as links are ignored.
+     */
+    private double minLinkProbability = DEFAULT_MIN_LINK_PROBABILITY;
+
+    /**
+     * Sets the paths of the anchor dictionaries, one for every language.
+     *
+     * @param dictionaryPaths the paths of the dictionaries.
+     */
+    @Required
+    public void setDictionaryPaths(Map<Locale, String> dictionaryPaths) {
+        this.dictionaryPaths = dictionaryPaths;
+    }
+
+    /**
+     * Sets the minimum link probability of the anchors to consider.
+     *
+     * @param minLinkProbability the minimum link probability.
+     */
+    public void setMinLinkProbability(double minLinkProbability) {
+        this.minLinkProbability = minLinkProbability;
+    }
+
+    /**
+     * Gets the dictionary stored in a file, loading it if needed.
+     *
+     * @param path the path of the dictionary.
+     * @param minLinkProbability the minimum link probability of the anchors.
+     * @return the dictionary.
+     * @throws IOException if the dictionary can't be read.
+     */
+    private static AnchorDictionary getDictionary(String path,
+            double minLinkProbability) throws IOException {
+        String key = path + "@" + minLinkProbability;
+        synchronized (dictionaries) {
+            AnchorDictionary dictionary = dictionaries.get(key);
+            if (dictionary == null) {
+                dictionary = new AnchorDictionary(new File(path),
+                        minLinkProbability);
+                dictionaries.put(key, dictionary);
+                Logger.getLogger(AnchorTextTokenAnnotator.class.getName()).log(
+                        Level.INFO, "Loaded {0} anchors from {1}",
+                        new Object[]{dictionary.size(), path});
+            }
+            return dictionary;
+        }
+    }
+
+    /**
+     * Annotates a single sentence with the Wikipedia flag. Used as base case
+     * for recursion.
+     *
+     * @param dictionary the dictionary of the anchors.
+     * @param sentence the sentence to annotate.
+     */
+    private void annotateSentence(AnchorDictionary dictionary,
+            Sentence sentence) {
+
+        List<Token> tokens = sentence.getTokens();
+        List<String> texts = new ArrayList<>(tokens.size());
+        for (Token t : tokens) {
+            texts.add(t.getText().toLowerCase(Locale.ROOT));
+        }
+
+        for (AnchorDictionary.Match m : dictionary.find(texts)) {
+            List<Token> matchedTokens = tokens.subList(m.getStart(), m.getEnd());
+            TextAnnotation ann = new TextAnnotation(WIKIFLAG,
+                    matchedTokens.toArray(new Token[matchedTokens.size()]),
+                    m.getTitle());
+
+            matchedTokens.stream().forEach(t -> {
+                t.addAnnotation(ann);
+            });
+        }
+    }
+
+    /**
+     * Annotates the document putting a flag over subsequent tokens which
+     * match the anchor text of a Wikipedia link.
+     *
+     * @param blackboard the blackboard to annotate.
+     * @param component the component to annotate.
+     */
+    @Override
+    public void annotate(Blackboard blackboard, DocumentComponent component) {
+
+        String path = dictionaryPaths.get(component.getLanguage());
+        if (path == null) {
+            throw new AnnotationException(this,
+                    "No anchor dictionary for the language "
+                    + component.getLanguage().getDisplayLanguage());
+        }
+
+        AnchorDictionary dictionary;
+        try {
+            dictionary = getDictionary(path, minLinkProbability);
+        } catch (IOException ex) {
+            throw new AnnotationException(this,
+                    "Error while loading the anchor dictionary " + path, ex);
+        }
+
+        annotate(dictionary, component);
+    }
+
+    /**
+     * Annotates a component and, recursively, its children.
+     *
+     * @param dictionary the dictionary of the anchors.
+     * @param component the component to annotate.
+     */
+    private void annotate(AnchorDictionary dictionary,
+            DocumentComponent component) {
+        if (!component.hasComponents()) {
+            annotateSentence(dictionary, (Sentence) component);
+        } else {
+            for (DocumentComponent c : component.getComponents()) {
+                annotate(dictionary, c);
+            }
+        }
+    }
+}
@@ -18,7 +18,9 @@
  */
 package it.uniud.ailab.dcore.annotation.annotators;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 import it.uniud.ailab.dcore.annotation.Annotator;
 import it.uniud.ailab.dcore.Blackboard;
 import it.uniud.ailab.dcore.annotation.DefaultAnnotations;
@@ -46,6 +48,17 @@ public class ChunkingNerAnnotator implements Annotator {
      */
     public static final String IS_NER = "IsANer";
 
+    /**
+     * The annotator needs the tokens to be annotated by a Named Entity
+     * Recognizer.
+     *
+     * @return the annotations required by the annotator.
+     */
+    @Override
+    public Set<String> getRequiredAnnotations() {
+        return Collections.singleton(DefaultAnnotations.IS_NER);
+    }
+
     /**
      * Annotates grams with semantic information.
      * <p>
@@ -18,10 +18,10 @@
  */
 package it.uniud.ailab.dcore.annotation.annotators;
 
-import com.sun.media.jfxmedia.logging.Logger;
 import java.util.List;
 import it.uniud.ailab.dcore.annotation.Annotator;
 import it.uniud.ailab.dcore.Blackboard;
+import it.uniud.ailab.dcore.annotation.DefaultAnnotations;
 import it.uniud.ailab.dcore.persistence.DocumentComponent;
 import it.uniud.ailab.dcore.persistence.Gram;
 import it.uniud.ailab.dcore.persistence.Keyphrase;
@@ -30,11 +30,15 @@ import it.uniud.ailab.dcore.persistence.Mention.Reference;
 import it.uniud.ailab.dcore.persistence.Sentence;
 import it.uniud.ailab.dcore.persistence.Token;
 import it.uniud.ailab.dcore.utils.DocumentUtils;
+import it.uniud.ailab.dcore.utils.MultiPatternMatcher;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Map;
-import java.util.regex.Pattern;
+import java.util.Set;
 
 /**
  * Annotates grams with linguistic features concerning anaphora and coreference
@@ -49,6 +53,10 @@ import java.util.regex.Pattern;
  * feature, that is defined as: total # of appearance of gram in A / total # of
  * appearance of gram in D, where A is the set of anaphoras and D the document.
  *
+ * The containment of grams in anaphoras and references is checked with
+ * multi-pattern automata, which find all the grams contained in an anaphora
+ * (and vice versa) in a single scan.
+ *
  * @author Giorgia Chiaradia
  */
 public class CoreferenceResolverAnnotator implements Annotator {
@@ -69,6 +77,20 @@ public class CoreferenceResolverAnnotator implements Annotator {
      */
     public static final String IN_ANAPHORA = "In_Anaphora";
 
+    /**
+     * The annotator needs the phrase count of the sentences and the mentions
+     * found by a coreference-aware bootstrapper, plus the gram frequency.
+     *
+     * @return the annotations required by the annotator.
+     */
+    @Override
+    public Set<String> getRequiredAnnotations() {
+        return new HashSet<>(Arrays.asList(
+                DefaultAnnotations.PHRASES_COUNT,
+                Mention.MENTION,
+                StatisticalAnnotator.FREQUENCY));
+    }
+
     /**
      * Annotates grams with linguistic information.
      * <p>
@@ -117,16 +139,7 @@ public class CoreferenceResolverAnnotator implements Annotator {
                 } else {
                     //if is proper name or nominal, create a string of the 
                     //stemmed form of the reference
-                    StringBuilder strBuilder = new StringBuilder();
-                    for (Token t : ref.getTokens()) {
-                        if (t.getStem() == null) {
-                            strBuilder.append(t.getLemma());
-                        } else {
-                            strBuilder.append(t.getStem());
-                        }
-                        strBuilder.append(" ");
-                    }
-                    String rootedRef = strBuilder.toString().trim();
+                    String rootedRef = getRootedForm(ref.getTokens());
 
                     //add the non pronominal reference(stemmed) to the global list 
                     notPronominalAnaphora.add(rootedRef);
@@ -134,67 +147,91 @@ public class CoreferenceResolverAnnotator implements Annotator {
             }
 
             //create a stemmed string for the anaphor n-gram
-            String rootedAnaphor = "";
-            for (Token t : ment.getAnaphorToken()) {
-                if (t.getStem() == null) {
-                    rootedAnaphor += t.getLemma() + " ";
-                } else {
-                    rootedAnaphor += t.getStem() + " ";
-                }
-            }
-            rootedAnaphor = rootedAnaphor.trim();
+            String rootedAnaphor = getRootedForm(ment.getAnaphorToken());
 
             //add the total # of references for the current anaphor to the map
             pronominalAnaphoraCounter.put(rootedAnaphor, numberOfRef);
         }
 
+        //collect the distinct candidate keyphrases of the component and 
+        //their stemmed form, in order of appearance
+        Map<Gram, Integer> indexes = new IdentityHashMap<>();
+        List<Keyphrase> keyphrases = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
+        for (Sentence s : sentences) {
+            for (Gram g : s.getGrams()) {
+                if (!indexes.containsKey(g)) {
+                    //assuming the gram is really a keyphrase
+                    Keyphrase k = (Keyphrase) g;
+                    indexes.put(k, keyphrases.size());
+                    keyphrases.add(k);
+                    keys.add(getRootedForm(k.getTokens()).toLowerCase());
+                }
+            }
+        }
+
+        List<String> anaphors = new ArrayList<>();
+        List<Double> anaphorCounts = new ArrayList<>();
+        for (Map.Entry<String, Double> e : pronominalAnaphoraCounter.entrySet()) {
+            anaphors.add(e.getKey().toLowerCase());
+            anaphorCounts.add(e.getValue());
+        }
+
+        //the highest number of pronominal references of an anaphor that 
+        //contains the keyphrase or vice-versa, matching whole words only
+        double[] scores = new double[keys.size()];
+
+        //check which keyphrases are contained in every anaphor...
+        MultiPatternMatcher keyMatcher = new MultiPatternMatcher(keys);
+        for (int i = 0; i < anaphors.size(); i++) {
+            String anaphor = anaphors.get(i);
+            double count = anaphorCounts.get(i);
+            keyMatcher.match(anaphor, (key, start, end) -> {
+                if (isWholeWord(anaphor, start, end)) {
+                    scores[key] = Math.max(scores[key], count);
+                }
+            });
+        }
+
+        //...and which anaphors are contained in every keyphrase
+        MultiPatternMatcher anaphorMatcher = new MultiPatternMatcher(anaphors);
+        for (int i = 0; i < keys.size(); i++) {
+            String key = keys.get(i);
+            int keyIndex = i;
+            anaphorMatcher.match(key, (anaphor, start, end) -> {
+                if (isWholeWord(key, start, end)) {
+                    scores[keyIndex] = Math.max(scores[keyIndex],
+                            anaphorCounts.get(anaphor));
+                }
+            });
+        }
+
+        //count the non pronominal references that contain every keyphrase
+        double[] inAnaphoraScores = new double[keys.size()];
+        int[] lastReference = new int[keys.size()];
+        Arrays.fill(lastReference, -1);
+        for (int i = 0; i < notPronominalAnaphora.size(); i++) {
+            String reference = notPronominalAnaphora.get(i).toLowerCase();
+            int referenceIndex = i;
+            keyMatcher.match(reference, (key, start, end) -> {
+                if (lastReference[key] != referenceIndex
+                        && isWholeWord(reference, start, end)) {
+                    lastReference[key] = referenceIndex;
+                    inAnaphoraScores[key]++;
+                }
+            });
+        }
+
         //for each sentence in the document
         for (Sentence s : sentences) {
             double score = 0; //initialize variable for NOR feature score
 
-            //for each candidate keyphrase control if the anaphor is present 
-            //in the n gram or vice-versa
             for (Gram g : s.getGrams()) {
-                //assuming the gram is really a keyphrase
                 Keyphrase k = (Keyphrase) g;
 
-                //create a stemmed form for the entire keyphrase
-                String key = "";
-                for (Token t : k.getTokens()) {
-                    if (t.getStem() == null) {
-                        key += t.getLemma() + " ";
-                    } else {
-                        key += t.getStem() + " ";
-                    }
-                }
-                key = key.trim();
-
-                //iterate on all the anaphors
-                for (String anaphor : pronominalAnaphoraCounter.keySet()) {
-                    //check if the anaphor contains or not the keyphrase
-                    //and vice-versa
-                    String escapedKey = Pattern.quote(key.toLowerCase());
-                    String escapedAnaphor = Pattern.quote(anaphor.toLowerCase());
-                    try {
-
-                        if (anaphor.toLowerCase()
-                                .matches(".*\\b" + escapedKey + "\\b.*")
-                                || key.toLowerCase()
-                                .matches(".*\\b" + escapedAnaphor + "\\b.*")) {
-                            double score1 = score;
-                            double score2 = pronominalAnaphoraCounter.get(anaphor);
-                            score = Math.max(score1, score2); //get the maximal score 
-                        }
-                    } catch (java.util.regex.PatternSyntaxException e) {
-                        Logger.logMsg(Logger.WARNING,
-                                "Error while matching pattern: \"" + key
-                                + "\" with anaphor: \"" + anaphor + "\"");
-                        Logger.logMsg(Logger.WARNING,
-                                "Escaped pattern: \"" + escapedKey
-                                + "\" ; escaped anaphor: \"" + escapedAnaphor + "\"");
-                    }
-
-                }
+                //the score is not reset between the grams of a sentence, so
+                //a gram gets the highest score of the grams before it
+                score = Math.max(score, scores[indexes.get(k)]);
 
                 if (score > 0) {//if n-gram is an anaphor
                     //normalize score for NOR by total # of phrases 
@@ -202,42 +239,55 @@ public class CoreferenceResolverAnnotator implements Annotator {
                 } else {
                     k.putFeature(NUMBER_OF_REFERENCE, 0.0);
                 }
+            }
+        }
 
-                double inAnaphoraScore = 0; //initialize inAnaphora score to zero
-                //get the term frequency 
-                double gramFreq = k.getFeature(StatisticalAnnotator.FREQUENCY);
-
-                //for each reference to the current anaphor
-                for (String reference : notPronominalAnaphora) {
-                    //check if an candidate is or not present in a reference
-
-                    String escapedKey = Pattern.quote(key.toLowerCase());
-                    try {
-
-                        if (reference.toLowerCase()
-                                .matches(".*\\b" + escapedKey + "\\b.*")) {
-                            inAnaphoraScore++;//if it is increment inAnaphora score
-                        }
-                    } catch (java.util.regex.PatternSyntaxException e) {
-                        Logger.logMsg(Logger.WARNING,
-                                "Error while matching pattern: \""
-                                + key.toLowerCase() + "\"");
-                        Logger.logMsg(Logger.WARNING,
-                                "Escaped pattern: \"" + escapedKey
-                                + "\"");
-                    }
-
-                }
+        for (int i = 0; i < keyphrases.size(); i++) {
+            Keyphrase k = keyphrases.get(i);
 
-                //assuring there aren't repetition or self references 
-                if (inAnaphoraScore >= gramFreq) {
-                    inAnaphoraScore = 0;
-                }
+            //get the term frequency 
+            double gramFreq = k.getFeature(StatisticalAnnotator.FREQUENCY);
+            double inAnaphoraScore = inAnaphoraScores[i];
 
-                //set the InAnaphora feature for the candidate, normalizing the 
-                //score to the candidate frequency
-                k.putFeature(IN_ANAPHORA, inAnaphoraScore / gramFreq);
+            //assuring there aren't repetition or self references 
+            if (inAnaphoraScore >= gramFreq) {
+                inAnaphoraScore = 0;
             }
+
+            //set the InAnaphora feature for the candidate, normalizing the 
+            //score to the candidate frequency
+            k.putFeature(IN_ANAPHORA, inAnaphoraScore / gramFreq);
+        }
+    }
+
+    /**
+     * Creates the stemmed form of a sequence of tokens, using the lemma of 
+     * the tokens that have no stem.
+     *
+     * @param tokens the tokens.
+     * @return the stems of the tokens, separated by spaces.
+     */
+    private static String getRootedForm(List<Token> tokens) {
+        StringBuilder rooted = new StringBuilder();
+        for (Token t : tokens) {
+            rooted.append(t.getStem() == null ? t.getLemma() : t.getStem())
+                    .append(' ');
         }
+        return rooted.toString().trim();
+    }
+
+    /**
+     * Checks if an occurrence of a string in a text is delimited by word 
+     * boundaries, as the <code>\b</code> regular expression construct 
+     * requires.
+     *
+     * @param text the text.
+     * @param start the start of the occurrence.
+     * @param end the end of the occurrence.
+     * @return true if the occurrence is delimited by word boundaries.
+     */
+    private static boolean isWholeWord(String text, int start, int end) {
+        return MultiPatternMatcher.isWordBoundary(text, start)
+                && MultiPatternMatcher.isWordBoundary(text, end);
     }
 }
@@ -23,9 +23,13 @@ import it.uniud.ailab.dcore.annotation.Annotator;
 import it.uniud.ailab.dcore.persistence.DocumentComponent;
 import it.uniud.ailab.dcore.persistence.Keyphrase;
 import it.uniud.ailab.dcore.persistence.Token;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Annotates grams with the Document Phrase Maximality (DPM) feature. DPM gives
@@ -34,6 +38,10 @@ import java.util.Map;
  * therefore are less interesting. DPM is explained in detail in the following
  * paper http://ceur-ws.org/Vol-1384/paper2.pdf
  *
+ * The phrases contained in a keyphrase are found by walking a trie of the
+ * stem sequences of all the keyphrases from every token of the keyphrase,
+ * so the annotator runs in time linear in the number of keyphrases.
+ *
  * WARNING : this annotator requires the
  * {@link it.uniud.ailab.dcore.annotation.annotators.StatisticalAnnotator} to be
  * run previously in the pipeline.
@@ -48,6 +56,26 @@ public class DocumentPhraseMaximalityAnnotator implements Annotator {
      */
     public static final String MAXIMALITY = "Maximality";
 
+    /**
+     * The annotator needs the frequency of the grams.
+     *
+     * @return the annotations required by the annotator.
+     */
+    @Override
+    public Set<String> getRequiredAnnotations() {
+        return Collections.singleton(StatisticalAnnotator.FREQUENCY);
+    }
+
+    /**
+     * The maximality of a gram depends on all the grams of the document.
+     *
+     * @return true.
+     */
+    @Override
+    public boolean isDocumentLevel() {
+        return true;
+    }
+
     /**
      * Annotates grams with the Maximality feature. Maximality gives a hint of
      * how much an n-gram is a concept of its own right. ngrams with low
@@ -64,41 +92,92 @@ public class DocumentPhraseMaximalityAnnotator implements Annotator {
      */
     @Override
     public void annotate(Blackboard blackboard, DocumentComponent component) {
-        Map<String, Keyphrase> surfaces = new HashMap<>();
 
         Collection<Keyphrase> allKPs
                 = blackboard.getGramsByType(Keyphrase.KEYPHRASE);
 
+        // Build a trie of the stem sequences of the keyphrases. When more
+        // keyphrases have the same stems, the last one represents them as
+        // a super-phrase of the others.
+        Map<Long, Integer> transitions = new HashMap<>();
+        List<Keyphrase> terminals = new ArrayList<>();
+        terminals.add(null);
+        int[] states = new int[allKPs.size()];
+
+        int i = 0;
         for (Keyphrase k : allKPs) {
-            String stemmedSurface = "";
+            int state = 0;
             for (Token t : k.getTokens()) {
-                stemmedSurface += t.getStem() + "§";
+                long key = getTransitionKey(state, t.getStemId());
+                Integer next = transitions.get(key);
+                if (next == null) {
+                    next = terminals.size();
+                    transitions.put(key, next);
+                    terminals.add(null);
+                }
+                state = next;
             }
-            surfaces.put("§" + stemmedSurface, k);
-
+            terminals.set(state, k);
+            states[i++] = state;
         }
 
-        for (Keyphrase k : allKPs) {
-            String stemmedSurface = "";
-            for (Token t : k.getTokens()) {
-                stemmedSurface += t.getStem() + "§";
+        // For every keyphrase, walk the trie from every token to find the
+        // keyphrases contained in it, and record the highest frequency of 
+        // a phrase that contains each of them.
+        double[] superFrequency = new double[terminals.size()];
+        boolean[] contained = new boolean[terminals.size()];
+
+        for (int state = 1; state < terminals.size(); state++) {
+            Keyphrase k = terminals.get(state);
+            if (k == null) {
+                continue;
             }
-            stemmedSurface = "§" + stemmedSurface;
-            Double maximality = 0.0;
-            for (Map.Entry<String, Keyphrase> surface : surfaces.entrySet()) {
 
-                if (!surface.getKey().equals(stemmedSurface)
-                        && (surface.getKey().contains(stemmedSurface))) {
+            double frequency = k.getFeature(StatisticalAnnotator.FREQUENCY);
+            List<Token> tokens = k.getTokens();
 
-                    double step
-                            = surface.getValue().getFeature(StatisticalAnnotator.FREQUENCY)
-                            / k.getFeature(StatisticalAnnotator.FREQUENCY);
+            for (int start = 0; start < tokens.size(); start++) {
+                int sub = 0;
+                for (int end = start; end < tokens.size(); end++) {
+                    Integer next = transitions.get(getTransitionKey(
+                            sub, tokens.get(end).getStemId()));
+                    if (next == null) {
+                        break;
+                    }
+                    sub = next;
 
-                    maximality = Math.max(step, maximality);
+                    if (sub != state && terminals.get(sub) != null) {
+                        superFrequency[sub] = contained[sub]
+                                ? Math.max(superFrequency[sub], frequency)
+                                : frequency;
+                        contained[sub] = true;
+                    }
                 }
             }
+        }
+
+        i = 0;
+        for (Keyphrase k : allKPs) {
+            int state = states[i++];
+            double maximality = 0.0;
+            if (contained[state]) {
+                maximality = Math.max(superFrequency[state] 
+                        / k.getFeature(StatisticalAnnotator.FREQUENCY),
+                        maximality);
+            }
             k.putFeature(MAXIMALITY, 1.0 - maximality);
         }
     }
 
+    /**
+     * Gets the key of a transition of the trie of the stems.
+     *
+     * @param state the source state.
+     * @param stem the identifier of the stem.
+     * @return the key of the transition.
+     */
+    private static long getTransitionKey(int state, int stem) {
+        return ((long) state << 32) | (stem & 0xFFFFFFFFL);
+    }
+
 }
@@ -48,4 +48,15 @@ public interface GenericEvaluatorAnnotator extends Annotator {
      */
     public static final String SCORE = "Score";
     
+    /**
+     * Evaluators score the grams using features computed on the whole 
+     * document.
+     * 
+     * @return true.
+     */
+    @Override
+    public default boolean isDocumentLevel() {
+        return true;
+    }
+    
 }
@@ -24,17 +24,42 @@ import it.uniud.ailab.dcore.persistence.DocumentComponent;
 import it.uniud.ailab.dcore.persistence.Gram;
 import it.uniud.ailab.dcore.persistence.Keyphrase;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
 
 /**
  * Removes from the blackboard n-grams which identifier is a substring of
  * another n-gram identifier. Note: this works if the identifier is the surface
  * of the n-gram or if the identifier is the stemmed surface of the n-gram.
  *
+ * The substrings are found with a rolling hash over the identifiers, so the
+ * annotator runs in time linear in the number of n-grams (for a bounded
+ * identifier length) instead of comparing every pair of identifiers.
+ *
  * @author Marco Basaldella
  */
 public class GramMergerAnnotator implements Annotator {
 
+    /**
+     * The base of the rolling hash of the identifiers.
+     */
+    private static final long HASH_BASE = 1000003;
+
+    /**
+     * Grams are merged with the grams of the whole document.
+     *
+     * @return true.
+     */
+    @Override
+    public boolean isDocumentLevel() {
+        return true;
+    }
+
     /**
      *
      * Removes from the blackboard n-grams which identifier is a substring of
@@ -48,53 +73,86 @@ public class GramMergerAnnotator implements Annotator {
     @Override
     public void annotate(Blackboard blackboard, DocumentComponent component) {
 
-        List<String> ids = new ArrayList<>();
+        List<Gram> keyphrases = blackboard.getKeyphrases();
+
+        // Index the identifiers by their hash, and collect their lengths.
+        Map<Long, List<String>> ids = new HashMap<>();
+        SortedSet<Integer> lengths = new TreeSet<>();
 
-        for (Gram g : blackboard.getKeyphrases()) {
-            Keyphrase k = (Keyphrase)g;
-            ids.add(k.getIdentifier());
+        for (Gram g : keyphrases) {
+            String id = g.getIdentifier();
+            ids.computeIfAbsent(hash(id, 0, id.length()),
+                    (k) -> new ArrayList<>()).add(id);
+            lengths.add(id.length());
         }
 
-        // REVERSE SORT: the longest string goes first!
-        //
-        // The comparator is implemented to get reverse ordering.
-        // the comparator returns 0 if the strings are same length
-        // a number < 0 if s1.length > s2.length
-        // a number > 0 if s2.length < s1.length
-        
-        ids.sort((s1, s2) -> s2.length() - s1.length());
-
-        // The basic idea is to create a string like that:
-        // validIds = $$id_1$$id_2$$id_3$$...
-        // Where we guarantee that no id_i is substring of another id_k.
-        
-        // To do that we reverse sort the gram ids by length ( longest first)
-        // and build the validIds string with this logic:
-        // if the current id_i is not a substring of validIds, then we append
-        // it to the string; else, if id_i is substring of validIds, it means 
-        // that a longer id_k has been added to the string, where id_i is 
-        // substring of id_k.
-        
-        // As a separator we use a double carriage-return-newline sequence, 
-        // which should never appear inside a gram.        
-        
-        List<String> idsToKeep = new ArrayList<>();
-        final String separator = "\r\n\r\n";
-        String validIds = separator;
-
-        for (String id : ids) {
-            if (!validIds.contains(id)) {
-                idsToKeep.add(id);
-                validIds = validIds + id + separator;
+        // An identifier is contained in another one if and only if it is 
+        // a substring of a longer identifier: for every identifier, slide a 
+        // window of every shorter length over it and look up the hash of the 
+        // window among the hashes of the identifiers of that length.
+        Set<String> contained = new HashSet<>();
+
+        for (Gram g : keyphrases) {
+            String id = g.getIdentifier();
+
+            for (int length : lengths.headSet(id.length())) {
+                if (length == 0) {
+                    continue;
+                }
+
+                long power = 1;
+                for (int i = 1; i < length; i++) {
+                    power *= HASH_BASE;
+                }
+
+                long h = hash(id, 0, length);
+                for (int start = 0; ; start++) {
+                    List<String> candidates = ids.get(h);
+                    if (candidates != null) {
+                        for (String c : candidates) {
+                            if (c.length() == length
+                                    && id.regionMatches(start, c, 0, length)) {
+                                contained.add(c);
+                            }
+                        }
+                    }
+
+                    if (start + length == id.length()) {
+                        break;
+                    }
+                    h = (h - id.charAt(start) * power) * HASH_BASE
+                            + id.charAt(start + length);
+                }
             }
         }
-        
-        for (Gram g : blackboard.getKeyphrases()) {
-            Keyphrase k = (Keyphrase)g;
-            if (!idsToKeep.contains(k.getIdentifier()))
-                blackboard.removeKeyphrase(k);
+
+        List<Gram> toRemove = new ArrayList<>();
+        for (Gram g : keyphrases) {
+            // the empty identifier is a substring of any other
+            if (g.getIdentifier().isEmpty()
+                    || contained.contains(g.getIdentifier())) {
+                toRemove.add(g);
+            }
         }
 
+        blackboard.removeGrams(Keyphrase.KEYPHRASE, toRemove);
+    }
+
+    /**
+     * Computes the polynomial hash of a region of a string, in a way that
+     * can be updated as a rolling hash.
+     *
+     * @param s the string.
+     * @param start the start of the region.
+     * @param length the length of the region.
+     * @return the hash of the region.
+     */
+    private static long hash(String s, int start, int length) {
+        long h = 0;
+        for (int i = start; i < start + length; i++) {
+            h = h * HASH_BASE + s.charAt(i);
+        }
+        return h;
     }
 
 }
@@ -25,19 +25,11 @@ import it.uniud.ailab.dcore.persistence.Sentence;
 import it.uniud.ailab.dcore.persistence.Token;
 import it.uniud.ailab.dcore.utils.DocumentUtils;
 import it.uniud.ailab.dcore.utils.FileSystem;
-import it.uniud.ailab.dcore.utils.Pair;
+import it.uniud.ailab.dcore.utils.MorphItLexicon;
 import java.io.BufferedReader;
-import java.io.FileInputStream;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.Reader;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.zip.GZIPInputStream;
@@ -47,26 +39,25 @@ import java.util.zip.GZIPInputStream;
  * Superiore di Lingue Moderne per Interpreti e Traduttori) of the University of
  * Bologna, and on the italian models for Apache OpenNLP by Andrea Ciapetti.
  *
+ * The lexicon is loaded in a compact form only once, and shared by all the
+ * instances of the annotator.
+ *
  * @author Marco Basaldella
  */
 public class ItalianLemmatizerAnnotator implements Annotator {
 
     /**
-     * The dictionary of lemmas. Each word is mapped to one or more lemmas, and
-     * the PoS tag relative to that lemma association. The left element of the
-     * pair is the lemma, the right one is the PoS tag.
-     */
-    Map<String, List<Pair<String, String>>> lemmas = new HashMap<>();
-    /**
-     * Mapping between Ciapetti's and MorphIt's tagsets
+     * The lexicon, loaded the first time the annotator is used and shared by
+     * all its instances.
      */
-    Map<String, String> mapping = new HashMap<>();
+    private static MorphItLexicon lexicon;
 
     @Override
     public void annotate(Blackboard blackboard, DocumentComponent component) {
 
+        MorphItLexicon lemmas = null;
         try {
-            loadLexicon();
+            lemmas = getLexicon();
         } catch (IOException ex) {
             Logger.getLogger(ItalianLemmatizerAnnotator.class.getName()).log(Level.SEVERE, null, ex);
         }
@@ -74,99 +65,43 @@ public class ItalianLemmatizerAnnotator implements Annotator {
         for (Sentence s : DocumentUtils.getSentences(component)) {
             for (Token t : s.getTokens()) {
 
-                String lemma = t.getText();
-
-                List<Pair<String, String>> lemmasList = lemmas.get(t.getText());
-
-                if (lemmasList != null) {
-                    // if there's only one candidate lemma, don't care
-                    // about the mapping
-
-                    if (lemmasList.size() == 1) {
-                        lemma = lemmasList.get(0).getLeft();
-                    } else {
-                        // elsewhise, there are more lemmas for that word:
-                        // get the lemma that matches the longest pos-tag
-                        // prefix.
-                        String mappedTag = "";
-                        for (Pair<String, String> candidate : lemmasList) {
+                String lemma = lemmas == null ? null
+                        : lemmas.getLemma(t.getText(), t.getPoS());
 
-                            String candidateMappedTag
-                                    = mapping.get(candidate.getRight());
-                            // keep only the tag before the ":" 
-                            if (candidateMappedTag != null) {
-                                candidateMappedTag
-                                        = candidateMappedTag.split(":")[0];
-
-                                if (t.getPoS().startsWith(candidateMappedTag)
-                                        && mappedTag.length()
-                                        < candidateMappedTag.length()) {
-                                    mappedTag = candidateMappedTag;
-                                    lemma = candidate.getLeft();
-                                }
-                            }
-                        }
-                    }
-                }
-                t.setLemma(lemma);
+                t.setLemma(lemma == null ? t.getText() : lemma);
             }
         }
     }
 
-    private void loadLexicon() throws IOException {
-        
-        
-        String lexiconPath = getClass().getClassLoader().
-                getResource("morph-it/morph-it_048.gz").getFile();
-
-        InputStream is = FileSystem.getInputStreamFromPath(lexiconPath);
-
-        InputStream gzipStream = new GZIPInputStream(is);
-        Reader decoder = new InputStreamReader(gzipStream, StandardCharsets.UTF_8);
-        BufferedReader buffered = new BufferedReader(decoder);
-
-        String line;
-
-        // put the lemmas in the hashmap
-        while ((line = buffered.readLine()) != null) {
-
-            String[] splittedLine = line.split("\\t");
-            if (splittedLine.length != 3) {
-                continue;
-            }
-
-            if (lemmas.containsKey(splittedLine[0])) {
-                lemmas.get(splittedLine[0]).
-                        add(new Pair<>(splittedLine[1], splittedLine[2]));
-            } else {
-
-                List l = new ArrayList<>();
-                l.add(new Pair<>(splittedLine[1], splittedLine[2]));
+    /**
+     * Gets the Morph-it! lexicon, loading it if needed.
+     *
+     * @return the lexicon.
+     * @throws IOException if the lexicon can't be read.
+     */
+    private static synchronized MorphItLexicon getLexicon() throws IOException {
 
-                lemmas.put(splittedLine[0], l);
-            }
+        if (lexicon != null) {
+            return lexicon;
         }
 
-        // now, load the mapping between Ciapetti's tags and the Morph-it ones
-        InputStreamReader isr;
+        ClassLoader loader = ItalianLemmatizerAnnotator.class.getClassLoader();
 
-        String mappingPath = getClass().getClassLoader().
+        String lexiconPath = loader.
+                getResource("morph-it/morph-it_048.gz").getFile();
+        String mappingPath = loader.
                 getResource("morph-it/morph-it_mapping").getFile();
 
-        isr = FileSystem.getInputStreamReaderFromPath(mappingPath);
-
-        BufferedReader mappingReader = new BufferedReader(isr);
-        while ((line = mappingReader.readLine()) != null) {
-
-            // skip comments
-            if (line.startsWith("#") || line.isEmpty()) {
-                continue;
-            }
-
-            String[] splittedLine = line.split("\\t");
-            mapping.put(splittedLine[0], splittedLine[1]);
+        try (BufferedReader lexiconReader = new BufferedReader(
+                new InputStreamReader(new GZIPInputStream(
+                        FileSystem.getInputStreamFromPath(lexiconPath)),
+                        StandardCharsets.UTF_8));
+                BufferedReader mappingReader = new BufferedReader(
+                        FileSystem.getInputStreamReaderFromPath(mappingPath))) {
 
+            lexicon = new MorphItLexicon(lexiconReader, mappingReader);
         }
+        return lexicon;
     }
 
 }
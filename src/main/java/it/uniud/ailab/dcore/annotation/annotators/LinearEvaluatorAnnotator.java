@@ -61,6 +61,16 @@ public class LinearEvaluatorAnnotator implements Annotator {
         weights.put(feature, weight);
     }    
     
+    /**
+     * The score uses features computed on the whole document.
+     *
+     * @return true.
+     */
+    @Override
+    public boolean isDocumentLevel() {
+        return true;
+    }
+
     /**
      * The method which performs the actual scoring of the grams.
      * 
@@ -81,5 +91,7 @@ public class LinearEvaluatorAnnotator implements Annotator {
             k.putFeature(it.uniud.ailab.dcore.annotation.annotators.GenericEvaluatorAnnotator.SCORE, score);
         }
         
+        // the scores have changed
+        b.invalidateKeyphraseRanking();
     }    
 }
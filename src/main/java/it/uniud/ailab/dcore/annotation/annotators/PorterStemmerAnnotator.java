@@ -28,11 +28,12 @@ import it.uniud.ailab.dcore.persistence.Mention.Reference;
 import it.uniud.ailab.dcore.persistence.Sentence;
 import it.uniud.ailab.dcore.persistence.Token;
 import it.uniud.ailab.dcore.utils.DocumentUtils;
-import it.uniud.ailab.dcore.utils.SnowballStemmerSelector;
+import it.uniud.ailab.dcore.utils.StemCache;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
-import org.tartarus.snowball.SnowballStemmer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Implementation of Porter's Stemmer algorithm. 
@@ -42,6 +43,8 @@ import org.tartarus.snowball.SnowballStemmer;
  * affixes. 
  * You can always annotate with stem also token of blackboard grams, just 
  * iterating on the list of grams selected by gram type.
+ * The stems are cached, since the same words appear many times in a document;
+ * see {@link it.uniud.ailab.dcore.utils.StemCache}.
  * 
  * @author Giorgia Chiaradia
  */
@@ -62,8 +65,7 @@ public class PorterStemmerAnnotator implements Annotator {
         List<Sentence> sentences = DocumentUtils.getSentences(component);
 
         // Get the appropriate stemmer basing on document language
-        SnowballStemmer stemmer = SnowballStemmerSelector.
-                getStemmerForLanguage(component.getLanguage());
+        StemCache stemmer = StemCache.forLanguage(component.getLanguage());
 
         if (stemmer == null) {
             throw new AnnotationException(this,
@@ -76,12 +78,7 @@ public class PorterStemmerAnnotator implements Annotator {
             //for every token
             for (Token t : sentence.getTokens()) {
                 //set the stem form to the token
-                stemmer.setCurrent(t.getText());
-                if (stemmer.stem()) {
-                    t.setStem(stemmer.getCurrent());
-                } else {
-                    t.setStem(t.getText());
-                }
+                t.setStem(stemmer.stem(t.getText()));
             }
             
         }
@@ -92,26 +89,19 @@ public class PorterStemmerAnnotator implements Annotator {
         if (mentions != null) {
             for (Mention m : mentions) {
                 for (Token t : m.getAnaphorToken()) {
-                    stemmer.setCurrent(t.getText());
-                    if (stemmer.stem()) {
-                        t.setStem(stemmer.getCurrent());
-                    } else {
-                        t.setStem(t.getText());
-                    }
+                    t.setStem(stemmer.stem(t.getText()));
                 }
                 //annotate tokens from references
                 for (Reference r : m.getReferences()) {
                     for (Token t : r.getTokens()) {
-                        stemmer.setCurrent(t.getText());
-                        if (stemmer.stem()) {
-                            t.setStem(stemmer.getCurrent());
-                        } else {
-                            t.setStem(t.getText());
-                        }
+                        t.setStem(stemmer.stem(t.getText()));
                     }
                 }
             }
         }
+
+        Logger.getLogger(PorterStemmerAnnotator.class.getName()).log(
+                Level.FINE, "Stem cache: {0}", stemmer);
     }
 
 }
@@ -27,19 +27,19 @@ import it.uniud.ailab.dcore.persistence.Gram;
 import it.uniud.ailab.dcore.persistence.Keyphrase;
 import it.uniud.ailab.dcore.persistence.Sentence;
 import it.uniud.ailab.dcore.utils.DocumentUtils;
-import it.uniud.ailab.dcore.utils.SnowballStemmerSelector;
+import it.uniud.ailab.dcore.utils.StemCache;
 import it.uniud.ailab.dcore.wrappers.external.OpenNlpBootstrapperAnnotator;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import org.apache.commons.lang3.StringUtils;
-import org.tartarus.snowball.SnowballStemmer;
 
 /**
  * A simple and raw tf-idf calculator. It tokenizes each document using OpenNLP,
@@ -48,20 +48,46 @@ import org.tartarus.snowball.SnowballStemmer;
  *
  * Then, when the tf-idf value of a token is search
  *
+ * The index of the documents is shared by all the instances of the annotator
+ * and built once per folder; it's immutable once built, so concurrent
+ * annotations can read it while another thread indexes a new folder.
+ *
  * @author Marco Basaldella
  */
 public class RawTdidfAnnotator implements Annotator {
 
     public static final String TFIDF = "tf-idf";
 
-    private static final Map<String, String> documents = new HashMap<>();
-    private static final Map<String, Integer> docLengths = new HashMap<>();
-
-    private static String previousFolder = "";
+    /**
+     * The index of the last folder loaded, shared by all the instances of the
+     * annotator.
+     */
+    private static volatile Index index = null;
+
+    /**
+     * The stemmed documents of the folders loaded so far and their length in
+     * tokens. The index never changes once built.
+     */
+    private static final class Index {
+
+        /**
+         * The last folder loaded.
+         */
+        private final String folder;
+        private final Map<String, String> documents;
+        private final Map<String, Integer> docLengths;
+
+        private Index(String folder, Map<String, String> documents,
+                Map<String, Integer> docLengths) {
+            this.folder = folder;
+            this.documents = Collections.unmodifiableMap(documents);
+            this.docLengths = Collections.unmodifiableMap(docLengths);
+        }
+    }
 
     @Override
     public void annotate(Blackboard blackboard, DocumentComponent component) {
-        initIndex(component.getLanguage());
+        Index index = initIndex(component.getLanguage());
 
         List<Sentence> sentences = DocumentUtils.getSentences(component);
 
@@ -76,22 +102,18 @@ public class RawTdidfAnnotator implements Annotator {
                             tokenizeText(stemmedSurface,
                                     component.getLanguage().getLanguage());
 
-                    SnowballStemmer stemmer = SnowballStemmerSelector.
-                            getStemmerForLanguage(component.getLanguage());
+                    StemCache stemmer = StemCache.forLanguage(
+                            component.getLanguage());
 
                     for (int i = 0; i < tokenizedSurface.length; i++) {
-
-                        stemmer.setCurrent(tokenizedSurface[i]);
-                        if (stemmer.stem()) {
-                            tokenizedSurface[i] = stemmer.getCurrent();
-                        }
+                        tokenizedSurface[i] = stemmer.stem(tokenizedSurface[i]);
                     }
 
                     stemmedSurface = String.join(" ",
                             markTokens(tokenizedSurface)).trim();
 
                     ((Keyphrase) g).putFeature(TFIDF,
-                            tfIdf(
+                            tfIdf(index,
                                     IOBlackboard.getCurrentDocument(),
                                     stemmedSurface));
                 }
@@ -99,53 +121,76 @@ public class RawTdidfAnnotator implements Annotator {
         }
     }
 
-    private double tf(String docId, String term) {
-        double result = StringUtils.countMatches(documents.get(docId), term);
-        return result / docLengths.get(docId);
+    private double tf(Index index, String docId, String term) {
+        double result = StringUtils.countMatches(
+                index.documents.get(docId), term);
+        return result / index.docLengths.get(docId);
     }
 
-    private double idf(String term) {
+    private double idf(Index index, String term) {
         double n = 0;
-        for (String doc : documents.values()) {
+        for (String doc : index.documents.values()) {
             n += doc.contains(term) ? 1 : 0;
         }
-        return Math.log(documents.size() / n);
+        return Math.log(index.documents.size() / n);
     }
 
-    private double tfIdf(String docId, String term) {
-        double tf = tf(docId, term), idf = idf(term);
+    private double tfIdf(Index index, String docId, String term) {
+        double tf = tf(index, docId, term), idf = idf(index, term);
         return tf != 0 && idf != 0 ? tf * idf : 0;
     }
 
-    private static void initIndex(Locale locale) {
+    /**
+     * Gets the index of the folder of the documents, building it if the
+     * folder has changed. Only one thread at a time builds an index, and the
+     * index is published only when it's complete.
+     *
+     * @param locale the language of the documents.
+     * @return the index of the folder.
+     */
+    private static Index initIndex(Locale locale) {
 
         String docPath = IOBlackboard.getDocumentsFolder();
+        docPath = docPath == null
+                ? (new File(IOBlackboard.getCurrentDocument())).getParent()
+                : docPath;
 
-        if (!documents.isEmpty()
-                && previousFolder.equals(docPath)) {
-            return;
+        Index current = index;
+        if (current != null && current.folder.equals(docPath)) {
+            return current;
         }
 
-        System.out.println("Doc path from folder  : " + docPath);
-        String parentPath = (new File(IOBlackboard.getCurrentDocument())).getParent();
-        System.out.println("Doc path from document: " + parentPath);
+        synchronized (RawTdidfAnnotator.class) {
+            current = index;
+            if (current != null && current.folder.equals(docPath)) {
+                return current;
+            }
 
-        docPath = docPath == null
-                ? parentPath
-                : docPath;
+            System.out.println("Doc path from folder  : "
+                    + IOBlackboard.getDocumentsFolder());
+            System.out.println("Doc path from document: "
+                    + IOBlackboard.getCurrentDocument());
 
-        previousFolder = docPath;
+            System.out.println("Building tf-idf index...");
 
-        System.out.println("Building tf-idf index...");
+            // the documents of the folders loaded before are kept
+            Map<String, String> documents = current == null
+                    ? new HashMap<>() : new HashMap<>(current.documents);
+            Map<String, Integer> docLengths = current == null
+                    ? new HashMap<>() : new HashMap<>(current.docLengths);
+            for (File f : (new File(docPath)).listFiles()) {
 
-        for (File f : (new File(docPath)).listFiles()) {
+                System.out.println("Loading " + f.getAbsolutePath() + "...");
+                loadFile(f, locale, documents, docLengths);
+            }
 
-            System.out.println("Loading " + f.getAbsolutePath() + "...");
-            loadFile(f, locale);
+            index = new Index(docPath, documents, docLengths);
+            return index;
         }
     }
 
-    private static void loadFile(File f, Locale locale) {
+    private static void loadFile(File f, Locale locale,
+            Map<String, String> documents, Map<String, Integer> docLengths) {
         BufferedReader br = null;
         StringBuilder document = new StringBuilder();
         String line;
@@ -161,14 +206,10 @@ public class RawTdidfAnnotator implements Annotator {
                         = OpenNlpBootstrapperAnnotator.
                         tokenizeText(line, locale.getLanguage());
 
-                SnowballStemmer stemmer = SnowballStemmerSelector.getStemmerForLanguage(locale);
+                StemCache stemmer = StemCache.forLanguage(locale);
 
                 for (int i = 0; i < tokenizedDocument.length; i++) {
-
-                    stemmer.setCurrent(tokenizedDocument[i]);
-                    if (stemmer.stem()) {
-                        tokenizedDocument[i] = stemmer.getCurrent();
-                    }
+                    tokenizedDocument[i] = stemmer.stem(tokenizedDocument[i]);
                 }
 
                 tokenCount += tokenizedDocument.length;
@@ -27,6 +27,7 @@ import it.uniud.ailab.dcore.persistence.Keyphrase;
 import it.uniud.ailab.dcore.persistence.Sentence;
 import it.uniud.ailab.dcore.persistence.Token;
 import it.uniud.ailab.dcore.utils.FileSystem;
+import it.uniud.ailab.dcore.utils.SymbolTable;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
@@ -88,6 +89,21 @@ public class RegexNGramGeneratorAnnotator implements GenericNGramGeneratorAnnota
      */
     private static final int DEFAULT_MAX_NGRAM_SIZE = 5;
 
+    /**
+     * The identifiers of the n-grams generated so far, indexed by the 
+     * identifiers of the stems of their tokens, so that the identifier of 
+     * every distinct n-gram is built only once.
+     */
+    private final Map<SymbolTable.Sequence, String> gramIdentifiers 
+            = new HashMap<>();
+
+    /**
+     * The symbol table of the stems in {@link #gramIdentifiers}. Every 
+     * document has its own table, so the identifiers are forgotten when the
+     * tokens come from another table.
+     */
+    private SymbolTable gramSymbols;
+
     // </editor-fold>
     // <editor-fold desc="constructor">
     /**
@@ -194,9 +210,16 @@ public class RegexNGramGeneratorAnnotator implements GenericNGramGeneratorAnnota
             int searchWordFrom = 0;
 
             for (int i = 0; i < allWords.size(); i++) {
-                startIndexes[i] = sentenceText.indexOf(
-                        allWords.get(i).getText(), searchWordFrom);
-                endIndexes[i] = startIndexes[i] + allWords.get(i).getText().length();
+                Token word = allWords.get(i);
+                if (word.getBeginOffset() >= 0) {
+                    // the tokenizer already told us where the token is
+                    startIndexes[i] = word.getBeginOffset();
+                    endIndexes[i] = word.getEndOffset();
+                } else {
+                    startIndexes[i] = sentenceText.indexOf(
+                            word.getText(), searchWordFrom);
+                    endIndexes[i] = startIndexes[i] + word.getText().length();
+                }
 
                 searchWordFrom = endIndexes[i];
             }
@@ -223,19 +246,20 @@ public class RegexNGramGeneratorAnnotator implements GenericNGramGeneratorAnnota
                         lastReadBuffers[size].add(word);
                     }
                     if (i >= size) {
+                        // skip the n-grams that start with a stopword, if
+                        // the stopwords have been marked
+                        if (lastReadBuffers[size].get(0).hasAnnotation(
+                                StopwordSimpleFilterAnnotator.STOPWORD)) {
+                            continue;
+                        }
                         // if the pattern is in the database AND contains a noun, then
                         // it's a nGram that could be a keyphrase.  
                         int nounValue = checkGramNounValue(lastReadBuffers[size]);
                         if (nounValue > 0) {
 
                             // the identifier is the stem of the words
-                            String identifier = lastReadBuffers[size].get(0).getStem();
-                            for (int k = 1; k < lastReadBuffers[size].size(); k++) {
-                                identifier = identifier + " "
-                                        + lastReadBuffers[size].get(k).getStem();
-                            }
-
-                            identifier = identifier.toLowerCase();
+                            String identifier 
+                                    = getGramIdentifier(lastReadBuffers[size]);
                             int startIndex = 
                                     startIndexes[i - (lastReadBuffers[size].size() - 1)];
                             int endIndex = endIndexes[i];
@@ -260,6 +284,38 @@ public class RegexNGramGeneratorAnnotator implements GenericNGramGeneratorAnnota
 
     // </editor-fold>
     // <editor-fold desc="support methods">
+    /**
+     * Gets the identifier of a n-gram, that is the lowercase stems of its 
+     * tokens separated by spaces.
+     *
+     * @param tokens the tokens of the n-gram.
+     * @return the identifier of the n-gram.
+     */
+    private String getGramIdentifier(List<Token> tokens) {
+        SymbolTable symbols = tokens.get(0).getSymbolTable();
+        if (symbols != gramSymbols) {
+            gramIdentifiers.clear();
+            gramSymbols = symbols;
+        }
+
+        int[] stems = new int[tokens.size()];
+        for (int k = 0; k < stems.length; k++) {
+            stems[k] = tokens.get(k).getStemId();
+        }
+
+        return gramIdentifiers.computeIfAbsent(
+                new SymbolTable.Sequence(stems), (key) -> {
+                    StringBuilder identifier = new StringBuilder();
+                    for (int k = 0; k < tokens.size(); k++) {
+                        if (k > 0) {
+                            identifier.append(' ');
+                        }
+                        identifier.append(tokens.get(k).getStem());
+                    }
+                    return identifier.toString().toLowerCase();
+                });
+    }
+
     /**
      * Checks if a list of POS-tagged tokens contains a n-gram that could be a
      * valid keyphrase and returns their noun value.
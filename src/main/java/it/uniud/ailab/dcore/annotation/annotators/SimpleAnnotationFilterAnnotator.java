@@ -66,6 +66,17 @@ public class SimpleAnnotationFilterAnnotator implements Annotator {
         this.range = range;
     }
     
+    /**
+     * The grams are filtered after they have been annotated in the whole
+     * document.
+     *
+     * @return true.
+     */
+    @Override
+    public boolean isDocumentLevel() {
+        return true;
+    }
+
     /**
      * Keeps only the n best instances of the specified annotation
      * on the blackboard, removing the others.
@@ -22,12 +22,7 @@ import it.uniud.ailab.dcore.annotation.Annotator;
 import it.uniud.ailab.dcore.Blackboard;
 import it.uniud.ailab.dcore.persistence.DocumentComponent;
 import it.uniud.ailab.dcore.persistence.Keyphrase;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
+import it.uniud.ailab.dcore.utils.KeyphraseRanking;
 
 /**
  * This annotator removes all the non-relevant keyphrases from the blackboard, 
@@ -51,34 +46,24 @@ public class SimpleCutFilterAnnotator implements Annotator {
         this.cut = cut;
     }
 
+    /**
+     * The best keyphrases are chosen in the whole document.
+     *
+     * @return true.
+     */
     @Override
-    public void annotate(Blackboard blackboard, DocumentComponent component) {
-        
-        // get the grams and order them by score
-        Collection<Keyphrase> grams = 
-                blackboard.getGramsByType(Keyphrase.KEYPHRASE);
-        Map<Keyphrase, Double> scoredGrams = new HashMap<>();
-
-        for (Keyphrase k : grams) {
-            scoredGrams.put(k, 
-                    k.getFeature(GenericEvaluatorAnnotator.SCORE));
-        }
+    public boolean isDocumentLevel() {
+        return true;
+    }
 
-        List<Map.Entry<Keyphrase, Double>> gramsToTrash
-                = scoredGrams.entrySet().stream().sorted(
-                        Collections.reverseOrder(Map.Entry.comparingByValue()))
-                .collect(Collectors.toList());
-        
-        // now the have the gram ordered by score. 
-        // we keep the best n grams (where n = cut) and remove the others.
-        
-        for (int i = 0; i < cut; i++) {
-            gramsToTrash.remove(0);
-        }
+    @Override
+    public void annotate(Blackboard blackboard, DocumentComponent component) {
         
-        // now remove the remaining grams from the blackboard.        
-        for (Map.Entry<Keyphrase, Double> e : gramsToTrash) 
-            blackboard.removeGram(Keyphrase.KEYPHRASE,e.getKey());        
+        // rank the grams by score, then keep the best n grams 
+        // (where n = cut) and remove the others.
+        KeyphraseRanking ranking = blackboard.getKeyphraseRanking();
+        blackboard.removeGrams(Keyphrase.KEYPHRASE,
+                ranking.getDiscarded(cut));
     }
     
 }
@@ -21,14 +21,8 @@ package it.uniud.ailab.dcore.annotation.annotators;
 import it.uniud.ailab.dcore.annotation.Annotator;
 import it.uniud.ailab.dcore.Blackboard;
 import it.uniud.ailab.dcore.persistence.DocumentComponent;
-import it.uniud.ailab.dcore.persistence.Gram;
 import it.uniud.ailab.dcore.persistence.Keyphrase;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
+import it.uniud.ailab.dcore.utils.KeyphraseRanking;
 
 /**
  * This annotator removes all the non-relevant grams from the blackboard, 
@@ -38,59 +32,48 @@ import java.util.stream.Collectors;
  */
 public class SkylineGramFilterAnnotator implements Annotator {
 
+    /**
+     * The best keyphrases are chosen in the whole document.
+     *
+     * @return true.
+     */
     @Override
-    public void annotate(Blackboard blackboard, DocumentComponent component) {
-        
-        // get the grams and order them by score
-        Collection<Gram> grams = blackboard.getKeyphrases();
-        Map<Keyphrase, Double> scoredGrams = new HashMap<>();
-
-        for (Gram g : grams) {
-            Keyphrase k = (Keyphrase)g;
-            scoredGrams.put(k, k.getFeature(GenericEvaluatorAnnotator.SCORE));
-        }
+    public boolean isDocumentLevel() {
+        return true;
+    }
 
-        List<Map.Entry<Keyphrase, Double>> gramsToTrash
-                = scoredGrams.entrySet().stream().sorted(
-                        Collections.reverseOrder(Map.Entry.comparingByValue()))
-                .collect(Collectors.toList());
+    @Override
+    public void annotate(Blackboard blackboard, DocumentComponent component) {
         
-        // now the have the gram ordered by score. 
+        // rank the grams by score. 
         // we want to keep at least the first 5%; then, we look for the maximum
         // steep in score in the following 20%, and we discard everything after
-        // that remains.
+        // that remains. Only the grams in these ranges need to be sorted.
+        KeyphraseRanking ranking = blackboard.getKeyphraseRanking();
         
-        double bestRange = Math.ceil((gramsToTrash.size() * 5.0) / 100.0);
-        double steepRange = Math.ceil((gramsToTrash.size() * 25.0) / 100.0);
+        int bestRange = (int) Math.ceil((ranking.size() * 5.0) / 100.0);
+        int steepRange = (int) Math.ceil((ranking.size() * 25.0) / 100.0);
         
-        // keep the first 5%
-        for (int i = 0; i < bestRange; i++) {
-            gramsToTrash.remove(0);
-        }
+        double[] scores = ranking.getTopScores(bestRange + steepRange);
         
         double maxSteep = Double.MIN_VALUE;
-        int maxSteepIndex = Integer.MIN_VALUE;
+        int maxSteepIndex = 0;
         
         // search for the maximum steep in the next 15%
-        for (int i = 0; i < steepRange - 1; i++) {
+        for (int i = bestRange; i < bestRange + steepRange - 1; i++) {
             
-            double steep = (gramsToTrash.get(i).getValue() - 
-                    gramsToTrash.get(i+1).getValue());
+            double steep = scores[i] - scores[i + 1];
             
             if (steep > maxSteep) {
                 maxSteep = steep;
-                maxSteepIndex = i;                
+                maxSteepIndex = i - bestRange;
             }
         }
         
-        // keep the grams before the steep
-        for (int i = 0; i < maxSteepIndex; i++) {
-            gramsToTrash.remove(0);
-        }
-        
-        // now remove the remaining grams from the blackboard.        
-        for (Map.Entry<Keyphrase, Double> e : gramsToTrash) 
-            blackboard.removeKeyphrase(e.getKey());        
+        // keep the first 5% and the grams before the steep, and remove the
+        // remaining grams from the blackboard.
+        blackboard.removeGrams(Keyphrase.KEYPHRASE,
+                ranking.getDiscarded(bestRange + maxSteepIndex));
     }
     
 }
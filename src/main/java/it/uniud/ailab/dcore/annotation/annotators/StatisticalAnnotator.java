@@ -28,7 +28,10 @@ import it.uniud.ailab.dcore.persistence.Gram;
 import it.uniud.ailab.dcore.persistence.Keyphrase;
 import it.uniud.ailab.dcore.persistence.Sentence;
 import it.uniud.ailab.dcore.utils.DocumentUtils;
+import it.uniud.ailab.dcore.utils.IntArray;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Map;
 
 /**
  * Annotates grams with statistical information such as their frequency, their
@@ -42,6 +45,9 @@ import java.util.ArrayList;
  * sentence of last occurrence - index of sentence of first occurrence) / total
  * # of sentences.
  *
+ * The features are computed in a single pass over the sentences, that keeps 
+ * the counters of every gram in primitive arrays, and are written in the 
+ * grams only once, at the end.
  *
  * @author Marco Basaldella
  */
@@ -84,6 +90,16 @@ public class StatisticalAnnotator implements Annotator {
      */
     public static final String LIFESPAN = "LifeSpan";
 
+    /**
+     * The statistics are computed over all the sentences of the document.
+     *
+     * @return true.
+     */
+    @Override
+    public boolean isDocumentLevel() {
+        return true;
+    }
+
     /**
      * Annotates grams and sentences with statistical information.
      * <p>
@@ -104,14 +120,20 @@ public class StatisticalAnnotator implements Annotator {
         List<Sentence> sentences = DocumentUtils.getSentences(component);
 
         int size = sentences.size();
-        double count = 0;
 
-        // Annotate grams with their statistical features.
-        // The implementation is quite straightforward:
-        // for the definitions of depth, height and frequency, just
+        // Collect the counters of every gram in a single pass over the 
+        // sentences; the features are written only at the end.
+        // For the definitions of depth, height and frequency, just
         // see the variable declarations above.
-        for (Sentence s : sentences) {
-            count++;
+        Map<Gram, Integer> indexes = new IdentityHashMap<>();
+        List<Keyphrase> keyphrases = new ArrayList<>();
+        IntArray frequency = new IntArray();
+        IntArray sentenceFrequency = new IntArray();
+        IntArray first = new IntArray();
+        IntArray last = new IntArray();
+
+        for (int count = 1; count <= size; count++) {
+            Sentence s = sentences.get(count - 1);
 
             s.addAnnotation(
                     new FeatureAnnotation(
@@ -122,45 +144,41 @@ public class StatisticalAnnotator implements Annotator {
                     new FeatureAnnotation(
                             DefaultAnnotations.CHAR_COUNT,
                             s.getText().length()));
-            
-            //buffer to avoid writing some annotations more than once
-            // every sentence
-            List<String> surfaces = new ArrayList<>();
 
             for (Gram g : s.getGrams()) {
-                Keyphrase k = (Keyphrase)g;
-                if (k.hasFeature(FREQUENCY)) {
-                    k.putFeature(FREQUENCY, k.getFeature(FREQUENCY) + 1);
-                } else {
-                    k.putFeature(FREQUENCY, 1);
+                Integer index = indexes.get(g);
+                if (index == null) {
+                    index = keyphrases.size();
+                    indexes.put(g, index);
+                    keyphrases.add((Keyphrase) g);
+                    first.add(count);
+                    last.add(0);
+                    frequency.add(0);
+                    sentenceFrequency.add(0);
                 }
 
-                if (!surfaces.contains(k.getSurface())) {
-
-                    surfaces.add(k.getSurface());
+                frequency.increment(index);
 
-                    double depth = (count / size);
-                    k.putFeature(DEPTH, depth);
-
-                    // check if it's the first appaerance
-                    // if not, set the height 1 - depth
-                    if (!k.hasFeature(HEIGHT)) {
-                        k.putFeature(HEIGHT, 1 - depth);
-                    }
-
-                    k.putFeature(LIFESPAN, k.getFeature(DEPTH) + k.getFeature(HEIGHT) - 1);
-
-                    double increment = 1.0 / sentences.size();
+                // count the gram once per sentence
+                if (last.get(index) != count) {
+                    last.set(index, count);
+                    sentenceFrequency.increment(index);
+                }
+            }
+        }
 
-                    if (k.hasFeature(FREQUENCY_SENTENCE)) {
-                        k.putFeature(FREQUENCY_SENTENCE, k.getFeature(FREQUENCY_SENTENCE) + increment);
-                    } else {
-                        k.putFeature(FREQUENCY_SENTENCE, increment);
-                    }
+        for (int i = 0; i < keyphrases.size(); i++) {
+            Keyphrase k = keyphrases.get(i);
 
-                }
+            double depth = ((double) last.get(i)) / size;
+            double height = 1 - ((double) first.get(i)) / size;
 
-            }
+            k.putFeature(FREQUENCY, frequency.get(i));
+            k.putFeature(DEPTH, depth);
+            k.putFeature(HEIGHT, height);
+            k.putFeature(LIFESPAN, depth + height - 1);
+            k.putFeature(FREQUENCY_SENTENCE,
+                    ((double) sentenceFrequency.get(i)) / size);
         }
     }
 }
@@ -20,40 +20,69 @@ package it.uniud.ailab.dcore.annotation.annotators;
 
 import it.uniud.ailab.dcore.Blackboard;
 import it.uniud.ailab.dcore.annotation.Annotator;
+import it.uniud.ailab.dcore.annotation.annotations.FeatureAnnotation;
 import it.uniud.ailab.dcore.persistence.DocumentComponent;
 import it.uniud.ailab.dcore.persistence.Gram;
 import it.uniud.ailab.dcore.persistence.Keyphrase;
+import it.uniud.ailab.dcore.persistence.Sentence;
+import it.uniud.ailab.dcore.persistence.Token;
+import it.uniud.ailab.dcore.utils.DocumentUtils;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
-import org.json.simple.parser.ParseException;
 
 /**
  * Removes n-grams which surface is equal to a stopword or which first token
  * surface is equal with a stopword.
  *
+ * The annotator can also run before the n-gram generators, if
+ * {@link #setFlagTokens(boolean)} is set: in this case, it marks the tokens
+ * that are stopwords with the {@link #STOPWORD} annotation, and the
+ * generators don't produce the n-grams that start with a marked token. Note
+ * that stopwords made of more than one word can only be filtered after the
+ * generation.
+ *
+ * The stopword lists are loaded once, and shared by all the instances of the
+ * annotator.
+ *
  * @author Marco Basaldella
  */
 public class StopwordSimpleFilterAnnotator implements Annotator {
 
+    /**
+     * The annotation of the tokens that are stopwords.
+     */
+    public static final String STOPWORD = "Stopword";
+
+    /**
+     * The stopword lists loaded so far, indexed by path.
+     */
+    private static final Map<String, Set<String>> STOPWORDS
+            = new ConcurrentHashMap<>();
+
     /**
      * The languages that the n-gram generator will process and their POS
      * pattern database paths.
      */
     private Map<Locale, String> stopwordsPath;
 
-    private Set<String> stopwords;    
+    /**
+     * Whether to mark the stopword tokens instead of removing n-grams.
+     */
+    private boolean flagTokens = false;
     
     /**
      * A stopword filter annotator, that removes Grams from the blackboard
@@ -61,7 +90,6 @@ public class StopwordSimpleFilterAnnotator implements Annotator {
      */
     public StopwordSimpleFilterAnnotator() {
         stopwordsPath = new HashMap<>();
-        stopwords = new HashSet<>();
         
         stopwordsPath.put(Locale.ENGLISH,
                 getClass().getClassLoader().
@@ -91,72 +119,111 @@ public class StopwordSimpleFilterAnnotator implements Annotator {
         stopwordsPath.put(locale, path);
     }
 
+    /**
+     * Sets whether the annotator should mark the tokens that are stopwords,
+     * so that the n-gram generators skip them, instead of removing the
+     * n-grams already generated. Use true when the annotator runs before the
+     * generators. The default is false.
+     *
+     * @param flagTokens true to mark the tokens.
+     */
+    public void setFlagTokens(boolean flagTokens) {
+        this.flagTokens = flagTokens;
+    }
+
     @Override
     public void annotate(Blackboard blackboard, DocumentComponent component) {
 
-        // load the database, then
-        // TODO: handle exceptions better
-        try {
-            loadDatabase(component.getLanguage());
-        } catch (IOException | ParseException ex) {
-            Logger.getLogger(SimpleNGramGeneratorAnnotator.class.getName()).
-                    log(Level.SEVERE, null, ex);
+        Set<String> stopwords = getStopwords(component.getLanguage());
+
+        if (flagTokens) {
+            for (Sentence s : DocumentUtils.getSentences(component)) {
+                for (Token t : s.getTokens()) {
+                    if (stopwords.contains(t.getText())) {
+                        t.addAnnotation(new FeatureAnnotation(STOPWORD, 1));
+                    }
+                }
+            }
+            return;
         }
         
+        List<Gram> toRemove = new ArrayList<>();
         for (Gram g : blackboard.getKeyphrases()) {
             Keyphrase k = (Keyphrase)g;
             if (stopwords.contains(k.getSurface()) ||
                     stopwords.contains(k.getTokens().get(0).getText()))
-                blackboard.removeKeyphrase(k);
+                toRemove.add(k);
         }
-        
+        blackboard.removeGrams(Keyphrase.KEYPHRASE, toRemove);
     }
 
     /**
-     * Loads the stopword database according to the path and language specified
-     * in the constructor.
+     * Gets the stopwords of a language, loading them the first time they're
+     * requested.
      *
-     * @param lang the language to search in the database
-     * @throws IOException if the database file is nonexistent or non accessible
-     * @throws ParseException if the database file is malformed
+     * @param lang the language of the stopwords.
+     * @return the stopwords, or an empty set if they can't be loaded.
      * @throws NullPointerException if the language requested is not in the
      * database
      */
-    private void loadDatabase(Locale lang) throws IOException, ParseException {
-        // Get the POS pattern file and parse it.
+    private Set<String> getStopwords(Locale lang) {
+        
+        String path = stopwordsPath.get(lang);
+        if (path == null) {
+            throw new NullPointerException("Language " + lang.getLanguage()
+                    + " not available.");
+        }
+        
+        Set<String> stopwords = STOPWORDS.get(path);
+        if (stopwords == null) {
+            // TODO: handle exceptions better
+            try {
+                stopwords = loadDatabase(path);
+                STOPWORDS.putIfAbsent(path, stopwords);
+            } catch (IOException ex) {
+                Logger.getLogger(StopwordSimpleFilterAnnotator.class.getName()).
+                        log(Level.SEVERE, null, ex);
+                stopwords = Collections.emptySet();
+            }
+        }
+        return stopwords;
+    }
+
+    /**
+     * Loads a stopword database.
+     *
+     * @param path the path of the database
+     * @return the stopwords in the database.
+     * @throws IOException if the database file is nonexistent or non accessible
+     */
+    private Set<String> loadDatabase(String path) throws IOException {
 
         InputStreamReader is;
 
         // running from command-line and loading inside the JAR
-        if (stopwordsPath.get(lang).contains("!")) {
+        if (path.contains("!")) {
             is = new InputStreamReader(
                     getClass().getResourceAsStream(
-                            stopwordsPath.get(lang).substring(
-                                    stopwordsPath.get(lang).lastIndexOf("!") + 1)),
+                            path.substring(path.lastIndexOf("!") + 1)),
                     StandardCharsets.UTF_8);
         } else {
             // normal operation
-            is = new FileReader(stopwordsPath.get(lang));
+            is = new FileReader(path);
         }
 
-        // If the language is not supported by the database, stop the execution.
-        if (is == null) {
-            throw new NullPointerException("Language " + lang.getLanguage()
-                    + " not available.");
-        }
-
-        List<String> doc
-                = new BufferedReader(is).lines().collect(Collectors.toList());
-        
-        for (String line : doc) {
-            // don't process comments
-            if (!line.startsWith("##")) {
-                String word = line.trim();
-                if (!word.isEmpty())
-                    stopwords.add(word);
+        Set<String> stopwords = new HashSet<>();
+        try (BufferedReader reader = new BufferedReader(is)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // don't process comments
+                if (!line.startsWith("##")) {
+                    String word = line.trim();
+                    if (!word.isEmpty())
+                        stopwords.add(word);
+                }
             }
         }
-
+        return Collections.unmodifiableSet(stopwords);
     }
 
 }
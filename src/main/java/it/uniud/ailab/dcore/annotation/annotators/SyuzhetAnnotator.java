@@ -22,9 +22,11 @@ import java.io.BufferedReader;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import it.uniud.ailab.dcore.annotation.Annotator;
 import it.uniud.ailab.dcore.Blackboard;
 import it.uniud.ailab.dcore.annotation.AnnotationException;
@@ -35,12 +37,16 @@ import it.uniud.ailab.dcore.persistence.Sentence;
 import it.uniud.ailab.dcore.persistence.Token;
 import it.uniud.ailab.dcore.utils.DocumentUtils;
 import it.uniud.ailab.dcore.utils.FileSystem;
+import it.uniud.ailab.dcore.utils.SymbolTable;
 import java.io.InputStreamReader;
 
 /**
  * Annotates the emotional intensity of grams; currently only the English
  * language is supported.
  *
+ * The polarity databases are loaded once and shared by all the instances of
+ * the annotator; use {@link #setDataset(Dataset)} to select the database.
+ *
  * @author Marco Basaldella
  * @see
  * <a href="http://www2.imm.dtu.dk/pubdb/views/publication_details.php?id=6010">The
@@ -57,32 +63,166 @@ public class SyuzhetAnnotator implements Annotator {
     public static final String POLARITY = "Polarity";
     private static final String POLARITY_COUNTER = "Polarity_Counter";
 
-    private enum Dataset {
+    /**
+     * The polarity databases supported by the annotator.
+     */
+    public enum Dataset {
 
+        /**
+         * Liu Bing's lists of positive and negative words.
+         */
         BING,
+        /**
+         * Finn Årup Nielsen's word valence database.
+         */
         AFINN;
     }
 
-    private Dataset dataset = Dataset.AFINN;
+    /**
+     * A polarity database, indexed by word. The lexicon is immutable once 
+     * loaded, so it can be shared by all the instances of the annotator and 
+     * by all the threads. The words are kept as strings rather than in a
+     * symbol table, since the tokens of every document are interned in a
+     * table of their own: the weights of the symbols of a table are resolved
+     * by a {@link Resolver}, once per symbol.
+     */
+    private static final class Lexicon {
+
+        /**
+         * The weight of the words that are not in the lexicon.
+         */
+        private static final int ABSENT = Integer.MAX_VALUE;
+
+        /**
+         * The weight of the symbols not yet looked up in the lexicon.
+         */
+        private static final int UNRESOLVED = Integer.MIN_VALUE;
+
+        /**
+         * The weight of every word.
+         */
+        private final Map<String, Integer> weights;
+
+        private Lexicon(Map<String, Integer> definitions) {
+            this.weights = new HashMap<>(definitions);
+        }
+
+        /**
+         * Gets the weight of a word.
+         *
+         * @param word the word.
+         * @return the weight of the word, or {@link #ABSENT} if the word is
+         * not in the lexicon.
+         */
+        private int getWeight(String word) {
+            Integer weight = weights.get(word);
+            return weight == null ? ABSENT : weight;
+        }
+
+        /**
+         * Creates a resolver of the weights of the symbols of a table.
+         *
+         * @param symbols the symbol table of the document to annotate.
+         * @return the resolver.
+         */
+        private Resolver getResolver(SymbolTable symbols) {
+            return new Resolver(symbols);
+        }
 
-    private Map<String, Integer> weights = new HashMap<>();
+        /**
+         * Resolves the weights of the tokens interned in a symbol table,
+         * looking up every symbol in the lexicon only the first time it's
+         * found. A resolver is used by one annotation at a time, so it needs
+         * no synchronization.
+         */
+        private final class Resolver {
+
+            private final SymbolTable symbols;
+
+            /**
+             * The weight of every symbol, indexed by symbol identifier.
+             */
+            private int[] resolved;
+
+            private Resolver(SymbolTable symbols) {
+                this.symbols = symbols;
+                this.resolved = new int[Math.max(symbols.size(), 16)];
+                Arrays.fill(resolved, UNRESOLVED);
+            }
+
+            /**
+             * Gets the weight of the text of a token.
+             *
+             * @param t the token.
+             * @return the weight of the text of the token, or {@link #ABSENT}
+             * if the text is not in the lexicon.
+             */
+            private int getWeight(Token t) {
+                if (t.getSymbolTable() != symbols) {
+                    return Lexicon.this.getWeight(t.getText());
+                }
+
+                int id = t.getTextId();
+                if (id >= resolved.length) {
+                    int length = resolved.length;
+                    resolved = Arrays.copyOf(resolved,
+                            Math.max(id + 1, length * 2));
+                    Arrays.fill(resolved, length, resolved.length, UNRESOLVED);
+                }
+
+                int weight = resolved[id];
+                if (weight == UNRESOLVED) {
+                    weight = Lexicon.this.getWeight(t.getText());
+                    resolved[id] = weight;
+                }
+                return weight;
+            }
+        }
+    }
 
     /**
-     * Loads the word valence database created by Finn Årup Nielsen.
+     * The lexicons loaded so far, shared by all the instances of the 
+     * annotator.
      */
-    private void loadDefinitions() {
+    private static final Map<Dataset, Lexicon> LEXICONS
+            = new ConcurrentHashMap<>();
 
-        if (dataset == Dataset.AFINN) {
-            loadAfinn();
-        } else {
-            loadBing();
-        }
+    private Dataset dataset = Dataset.AFINN;
+
+    /**
+     * Sets the polarity database to use. The default is 
+     * {@link Dataset#AFINN}.
+     *
+     * @param dataset the polarity database.
+     */
+    public void setDataset(Dataset dataset) {
+        this.dataset = dataset;
+    }
+
+    /**
+     * Gets the lexicon of the selected database, loading it the first time
+     * it's requested.
+     *
+     * @return the lexicon.
+     */
+    private Lexicon getLexicon() {
+        return LEXICONS.computeIfAbsent(dataset, (d) -> {
+            Map<String, Integer> weights = new HashMap<>();
+            if (d == Dataset.AFINN) {
+                loadAfinn(weights);
+            } else {
+                loadBing(weights);
+            }
+            return new Lexicon(weights);
+        });
     }
 
     /**
      * Loads Finn Årup Nielsen polarity database.
+     *
+     * @param weights the map to fill with the weights of the words.
      */
-    private void loadAfinn() {
+    private void loadAfinn(Map<String, Integer> weights) {
 
         BufferedReader br = null;
 
@@ -121,8 +261,10 @@ public class SyuzhetAnnotator implements Annotator {
 
     /**
      * Loads Liu Bing's polarity database.
+     *
+     * @param weights the map to fill with the weights of the words.
      */
-    private void loadBing() {
+    private void loadBing(Map<String, Integer> weights) {
 
         BufferedReader br = null;
         String line;
@@ -204,7 +346,8 @@ public class SyuzhetAnnotator implements Annotator {
             return;
         }
 
-        loadDefinitions();
+        Lexicon.Resolver weights = getLexicon().getResolver(
+                blackboard.getSymbolTable());
 
         List<Sentence> sentences = DocumentUtils.getSentences(component);
 
@@ -217,8 +360,9 @@ public class SyuzhetAnnotator implements Annotator {
             double intensity = 0;
             int markedWords = 0;
             for (Token t : s.getTokens()) {
-                if (weights.containsKey(t.getText())) {
-                    intensity += weights.get(t.getText());
+                int weight = weights.getWeight(t);
+                if (weight != Lexicon.ABSENT) {
+                    intensity += weight;
                     markedWords++;
                 }
             }
@@ -22,19 +22,20 @@ import it.uniud.ailab.dcore.annotation.*;
 import it.uniud.ailab.dcore.annotation.Annotator;
 import it.uniud.ailab.dcore.Blackboard;
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
-import org.apache.http.HttpEntity;
-import org.apache.http.HttpResponse;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import org.apache.http.NameValuePair;
-import org.apache.http.client.ClientProtocolException;
-import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.message.BasicNameValuePair;
 import org.apache.http.util.EntityUtils;
 import org.json.simple.JSONArray;
@@ -52,26 +53,83 @@ import org.springframework.beans.factory.annotation.Required;
  * {@link it.uniud.ailab.dcore.annotation.annotators.GenericWikipediaAnnotator}
  * to sequence of tokens which text coincides with the title of a Wikipedia page. 
  * 
+ * By default, every sentence is sent to TagMe in a separate request. In 
+ * document batching mode, instead, the sentences of the document are packed
+ * in as few requests as possible, each one no longer than a maximum length,
+ * and the spots found by TagMe are mapped back to the sentences using their
+ * offsets.
+ * 
+ * All the instances of the annotator share a pool of HTTP connections, so 
+ * that different documents can be annotated concurrently. Failed requests are
+ * retried with an exponential back-off.
+ * 
  * @author Dario De Nart
  * @author Marco Basaldella
  */
 public class TagMeTokenAnnotator implements Annotator, GenericWikipediaAnnotator {
 
+    /**
+     * The default endpoint of TagMe's API.
+     */
+    public static final String DEFAULT_ENDPOINT = "http://tagme.di.unipi.it/tag";
+
+    /**
+     * The separator between sentences in a batch.
+     */
+    private static final String SENTENCE_SEPARATOR = "\n";
+
+    /**
+     * The HTTP client, shared by all the instances of the annotator so that
+     * they share the connection pool.
+     */
+    private static CloseableHttpClient httpClient = null;
+
+    /**
+     * The maximum number of concurrent requests to TagMe.
+     */
+    private static int maxConnections = 4;
+
+    /**
+     * The timeout of connections and reads, in milliseconds.
+     */
+    private static int timeout = 30000;
+
     /**
      * The endpoint of TagMe's API.
      */
-    private final String tagmeEndpoint = "http://tagme.di.unipi.it/tag";
+    private String tagmeEndpoint = DEFAULT_ENDPOINT;
     
     /**
      * The API key for TagMe. You can get one writing an email to
      * tagme [at] di [dot] unipi [dot] it
      */
     private String apiKey;
-    
+
+    /**
+     * If true, the sentences of a document are sent in batches.
+     */
+    private boolean documentBatching = false;
+
+    /**
+     * The maximum length, in characters, of a batch of sentences.
+     */
+    private int maxBatchLength = 10000;
+
+    /**
+     * The number of times a failed request is retried.
+     */
+    private int maxRetries = 3;
+
+    /**
+     * The time to wait before the first retry, in milliseconds; the time is
+     * doubled at every following retry.
+     */
+    private long retryDelay = 1000;
+
     /**
-     * The JSON parser object.
+     * The minimum rho (i.e. confidence) of the spots to keep.
      */
-    private final JSONParser parser = new JSONParser();
+    private double minRho = 0.15;
 
     /**
      * Set the API key for querying TagMe. You can get one for tree writing an
@@ -84,121 +142,337 @@ public class TagMeTokenAnnotator implements Annotator, GenericWikipediaAnnotator
         this.apiKey = apiKey;
     }
 
-    
+    /**
+     * Sets the endpoint of the TagMe service, e.g. to use a local instance. 
+     * 
+     * @param endpoint the address of the tag API.
+     */
+    public void setEndpoint(String endpoint) {
+        this.tagmeEndpoint = endpoint;
+    }
+
+    /**
+     * Enables the document batching mode, where the sentences of a document
+     * are sent together instead of one per request. Default is false.
+     * 
+     * @param documentBatching true to send the sentences in batches.
+     */
+    public void setDocumentBatching(boolean documentBatching) {
+        this.documentBatching = documentBatching;
+    }
+
+    /**
+     * Sets the maximum length, in characters, of a batch of sentences in 
+     * document batching mode. A sentence longer than the limit is sent alone.
+     * Default is 10000.
+     * 
+     * @param maxBatchLength the maximum length of a batch.
+     */
+    public void setMaxBatchLength(int maxBatchLength) {
+        this.maxBatchLength = maxBatchLength;
+    }
+
+    /**
+     * Sets the number of times a failed request is retried. Default is 3.
+     * 
+     * @param maxRetries the number of retries.
+     */
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    /**
+     * Sets the time to wait before retrying a failed request, which doubles
+     * at every retry. Default is 1000 milliseconds.
+     * 
+     * @param retryDelay the delay before the first retry, in milliseconds.
+     */
+    public void setRetryDelay(long retryDelay) {
+        this.retryDelay = retryDelay;
+    }
+
+    /**
+     * Sets the minimum confidence of the spots to annotate. Default is 0.15.
+     * 
+     * @param minRho the minimum rho of a spot.
+     */
+    public void setMinRho(double minRho) {
+        this.minRho = minRho;
+    }
+
+    /**
+     * Sets the maximum number of concurrent requests sent to TagMe by all
+     * the instances of the annotator. Default is 4.
+     * 
+     * @param maxConnections the maximum number of concurrent requests.
+     */
+    public void setMaxConnections(int maxConnections) {
+        synchronized (TagMeTokenAnnotator.class) {
+            TagMeTokenAnnotator.maxConnections = maxConnections;
+            closeClient();
+        }
+    }
+
+    /**
+     * Sets the connection and read timeout of the requests sent to TagMe by
+     * all the instances of the annotator. Default is 30000 milliseconds.
+     * 
+     * @param timeout the timeout, in milliseconds.
+     */
+    public void setTimeout(int timeout) {
+        synchronized (TagMeTokenAnnotator.class) {
+            TagMeTokenAnnotator.timeout = timeout;
+            closeClient();
+        }
+    }
+
+    /**
+     * Closes the shared HTTP client, so that a new one with the current 
+     * settings will be created.
+     */
+    private static synchronized void closeClient() {
+        if (httpClient != null) {
+            try {
+                httpClient.close();
+            } catch (IOException ex) {
+                Logger.getLogger(TagMeTokenAnnotator.class.getName()).log(
+                        Level.WARNING, "Cannot close the TagMe client", ex);
+            }
+            httpClient = null;
+        }
+    }
+
+    /**
+     * Gets the shared HTTP client, creating it if needed.
+     * 
+     * @return the HTTP client.
+     */
+    private static synchronized CloseableHttpClient getClient() {
+        if (httpClient == null) {
+            PoolingHttpClientConnectionManager pool
+                    = new PoolingHttpClientConnectionManager();
+            pool.setMaxTotal(maxConnections);
+            pool.setDefaultMaxPerRoute(maxConnections);
+
+            httpClient = HttpClients.custom()
+                    .setConnectionManager(pool)
+                    .setDefaultRequestConfig(RequestConfig.custom()
+                            .setConnectTimeout(timeout)
+                            .setConnectionRequestTimeout(timeout)
+                            .setSocketTimeout(timeout)
+                            .build())
+                    .build();
+        }
+        return httpClient;
+    }
+
+    /**
+     * A spot found by TagMe: a span of the text linked to a Wikipedia page.
+     */
+    private static class Spot {
+
+        private final int start;
+        private final int end;
+        private final String title;
+
+        private Spot(int start, int end, String title) {
+            this.start = start;
+            this.end = end;
+            this.title = title;
+        }
+    }
     
     /**
      * The method that actually does the job: it tags a text string with
-     * Wikipedia page titles when needed, and puts the result in a convenient
-     * HashMap.
+     * Wikipedia page titles when needed, retrying if the request fails.
      * 
      * @param text the text to tag
      * @param lang the language of the text
-     * @return an hashmap with the substrings of the input text and their matching
-     * Wikipedia page
+     * @return the spots found in the text, with their offsets
      */
-    private HashMap<String, String> tagSentence(String text, String lang) {
-        HashMap<String, String> output = new HashMap();
-        HttpClient httpClient = HttpClients.createDefault();
-        HttpPost httpPost = new HttpPost(tagmeEndpoint);
+    private List<Spot> tagText(String text, String lang) {
+        
         // Request parameters and other properties.
         List<NameValuePair> params = new ArrayList<>();
         params.add(new BasicNameValuePair("text", text));
         params.add(new BasicNameValuePair("key", apiKey));
         params.add(new BasicNameValuePair("lang", lang));
-        try {
-            httpPost.setEntity(new UrlEncodedFormEntity(params, "UTF-8"));
-        } catch (UnsupportedEncodingException e) {
-            throw new AnnotationException(
-                    this,"Encoding error while building TAGME request URL",e);
-        }
-
         
-        try {
-            HttpResponse response = httpClient.execute(httpPost);
-            HttpEntity respEntity = response.getEntity();
-
-            if (respEntity != null) {
-                // EntityUtils to get the response content
-                String content = EntityUtils.toString(respEntity);
-                Object obj = parser.parse(content);
-                JSONObject queryblock = (JSONObject) obj;
-                JSONArray annotationBlock = (JSONArray) queryblock.get("annotations");
-                Iterator<JSONObject> iterator = annotationBlock.iterator();
-                while (iterator.hasNext()) {
-                    JSONObject tag = (iterator.next());
-                    Float rho = Float.parseFloat((String) tag.get("rho"));
-                    if (rho > 0.15) {
-                        String spot = (String) tag.get("spot");
-                        String lemma = (String) tag.get("title");
-                        output.put(spot, lemma);
-                    }
-
+        IOException lastError = null;
+        for (int attempt = 0; attempt <= maxRetries; attempt++) {
+            
+            if (attempt > 0) {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(retryDelay << (attempt - 1));
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new AnnotationException(
+                            this, "Interrupted while querying TAGME", ex);
                 }
+            }
+            
+            HttpPost httpPost = new HttpPost(tagmeEndpoint);
+            httpPost.setEntity(new UrlEncodedFormEntity(params, 
+                    StandardCharsets.UTF_8));
 
+            try (CloseableHttpResponse response 
+                    = getClient().execute(httpPost)) {
+                
+                int status = response.getStatusLine().getStatusCode();
+                String content = response.getEntity() == null ? null
+                        : EntityUtils.toString(response.getEntity(), "UTF-8");
+                
+                if (status == 429 || status >= 500) {
+                    // the service is overloaded or broken: try again
+                    lastError = new IOException("TAGME answered " 
+                            + response.getStatusLine());
+                    continue;
+                } else if (status != 200) {
+                    throw new AnnotationException(this, "TAGME answered " 
+                            + response.getStatusLine());
+                }
+                
+                return content == null ? new ArrayList<>() 
+                        : parseSpots(content);
+                
+            } catch (IOException e) {
+                lastError = e;
+                Logger.getLogger(TagMeTokenAnnotator.class.getName()).log(
+                        Level.FINE, "Fail querying TAGME, attempt " 
+                        + (attempt + 1), e);
+            } catch (ParseException e) {
+                throw new AnnotationException(this,"Fail while parsing TAGME json",e);
             }
-        } catch (ClientProtocolException e) {
-            throw new AnnotationException(this,"Fail while querying TAGME",e);
-        } catch (IOException e) {
-            throw new AnnotationException(this,"Fail querying TAGME",e);
-        } catch (ParseException e) {
-            throw new AnnotationException(this,"Fail while parsing TAGME json",e);
         }
-        return output;
+        throw new AnnotationException(this,"Fail querying TAGME",lastError);
     }
 
     /**
-     * Annotates a single sentence with the Wikipedia flag. Used as base case 
-     * for recursion.
+     * Parses the answer of TagMe.
      * 
-     * @param sentence the sentence to annotate.
+     * @param content the JSON answer of TagMe.
+     * @return the spots with a rho greater than the threshold.
+     * @throws ParseException if the answer is not valid JSON.
      */
-    private void annotateSentence(Sentence sentence) {        
+    private List<Spot> parseSpots(String content) throws ParseException {
         
-        String text = sentence.getText();
-        // Retrieve the tagMe annotations using the internal TagMe wrapper
-        HashMap<String, String> taggedSentence = tagSentence(text, sentence.getLanguage().getLanguage());
+        List<Spot> spots = new ArrayList<>();
+        JSONObject queryblock = (JSONObject) new JSONParser().parse(content);
+        JSONArray annotationBlock = (JSONArray) queryblock.get("annotations");
+        if (annotationBlock == null) {
+            return spots;
+        }
         
+        for (Object o : annotationBlock) {
+            JSONObject tag = (JSONObject) o;
+            // depending on the version of TagMe, numbers may be strings
+            double rho = Double.parseDouble(String.valueOf(tag.get("rho")));
+            if (rho > minRho && tag.get("title") != null) {
+                spots.add(new Spot(
+                        Integer.parseInt(String.valueOf(tag.get("start"))),
+                        Integer.parseInt(String.valueOf(tag.get("end"))),
+                        (String) tag.get("title")));
+            }
+        }
+        return spots;
+    }
+
+    /**
+     * Annotates a batch of sentences with the Wikipedia flag, sending them to
+     * TagMe in a single request.
+     * 
+     * @param batch the sentences to annotate.
+     */
+    private void annotateBatch(List<Sentence> batch) {
+        
+        // join the sentences, remembering where every one starts
+        StringBuilder text = new StringBuilder();
+        int[] starts = new int[batch.size()];
+        for (int i = 0; i < batch.size(); i++) {
+            if (i > 0) {
+                text.append(SENTENCE_SEPARATOR);
+            }
+            starts[i] = text.length();
+            text.append(batch.get(i).getText());
+        }
         
+        // Retrieve the tagMe annotations using the internal TagMe wrapper
+        List<Spot> spots = tagText(text.toString(), 
+                batch.get(0).getLanguage().getLanguage());
         
-        // Put the annotations in the appropriate token
+        // Put every annotation in the sentence that contains it
+        for (Spot spot : spots) {
+            int i = batch.size() - 1;
+            while (i > 0 && starts[i] > spot.start) {
+                i--;
+            }
+            annotateSpot(batch.get(i), spot.start - starts[i], 
+                    spot.end - starts[i], spot.title);
+        }
+    }
+
+    /**
+     * Annotates the tokens of a sentence that are covered by a spot.
+     * 
+     * @param sentence the sentence that contains the spot.
+     * @param start the offset of the spot in the sentence.
+     * @param end the offset of the end of the spot in the sentence.
+     * @param title the title of the Wikipedia page of the spot.
+     */
+    private void annotateSpot(Sentence sentence, int start, int end, 
+            String title) {
         
-        for (String surface : taggedSentence.keySet()) {
-            String matchedSurface = surface;
-            List<Token> matchedTokens = new ArrayList<>();
-            for (Token t : sentence.getTokens()) {
-                String part = t.getText();
-                if (!matchedSurface.startsWith(part))
+        // find the tokens in the text of the sentence, using the offsets 
+        // given by the tokenizer when available: a token that is not 
+        // found (e.g. because the tokenizer normalized it) is skipped
+        String text = sentence.getText();
+        List<Token> matchedTokens = new ArrayList<>();
+        int cursor = 0;
+        for (Token t : sentence.getTokens()) {
+            int tokenStart = t.getBeginOffset();
+            int tokenEnd = t.getEndOffset();
+            if (tokenStart < 0) {
+                tokenStart = text.indexOf(t.getText(), cursor);
+                if (tokenStart < 0) {
                     continue;
-                
-                matchedTokens.add(t);
-                matchedSurface = matchedSurface.substring(part.length());
-                while (matchedSurface.startsWith(" "))
-                    matchedSurface = matchedSurface.substring(1);
+                }
+                tokenEnd = tokenStart + t.getText().length();
             }
+            cursor = tokenEnd;
             
-            if (!matchedTokens.isEmpty()) {
-                TextAnnotation ann = new TextAnnotation(WIKIFLAG, 
-                        matchedTokens.toArray(new Token[matchedTokens.size()]),
-                        taggedSentence.get(surface));
-                
-                matchedTokens.stream().forEach(t -> {
-                    t.addAnnotation(ann);});
-                
+            if (tokenStart >= end) {
+                break;
+            }
+            if (tokenEnd > start) {
+                matchedTokens.add(t);
             }
         }
-        /*
-        for (Token t : sentence.getTokens()) {
-            String part = t.getText();
-            boolean match = false;
-            List<Token> matchedTokens = new ArrayList<>();
-            for (String surface : taggedSentence.keySet()) {
-                if (surface.contains(part)) {
-;
-                }
+
+        if (!matchedTokens.isEmpty()) {
+            TextAnnotation ann = new TextAnnotation(WIKIFLAG, 
+                    matchedTokens.toArray(new Token[matchedTokens.size()]),
+                    title);
+
+            matchedTokens.stream().forEach(t -> {
+                t.addAnnotation(ann);});
+        }
+    }
+
+    /**
+     * Collects the sentences of a component.
+     * 
+     * @param component the component.
+     * @param sentences the list to fill.
+     */
+    private void collectSentences(DocumentComponent component, 
+            List<Sentence> sentences) {
+        if (!component.hasComponents()) {
+            sentences.add((Sentence) component);
+        } else {
+            for (DocumentComponent c : component.getComponents()) {
+                collectSentences(c, sentences);
             }
-            TextAnnotation ann = new TextAnnotation(WIKIFLAG, matchedTokens, taggedSentence.get(surface));
-                    t.addAnnotation(ann);
-        }*/
+        }
     }
 
     /**
@@ -213,12 +487,28 @@ public class TagMeTokenAnnotator implements Annotator, GenericWikipediaAnnotator
     @Override
     public void annotate(Blackboard blackboard,DocumentComponent component) {
         
-        if (!component.hasComponents()) {
-            annotateSentence((Sentence)component);
-        } else {
-            for (DocumentComponent c : component.getComponents()) {
-                annotate(blackboard,c);
+        List<Sentence> sentences = new ArrayList<>();
+        collectSentences(component, sentences);
+        
+        List<Sentence> batch = new ArrayList<>();
+        int length = 0;
+        for (Sentence s : sentences) {
+            int sentenceLength = s.getText().length() 
+                    + SENTENCE_SEPARATOR.length();
+            
+            if (!batch.isEmpty() && (!documentBatching 
+                    || length + sentenceLength > maxBatchLength
+                    || !s.getLanguage().equals(batch.get(0).getLanguage()))) {
+                annotateBatch(batch);
+                batch = new ArrayList<>();
+                length = 0;
             }
+            batch.add(s);
+            length += sentenceLength;
+        }
+        
+        if (!batch.isEmpty()) {
+            annotateBatch(batch);
         }
     }
 
@@ -29,25 +29,22 @@ import it.uniud.ailab.dcore.annotation.annotations.UriAnnotation;
 import static it.uniud.ailab.dcore.annotation.annotators.GenericWikipediaAnnotator.WIKIURI;
 import it.uniud.ailab.dcore.persistence.DocumentComponent;
 import it.uniud.ailab.dcore.persistence.Keyphrase;
+import it.uniud.ailab.dcore.utils.Pair;
+import it.uniud.ailab.dcore.utils.WikipediaCache;
+import it.uniud.ailab.dcore.utils.WikipediaClient;
+import it.uniud.ailab.dcore.utils.WikipediaGraphIndex;
 import it.uniud.ailab.dcore.utils.WikipediaUtils;
-import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
-import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import org.json.simple.JSONArray;
-import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
-import org.json.simple.parser.ParseException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 // Seeing if something makes a match in Wikipedia it's easy
 // The API has a nice lookup utility called OpenSearch, that we can use like
@@ -104,13 +101,6 @@ public class WikipediaInferenceAnnotator implements Annotator {
      */
     private String userAgent;
 
-    /**
-     * The query that will be performed using the Wikipedia OpenSearch APIs.
-     * Protocol, languages and the page queries need to be appended before and
-     * after this string.
-     */
-    private final String wikipediaQuery = "wikipedia.org/w/api.php?action=query&prop=categories|extracts|links&clshow=!hidden&format=json&pllimit=500&plnamespace=0&titles=";
-
     // Blacklist of unwanted terms
     private static final List<String> blackTerms = Arrays.asList(new String[]{"null", "International Standard Book Number",
         "Digital object identifier",
@@ -140,6 +130,154 @@ public class WikipediaInferenceAnnotator implements Annotator {
      */
     Locale componentLocale;
 
+    /**
+     * The cache of the categories and links of the Wikipedia pages. The field
+     * is static so that it's shared by all the documents and all the 
+     * instances of the annotator, and it's created the first time it's used,
+     * since the default cache creates and purges its folder on disk.
+     */
+    private static WikipediaCache cache = null;
+
+    /**
+     * The client used to query Wikipedia, shared by all the instances of the
+     * annotator so that they share the connection pool and the rate limit.
+     */
+    private static WikipediaClient client = null;
+
+    /**
+     * The maximum number of concurrent requests to Wikipedia.
+     */
+    private static int maxConnections = 4;
+
+    /**
+     * The maximum number of requests per second sent to Wikipedia.
+     */
+    private static double requestsPerSecond = 10;
+
+    /**
+     * The paths of the offline indexes of Wikipedia, by language.
+     */
+    private Map<Locale, String> indexPaths = new HashMap<>();
+
+    /**
+     * The offline indexes already opened, shared by all the instances of the
+     * annotator.
+     */
+    private static final Map<String, WikipediaGraphIndex> indexes
+            = new HashMap<>();
+
+    /**
+     * Replaces the cache of the Wikipedia pages, shared by all the instances
+     * of the annotator. By default, the pages are cached for a week in the 
+     * temporary folder of the Distiller.
+     *
+     * @param newCache the new cache.
+     */
+    public void setCache(WikipediaCache newCache) {
+        synchronized (WikipediaInferenceAnnotator.class) {
+            cache = newCache;
+        }
+    }
+
+    /**
+     * Sets the maximum number of concurrent requests sent to Wikipedia by 
+     * all the instances of the annotator. Default is 4.
+     *
+     * @param maxConnections the maximum number of concurrent requests.
+     */
+    public void setMaxConnections(int maxConnections) {
+        synchronized (WikipediaInferenceAnnotator.class) {
+            WikipediaInferenceAnnotator.maxConnections = maxConnections;
+            closeClient();
+        }
+    }
+
+    /**
+     * Sets the maximum number of requests per second sent to Wikipedia by 
+     * all the instances of the annotator. Default is 10.
+     *
+     * @param requestsPerSecond the maximum number of requests per second.
+     */
+    public void setRequestsPerSecond(double requestsPerSecond) {
+        synchronized (WikipediaInferenceAnnotator.class) {
+            WikipediaInferenceAnnotator.requestsPerSecond = requestsPerSecond;
+            closeClient();
+        }
+    }
+
+    /**
+     * Sets the offline indexes of Wikipedia, built with
+     * {@link it.uniud.ailab.dcore.utils.WikipediaGraphIndexBuilder}. When a 
+     * document is written in a language that has an index, the categories 
+     * and the links of the pages are read from the index instead of being 
+     * downloaded, so the annotator works without network access.
+     *
+     * @param indexPaths the paths of the indexes, by language.
+     */
+    public void setIndexPaths(Map<Locale, String> indexPaths) {
+        this.indexPaths = indexPaths;
+    }
+
+    /**
+     * Gets the offline index of Wikipedia stored in a file, opening it if
+     * needed.
+     *
+     * @param path the path of the index.
+     * @return the index.
+     * @throws IOException if the index can't be opened.
+     */
+    private static WikipediaGraphIndex getIndex(String path) throws IOException {
+        synchronized (indexes) {
+            WikipediaGraphIndex index = indexes.get(path);
+            if (index == null) {
+                index = new WikipediaGraphIndex(new File(path));
+                indexes.put(path, index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Closes the client used to query Wikipedia, so that a new one with the
+     * current settings will be created.
+     */
+    private static synchronized void closeClient() {
+        if (client != null) {
+            try {
+                client.close();
+            } catch (IOException ex) {
+                Logger.getLogger(WikipediaInferenceAnnotator.class.getName()).log(
+                        Level.WARNING, "Cannot close the Wikipedia client", ex);
+            }
+            client = null;
+        }
+    }
+
+    /**
+     * Gets the client used to query Wikipedia, creating it if needed.
+     *
+     * @return the Wikipedia client.
+     */
+    private static synchronized WikipediaClient getClient() {
+        if (client == null) {
+            client = new WikipediaClient(maxConnections, requestsPerSecond);
+        }
+        return client;
+    }
+
+    /**
+     * Gets the cache of the Wikipedia pages, e.g. to read its hit rate,
+     * creating it if needed.
+     *
+     * @return the cache of the Wikipedia pages.
+     */
+    public static synchronized WikipediaCache getCache() {
+        if (cache == null) {
+            cache = new WikipediaCache();
+        }
+        return cache;
+    }
+
     /**
      * Set the user agent used for requests to Wikipedia.
      * 
@@ -196,187 +334,93 @@ public class WikipediaInferenceAnnotator implements Annotator {
      */
     private void findHyperymsAndRelated(List<Keyphrase> grams) {
         
-        HttpURLConnection con = null;
-        BufferedReader reader = null;
-
-        // We may pipe several article titles in one query, but for some awkward reason,
-        // the API won't give us the full category list of the requested terms, nor the full definition
-        for (Keyphrase currentGram : grams) {
+        WikipediaCache pages = getCache();
+        String language = componentLocale.getLanguage();
 
-            // this will contain the categories (i.e. our hypernyms)s
-            ArrayList<String> wikiCategories = new ArrayList<>();
+        // the Wikipedia page of every gram
+        List<String> titles = new ArrayList<>();
 
-            // this will contain the related links
-            ArrayList<String> wikiLinks = new ArrayList<>();
+        for (Keyphrase currentGram : grams) {
 
             String page = ((UriAnnotation) currentGram.getAnnotation(WIKIURI))
                     .getUriTitle();
 
-            /*
-            // get the correct annotation that generated the wikiflag
-            TextAnnotation a = (TextAnnotation) currentGram.getTokens().get(0).
-                    getAnnotation(WIKIFLAG);
-
-            // the annotations have the same length, so we may have a legit
-            // wikipedia surface as the gram
-            
-            if (a.getTokens().length == currentGram.getTokens().size()) {
-
-                boolean isTagged = true;
-
-                for (int i = 0; i < a.getTokens().length && isTagged; i++) {
-                    isTagged = a.getTokens()[i].equals(
-                            currentGram.getTokens().get(i));
-                }
-
-                if (isTagged) {
-                    page = a.getAnnotation();
-                }
-            }*/
-
             if (page == null)
                 throw new AnnotationException(this,
                         "I couldn't find the correct annotation.");
                         
-            page = page.replaceAll(" ", "_");
+            titles.add(page.replaceAll(" ", "_"));
+        }
 
-            // do the query and save the retrieved json in an object.
-            String queryAddress = String.format("https://%s.%s%s",
-                     componentLocale.getLanguage(), wikipediaQuery, page);
+        Map<String, Pair<List<String>, List<String>>> found = new HashMap<>();
+        List<String> missing = new ArrayList<>();
 
+        String indexPath = indexPaths.get(componentLocale);
+        if (indexPath != null) {
+            // offline mode: read the pages from the local index
+            WikipediaGraphIndex index;
             try {
+                index = getIndex(indexPath);
+            } catch (IOException ex) {
+                throw new AnnotationException(this,
+                        "Error while opening the Wikipedia index " + indexPath, ex);
+            }
+            for (String page : titles) {
+                Pair<List<String>, List<String>> info 
+                        = index.getCategoriesAndLinks(page);
+                found.put(page, new Pair<>(filterCategories(info.getLeft()),
+                        filterLinks(info.getRight())));
+            }
+        }
 
-                con = (HttpURLConnection) (new URL(queryAddress)).openConnection();
-                con.setRequestProperty("User-Agent", userAgent);
-                con.setRequestMethod("GET");
-                reader = new BufferedReader(new InputStreamReader(con.getInputStream()));
-                Object json = (new JSONParser()).parse(reader);
-                // closing connection
-                con.disconnect();
-                // The retrieved JSON is something like:
-                //
-                // "query": {
-                //        "pages": {
-                //            "<PAGE ID NUMBER>": {
-                //                "pageid": "<PAGE ID NUMBER>",
-                //                "ns": 0,
-                //                "title": "<PAGE TITLE>",
-                //                "categories": [
-                //                    {
-                //                        "ns": 14,
-                //                        "title": "Category:<CATEGORY 1>"
-                //                    },
-                //                    {
-                //                        "ns": 14,
-                //                        "title": "Category:<CATEGORY 2>"
-                //                    },
-                //                    {
-                //                        "ns": 14,
-                //                        "title": "Category:<CATEGORY 3>"
-                //                    }
-                //                ],
-                //                "extract":"<TEXT>",
-                //                "links": [
-                //                    {
-                //                        "ns": 0,
-                //                        "title": "<LINK 1>"
-                //                    },
-                //                    {
-                //                        "ns": 0,
-                //                        "title": "<LINK 2>"
-                //                    },
-                //                    {
-                //                        "ns": 0,
-                //                        "title": "<LINK 3>"
-                //                    }
-                //                 ]
-                //            }
-                //        }
-                //    }
-                //}
-                // note that NOT ALL the wikis have the "extract" property in the API
-                // therefore we may not assume that it will always be there
-                JSONObject queryblock = (JSONObject) json;
-                JSONObject pagesBlock = (JSONObject) queryblock.get("query");
-                JSONObject idBlock = (JSONObject) pagesBlock.get("pages");
-
-                // if we pipe'd more than one title, we'll have more than one pageId entry
-                for (Iterator it = idBlock.keySet().iterator(); it.hasNext();) {
-
-                    String pageId = (String) it.next();
-                    JSONObject block = (JSONObject) idBlock.get(pageId);
-                    // finally... The Categories!
-                    JSONArray categories = (JSONArray) block.get("categories");
-                    if (categories != null) {
-                        Iterator<JSONObject> iterator = categories.iterator();
-                        while (iterator.hasNext()) {
-                            JSONObject category = (iterator.next());
-                            String catName = (String) category.get("title");
-                            catName = catName.replaceFirst("Category:", "");
-                            catName = catName.replaceFirst("Categoria:", "");
-                            if (!catName.toLowerCase().contains("stub") &&
-                                    !catName.contains("Featured Articles") && 
-                                    !catName.toLowerCase().contains("disambiguation")) {
-                                //System.out.println(catName);
-                                if (!wikiCategories.contains(catName) && !blackTerms.contains(catName)) {
-                                    wikiCategories.add(catName);
-                                }
-                            }
-                        }
-                    }
-                    
-                    // We can find related entities in the text
-                    // many articles have a "See Also" section that begins with
-                    //          <h2>See also</h2>\n<ul>
-                    // and ends with:
-                    //          </ul>
-
-                    // To retrieve these links, we don't need to scrap HTML.
-                    // We can just read the list of links included in the JSON
-                    // the drawback of this approach is that some pages have huge
-                    // amounts of links and many of them are uninteresting
-                    
-                    // For example, almost any page has a reference to the
-                    // definition of ISBN (contained in the references)
-                    // or of some other kind of wide-used identifier such as:
-                    // Pub-Med index,
-                    // Digital-Object-Identifier,
-                    // International Standard Book Number,
-                    // Wikisource, and so on.
-                    
-                    JSONArray links = (JSONArray) block.get("links");
-                    if (links != null) {
-                        Iterator<JSONObject> iterator = links.iterator();
-                        while (iterator.hasNext()) {
-                            JSONObject link = (iterator.next());
-                            String linkname = (String) link.get("title");
-
-                            if (!wikiLinks.contains(linkname) && !blackTerms.contains(linkname)) {
-                                wikiLinks.add(linkname);
-                            }
-
-                        }
-                    }
-                }
+        // get the pages that are not in the cache with as few requests
+        // as possible: titles are piped in batches, sent concurrently
+        for (String page : titles) {
+            if (found.containsKey(page)) {
+                continue;
+            }
 
-            } catch (ParseException ex) {
-                throw new AnnotationException(this,
-                        "Error while parsing JSON by Wikipedia for page: " + page,ex);
-            } catch (MalformedURLException ex) {
-                throw new AnnotationException(this,
-                        "Malformed Wikipedia URL: " + queryAddress,ex);
+            Pair<List<String>, List<String>> info
+                    = pages.get(language + ":" + page);
+            if (info == null) {
+                missing.add(page);
+            } else {
+                found.put(page, info);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            Map<String, Pair<List<String>, List<String>>> downloaded;
+            try {
+                downloaded = getClient().getCategoriesAndLinks(
+                        language, missing, userAgent);
             } catch (IOException ex) {
                 throw new AnnotationException(this,
-                        "Error while reading Wikipedia",ex);
-            } finally {
-                try {
-                    if (reader != null) reader.close();
-                } catch (IOException ex) {
-                    throw new AnnotationException(this,
-                            "Error while reading Wikipedia",ex);
-                }
+                        "Error while reading Wikipedia", ex);
             }
 
+            for (Map.Entry<String, Pair<List<String>, List<String>>> e
+                    : downloaded.entrySet()) {
+                Pair<List<String>, List<String>> info = new Pair<>(
+                        filterCategories(e.getValue().getLeft()),
+                        filterLinks(e.getValue().getRight()));
+                pages.put(language + ":" + e.getKey(),
+                        info.getLeft(), info.getRight());
+                found.put(e.getKey(), info);
+            }
+        }
+
+        for (int i = 0; i < grams.size(); i++) {
+
+            Keyphrase currentGram = grams.get(i);
+            Pair<List<String>, List<String>> info = found.get(titles.get(i));
+
+            // the categories (i.e. our hypernyms)
+            List<String> wikiCategories = info.getLeft();
+
+            // the related links
+            List<String> wikiLinks = info.getRight();
+
             // Update the results.
             
             // How does it work? The strenght of an hypernym or related concept
@@ -407,6 +451,72 @@ public class WikipediaInferenceAnnotator implements Annotator {
             }
 
         } // for (Gram currentGram : grams)
+
+        Logger.getLogger(WikipediaInferenceAnnotator.class.getName()).log(
+                Level.FINE, "Wikipedia cache: {0}", pages);
     } // void findHypernymsAndRelated
 
+    /**
+     * Removes the prefix and the maintenance categories from the categories
+     * of a page returned by Wikipedia.
+     *
+     * @param categories the categories of the page.
+     * @return the useful categories.
+     */
+    private List<String> filterCategories(List<String> categories) {
+
+        List<String> wikiCategories = new ArrayList<>();
+
+        for (String catName : categories) {
+            catName = catName.replaceFirst("Category:", "");
+            catName = catName.replaceFirst("Categoria:", "");
+            if (!catName.toLowerCase().contains("stub") &&
+                    !catName.contains("Featured Articles") && 
+                    !catName.toLowerCase().contains("disambiguation")) {
+                if (!wikiCategories.contains(catName) && !blackTerms.contains(catName)) {
+                    wikiCategories.add(catName);
+                }
+            }
+        }
+        return wikiCategories;
+    }
+
+    /**
+     * Removes the uninteresting links from the links of a page returned by 
+     * Wikipedia.
+     *
+     * @param links the links of the page.
+     * @return the useful links.
+     */
+    private List<String> filterLinks(List<String> links) {
+
+        // We can find related entities in the text
+        // many articles have a "See Also" section that begins with
+        //          <h2>See also</h2>\n<ul>
+        // and ends with:
+        //          </ul>
+
+        // To retrieve these links, we don't need to scrap HTML.
+        // We can just read the list of links included in the JSON
+        // the drawback of this approach is that some pages have huge
+        // amounts of links and many of them are uninteresting
+                
+        // For example, almost any page has a reference to the
+        // definition of ISBN (contained in the references)
+        // or of some other kind of wide-used identifier such as:
+        // Pub-Med index,
+        // Digital-Object-Identifier,
+        // International Standard Book Number,
+        // Wikisource, and so on.
+
+        List<String> wikiLinks = new ArrayList<>();
+
+        for (String linkname : links) {
+            if (!wikiLinks.contains(linkname) && !blackTerms.contains(linkname)) {
+                wikiLinks.add(linkname);
+            }
+        }
+        return wikiLinks;
+    }
+
 } // class
@@ -105,6 +105,34 @@ public abstract class GenericDataset implements Comparator<String> {
     @Override
     public abstract int compare(String o1, String o2);
     
+    /**
+     * Normalizes a <b>candidate</b> item, so that it can be matched with the 
+     * <b>dataset provided</b> items by simple equality. Datasets should 
+     * override this method and {@link #getAlternatives(java.lang.String)} 
+     * so that <code>compare(o1, o2)</code> is 0 if and only if 
+     * <code>normalize(o1)</code> is one of <code>getAlternatives(o2)</code>;
+     * this allows to compare the candidates with a hash lookup. The default
+     * implementation returns the candidate unchanged.
+     * 
+     * @param candidate the object to test, generated by the Distiller
+     * @return the normalized candidate.
+     */
+    public String normalize(String candidate) {
+        return candidate;
+    }
+    
+    /**
+     * Gets the normalized forms that a <b>candidate</b> item must have to 
+     * match a <b>dataset provided</b> item. The default implementation 
+     * returns the item itself.
+     * 
+     * @param item the reference object, provided by the training set.
+     * @return the forms that match the item.
+     */
+    public String[] getAlternatives(String item) {
+        return new String[]{item};
+    }
+    
     /**
      * Loads the input documents and returns them.
      *
@@ -206,8 +206,30 @@ public class SemEval2010 extends GenericDataset {
      */
     @Override
     public int compare(String o1, String o2) {
+        
+        o1 = normalize(o1);
+
+        boolean found = false;
+
+        String[] goldKPs = getAlternatives(o2);
+        for (int i = 0; i < goldKPs.length && !found; i++) {
+            found = o1.equals(goldKPs[i]);
+        }
+
+        return found ? 0 : 1;
+    }
+    
+    /**
+     * Stems a candidate keyphrase with the Porter stemmer, the same way the
+     * gold standard keyphrases are stemmed.
+     *
+     * @param candidate the candidate keyphrase
+     * @return the stemmed candidate.
+     */
+    @Override
+    public String normalize(String candidate) {
         PorterStemmer stemmer = new PorterStemmer();
-        String[] tokens = o1.split(" ");
+        String[] tokens = candidate.split(" ");
 
         for (int i = 0; i < tokens.length; i++) {
 
@@ -225,20 +247,19 @@ public class SemEval2010 extends GenericDataset {
                 tokens[i] = String.join("-",subtokens);
             }
         }
-        o1 = String.join(" ", tokens);
-
-        boolean found = false;
-
-        if (o2.indexOf('+') < 0) {
-            found = o1.equals(o2);
-        } else {
-            String[] goldKPs = o2.split("\\+");
-            for (int i = 0; i < goldKPs.length && !found; i++) {
-                found = o1.equals(goldKPs[i]);
-            }
-        }
-
-        return found ? 0 : 1;
+        return String.join(" ", tokens);
+    }
+    
+    /**
+     * Gets the alternatives of a gold standard keyphrase, which are separated
+     * by a "+".
+     *
+     * @param item the gold standard keyphrase
+     * @return the alternative forms of the keyphrase.
+     */
+    @Override
+    public String[] getAlternatives(String item) {
+        return item.indexOf('+') < 0 ? new String[]{item} : item.split("\\+");
     }
 
     /**
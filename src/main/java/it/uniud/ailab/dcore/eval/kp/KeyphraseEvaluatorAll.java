@@ -18,20 +18,76 @@
  */
 package it.uniud.ailab.dcore.eval.kp;
 
-import it.uniud.ailab.dcore.DistilledOutput;
+import it.uniud.ailab.dcore.Blackboard;
 import it.uniud.ailab.dcore.Distiller;
+import it.uniud.ailab.dcore.DistillerException;
 import it.uniud.ailab.dcore.eval.Evaluator;
 import it.uniud.ailab.dcore.eval.GenericDataset;
+import it.uniud.ailab.dcore.persistence.Gram;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
- * Abstract keyphrase extraction evaluator object.
+ * Evaluates all the keyphrases extracted by a Distiller against the gold 
+ * standard of a dataset.
+ * 
+ * The documents of the test set are distilled one after another, or 
+ * concurrently if more threads are set with {@link #setThreads(int)}. Every
+ * candidate keyphrase is normalized once, and matched with a hash lookup
+ * against the normalized forms of the gold standard keyphrases, which are
+ * computed once per document.
  *
  * @author Marco Basaldella
  */
 public class KeyphraseEvaluatorAll extends Evaluator {
 
+    /**
+     * The average precision of the documents.
+     */
+    public static final String PRECISION = "Precision";
+    
+    /**
+     * The average recall of the documents.
+     */
+    public static final String RECALL = "Recall";
+    
+    /**
+     * The average F-measure of the documents.
+     */
+    public static final String FMEASURE = "F-Measure";
+    
+    /**
+     * The average time needed to distill a document, in milliseconds.
+     */
+    public static final String LATENCY = "Latency";
+    
+    /**
+     * The number of documents distilled every second.
+     */
+    public static final String THROUGHPUT = "Throughput";
+    
     private static boolean verbose = false;
+    
+    /**
+     * The number of documents distilled at the same time.
+     */
+    private int threads = 1;
+    
+    /**
+     * The gold standard keyphrases of the documents evaluated so far.
+     */
+    private final Map<String, GoldKeyphrases> goldKeyphrases 
+            = new ConcurrentHashMap<>();
 
     /**
      * An evaluator for the Keyphrase Extraction task.
@@ -42,6 +98,22 @@ public class KeyphraseEvaluatorAll extends Evaluator {
         super(goldStandard);
     }
 
+    /**
+     * Sets the number of documents distilled at the same time. Default is 1,
+     * i.e. the documents are distilled one after another. Use more threads
+     * only if every stage of the distiller supports concurrent distillations:
+     * for example, the {@link it.uniud.ailab.dcore.annotation.annotators.RawTdidfAnnotator}
+     * reads the current document from the 
+     * {@link it.uniud.ailab.dcore.io.IOBlackboard}, which is shared by all
+     * the distillations, and the language detector is shared by all the
+     * distillations.
+     *
+     * @param threads the number of documents distilled concurrently.
+     */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
     /**
      * Evaluate the keyphrases using the given dataset and settings.
      *
@@ -61,47 +133,53 @@ public class KeyphraseEvaluatorAll extends Evaluator {
         double precision = 0;
         double recall = 0;
         double fmeasure = 0;
+        double latency = 0;
+        
+        int documents = goldStandard.getTestSet().size();
+        long start = System.nanoTime();
 
-        for (Map.Entry<String, String> documentEntry
-                : goldStandard.getTestSet().entrySet()) {
-
-            String document = documentEntry.getValue().replace("\\n", " ");
-
-            System.out.println("Evaluating document " + ++docIndex
-                    + " of " + goldStandard.getTestSet().size() + "...");
-
-            System.out.println("Document identifier: " + documentEntry.getKey());
-            System.out.println("Document's first 40 chars: "
-                    + document.substring(0, 40) + "...");
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<DocumentResult>> results = new ArrayList<>();
+            for (Map.Entry<String, String> documentEntry
+                    : goldStandard.getTestSet().entrySet()) {
+                results.add(executor.submit(() -> evaluateDocument(
+                        pipeline, documentEntry.getKey(), 
+                        documentEntry.getValue())));
+            }
 
-            DistilledOutput output = pipeline.distill(document);
+            for (Future<DocumentResult> future : results) {
+                DocumentResult result = future.get();
+                
+                System.out.println("Evaluated document " + ++docIndex
+                        + " of " + documents + "...");
+                result.print();
 
-            String[] kps = new String[pipeline.getBlackboard().getKeyphrases().size()];
-            for (int i = 0; i < kps.length; i++) {
-                kps[i] = pipeline.getBlackboard()
-                        .getKeyphrases().get(i).getSurface();
+                precision = precision + result.precision;
+                recall = recall + result.recall;
+                fmeasure = fmeasure + result.fmeasure;
+                latency = latency + result.latency;
             }
-
-            double docPrecision = computePrecision(
-                    kps,
-                    goldStandard.getTestAnswers().get(documentEntry.getKey()));
-            double docRecall = computeRecall(
-                    kps,
-                    goldStandard.getTestAnswers().get(documentEntry.getKey()));
-            double docFMeasure = computeFMeasure(docPrecision, docRecall);
-
-            System.out.println("Precision   : " + docPrecision);
-            System.out.println("Recall      : " + docRecall);
-            System.out.println("FMeasure    : " + docFMeasure);
-
-            precision = precision + docPrecision;
-            recall = recall + docRecall;
-            fmeasure = fmeasure + docFMeasure;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new DistillerException("Evaluation interrupted", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new DistillerException("Error while evaluating a document",
+                    ex.getCause());
+        } finally {
+            executor.shutdown();
         }
+        
+        double elapsed = (System.nanoTime() - start) / 1e9;
 
-        precision = precision / goldStandard.getTestSet().size();
-        recall = recall / goldStandard.getTestSet().size();
-        fmeasure = fmeasure / goldStandard.getTestSet().size();
+        precision = precision / documents;
+        recall = recall / documents;
+        fmeasure = fmeasure / documents;
+        latency = latency / documents;
+        double throughput = documents / elapsed;
 
         System.out.println();
         System.out.println("*** EVALUATION COMPLETE ***");
@@ -109,46 +187,95 @@ public class KeyphraseEvaluatorAll extends Evaluator {
         System.out.println("Precision   : " + precision);
         System.out.println("Recall      : " + recall);
         System.out.println("F-Measure   : " + fmeasure);
+        System.out.println("Latency     : " + latency + " ms/document");
+        System.out.println("Throughput  : " + throughput + " documents/s");
         System.out.println();
 
-        return null;
+        Map<String, Double> metrics = new LinkedHashMap<>();
+        metrics.put(PRECISION, precision);
+        metrics.put(RECALL, recall);
+        metrics.put(FMEASURE, fmeasure);
+        metrics.put(LATENCY, latency);
+        metrics.put(THROUGHPUT, throughput);
+        return metrics;
     }
 
-    private double computePrecision(String[] kps, String[] goldKeyphrase) {
+    /**
+     * Distills a document and compares its keyphrases with the gold 
+     * standard.
+     *
+     * @param pipeline the distiller instance to evaluate.
+     * @param identifier the identifier of the document.
+     * @param text the text of the document.
+     * @return the evaluation of the document.
+     */
+    private DocumentResult evaluateDocument(Distiller pipeline,
+            String identifier, String text) {
+
+        String document = text.replace("\\n", " ");
+
+        long start = System.nanoTime();
+        Blackboard blackboard = pipeline.distillToBlackboard(document);
+        double latency = (System.nanoTime() - start) / 1e6;
+
+        List<Gram> kps = blackboard.getKeyphrases();
+        String[] candidates = new String[kps.size()];
+        for (int i = 0; i < candidates.length; i++) {
+            candidates[i] = goldStandard.normalize(
+                    kps.get(i).getSurface().toLowerCase());
+        }
+
+        GoldKeyphrases gold = goldKeyphrases.computeIfAbsent(identifier,
+                (id) -> new GoldKeyphrases(goldStandard,
+                        goldStandard.getTestAnswers().get(id)));
+
+        DocumentResult result = new DocumentResult();
+        result.identifier = identifier;
+        result.firstChars = document.substring(0, 40);
+        result.latency = latency;
+        result.precision = computePrecision(candidates, gold);
+        result.recall = computeRecall(candidates, gold, result.unmatched);
+        result.fmeasure = computeFMeasure(result.precision, result.recall);
+        return result;
+    }
+
+    private double computePrecision(String[] kps, GoldKeyphrases gold) {
         double matches = 0;
-        for (int i = 0; i < kps.length; i++) {
-            for (int j = 0; j < goldKeyphrase.length; j++) {
-                if (goldStandard.compare(
-                        kps[i].toLowerCase(), goldKeyphrase[j]) == 0) {
-                    matches++;
-                }
+        for (String kp : kps) {
+            Integer count = gold.counts.get(kp);
+            if (count != null) {
+                matches += count;
             }
         }
 
         return matches / (kps.length * 1.0);
     }
  
-    private double computeRecall(String[] kps, String[] goldKeyphrase) {
+    private double computeRecall(String[] kps, GoldKeyphrases gold,
+            List<String> unmatched) {
+        
+        Set<String> candidates = new HashSet<>(kps.length * 2);
+        for (String kp : kps) {
+            candidates.add(kp);
+        }
+        
         double matches = 0;
-        for (int j = 0; j < goldKeyphrase.length; j++) {
+        for (int j = 0; j < gold.keyphrases.length; j++) {
 
             boolean matched = false;
 
-            for (int i = 0; i < kps.length && !matched; i++) {
-                if (goldStandard.compare(
-                        kps[i].toLowerCase(), goldKeyphrase[j]) == 0) {
-                    matches++;
-                    matched = true;
-                }
+            for (int i = 0; i < gold.alternatives[j].length && !matched; i++) {
+                matched = candidates.contains(gold.alternatives[j][i]);
             }
 
-            if (!matched && verbose) {
-                System.out.println(
-                        "Non matched keyphrase: " + goldKeyphrase[j]);
+            if (matched) {
+                matches++;
+            } else {
+                unmatched.add(gold.keyphrases[j]);
             }
         }
 
-        return matches / (goldKeyphrase.length * 1.0);
+        return matches / (gold.keyphrases.length * 1.0);
     }
 
     private double computeFMeasure(double precision, double recall) {
@@ -157,5 +284,68 @@ public class KeyphraseEvaluatorAll extends Evaluator {
                 ? (2 * precision * recall) / (precision + recall)
                 : 0;
     }
+    
+    /**
+     * The gold standard keyphrases of a document, with their alternative
+     * forms.
+     */
+    private static class GoldKeyphrases {
+        
+        private final String[] keyphrases;
+        private final String[][] alternatives;
+        
+        /**
+         * The number of gold standard keyphrases matched by every form.
+         */
+        private final Map<String, Integer> counts = new HashMap<>();
+        
+        GoldKeyphrases(GenericDataset dataset, String[] keyphrases) {
+            this.keyphrases = keyphrases;
+            this.alternatives = new String[keyphrases.length][];
+            
+            for (int j = 0; j < keyphrases.length; j++) {
+                alternatives[j] = dataset.getAlternatives(keyphrases[j]);
+                
+                // a keyphrase is counted once, even if a form is repeated
+                Set<String> forms = new HashSet<>();
+                for (String form : alternatives[j]) {
+                    if (forms.add(form)) {
+                        counts.merge(form, 1, Integer::sum);
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * The evaluation of a document.
+     */
+    private static class DocumentResult {
+        
+        private String identifier;
+        private String firstChars;
+        private double precision;
+        private double recall;
+        private double fmeasure;
+        private double latency;
+        private final List<String> unmatched = new ArrayList<>();
+        
+        void print() {
+            System.out.println("Document identifier: " + identifier);
+            System.out.println("Document's first 40 chars: "
+                    + firstChars + "...");
+            
+            if (verbose) {
+                for (String kp : unmatched) {
+                    System.out.println("Non matched keyphrase: " + kp);
+                }
+            }
+
+            System.out.println("Precision   : " + precision);
+            System.out.println("Recall      : " + recall);
+            System.out.println("FMeasure    : " + fmeasure);
+            System.out.println("Latency     : " + latency + " ms");
+        }
+    }
 
 }
@@ -157,7 +157,7 @@ public abstract class GenericSheetPrinter {
 
         row.put(ID_COLUMN, new Left<>(rowId));
 
-        for (Annotation a : annotable.getAnnotations()) {
+        annotable.forEachAnnotation(a -> {
 
             // If it's a single-valued annotation, just add the value.
             // elsewhise, customize the headers with a counter.
@@ -192,7 +192,7 @@ public abstract class GenericSheetPrinter {
                 }
 
             }
-        }
+        });
 
         // add the row
         rows.add(row);
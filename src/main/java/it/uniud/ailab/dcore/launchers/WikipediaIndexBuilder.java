@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2016 Artificial Intelligence
+ * Laboratory @ University of Udine.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package it.uniud.ailab.dcore.launchers;
+
+import it.uniud.ailab.dcore.utils.WikipediaGraphIndexBuilder;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Builds the offline Wikipedia index used by the 
+ * {@link it.uniud.ailab.dcore.annotation.annotators.WikipediaInferenceAnnotator}
+ * from the SQL dumps of the page, categorylinks, pagelinks and page_props
+ * tables; the page_props table is used to drop the hidden categories. Current
+ * dumps refer to the targets of the links through the linktarget table, whose
+ * dump must be given too.
+ * 
+ * Usage: WikipediaIndexBuilder page.sql.gz categorylinks.sql.gz 
+ * pagelinks.sql.gz page_props.sql.gz [linktarget.sql.gz] output.idx
+ *
+ * @author agent
+ */
+public class WikipediaIndexBuilder {
+
+    public static void main(String[] args) throws IOException {
+
+        if (args.length != 5 && args.length != 6) {
+            System.err.println("Usage: WikipediaIndexBuilder <page dump> "
+                    + "<categorylinks dump> <pagelinks dump> "
+                    + "<page_props dump> [<linktarget dump>] <output file>");
+            System.exit(1);
+        }
+
+        WikipediaGraphIndexBuilder.build(new File(args[0]), new File(args[1]),
+                new File(args[2]), args.length == 6 ? new File(args[4]) : null,
+                new File(args[3]), new File(args[args.length - 1]));
+    }
+}
@@ -0,0 +1,440 @@
+/*
+ * Copyright (C) 2016 Artificial Intelligence
+ * Laboratory @ University of Udine.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package it.uniud.ailab.dcore.persistence;
+
+import it.uniud.ailab.dcore.annotation.Annotation;
+import it.uniud.ailab.dcore.utils.SymbolTable;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.RandomAccess;
+import java.util.function.Consumer;
+
+/**
+ * A sentence that stores its tokens column-wise instead of as a list of
+ * {@link Token} objects: the text, stem, PoS tag and lemma of every token are
+ * kept as identifiers of a {@link SymbolTable} in primitive arrays, together
+ * with the offsets of the token in the text of the sentence, while the
+ * annotations of the tokens are kept in a side table of small arrays,
+ * allocated only for the tokens that have been annotated. This takes a
+ * fraction of the memory of a list of tokens, so it is suited for large
+ * corpora.
+ *
+ * The tokens returned by {@link #getTokens()} are lightweight views created on
+ * demand: changing their stem, PoS, lemma or annotations changes the
+ * sentence, so they can be used exactly as normal tokens. Note that
+ * {@link #addToken(it.uniud.ailab.dcore.persistence.Token)} copies the token
+ * into the sentence, so the token should be complete when it is added.
+ *
+ * The views are bound to the sentence, so a {@link Gram} replaces them with
+ * detached copies when it receives them (see {@link Token#detach()}): this way
+ * the grams never reference the sentence, and cloning a gram does not clone
+ * the whole sentence.
+ *
+ * @author agent
+ */
+public class CompactSentence extends Sentence {
+
+    /**
+     * The table of the strings of the tokens.
+     */
+    private final SymbolTable symbols;
+
+    /**
+     * The number of tokens.
+     */
+    private int size = 0;
+
+    private int[] textIds;
+    private int[] stemIds;
+    private int[] posIds;
+    private int[] lemmaIds;
+
+    /**
+     * The offsets of the first character of every token in the text of the
+     * sentence, or -1 if unknown.
+     */
+    private int[] begins;
+
+    /**
+     * The offsets of the character following every token in the text of the
+     * sentence, or -1 if unknown.
+     */
+    private int[] ends;
+
+    /**
+     * The annotations of the tokens, indexed by the position of the token, in
+     * the order they have been added. The array of a token with no 
+     * annotations is null, and the table itself is null until a token is 
+     * annotated.
+     */
+    private Annotation[][] annotations;
+
+    /**
+     * Creates a sentence with the specified text and language, whose token
+     * strings are interned in the global symbol table.
+     *
+     * @param text the text of the sentence
+     * @param language the language of the sentence
+     * @param identifier the output friendly identifier of the sentence
+     */
+    public CompactSentence(String text, Locale language, String identifier) {
+        this(text, language, identifier, SymbolTable.getGlobal());
+    }
+
+    /**
+     * Creates a sentence with the specified text, whose token strings are
+     * interned in the global symbol table. This requires a call to
+     * setLanguage before many of the annotators can actually work.
+     *
+     * @param text the text of the sentence
+     * @param identifier the output friendly identifier of the sentence
+     */
+    public CompactSentence(String text, String identifier) {
+        this(text, null, identifier);
+    }
+
+    /**
+     * Creates a sentence with the specified text and language, whose token
+     * strings are interned in the given symbol table.
+     *
+     * @param text the text of the sentence
+     * @param language the language of the sentence
+     * @param identifier the output friendly identifier of the sentence
+     * @param symbols the symbol table of the tokens
+     */
+    public CompactSentence(String text, Locale language, String identifier,
+            SymbolTable symbols) {
+        super(text, language, identifier);
+        this.symbols = symbols;
+
+        // a rough guess of the number of tokens, to avoid resizing
+        int capacity = text.length() / 5 + 1;
+        textIds = new int[capacity];
+        stemIds = new int[capacity];
+        posIds = new int[capacity];
+        lemmaIds = new int[capacity];
+        begins = new int[capacity];
+        ends = new int[capacity];
+    }
+
+    /**
+     * Sets the tokens of the sentence, copying them in the sentence.
+     *
+     * @param tokens the tokens of the sentence.
+     */
+    @Override
+    public void setTokens(List<Token> tokens) {
+        size = 0;
+        annotations = null;
+        for (Token t : tokens) {
+            addToken(t);
+        }
+    }
+
+    /**
+     * Appends a copy of a token at the end of the token list of the sentence.
+     *
+     * @param t the token to add
+     */
+    @Override
+    public void addToken(Token t) {
+
+        if (size == textIds.length) {
+            int capacity = size * 2;
+            textIds = Arrays.copyOf(textIds, capacity);
+            stemIds = Arrays.copyOf(stemIds, capacity);
+            posIds = Arrays.copyOf(posIds, capacity);
+            lemmaIds = Arrays.copyOf(lemmaIds, capacity);
+            begins = Arrays.copyOf(begins, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+        }
+
+        textIds[size] = symbols.getId(t.getText());
+        stemIds[size] = t.getStem() == null ? -1 : symbols.getId(t.getStem());
+        posIds[size] = t.getPoS() == null ? -1 : symbols.getId(t.getPoS());
+        lemmaIds[size] = t.getLemma() == null ? -1 : symbols.getId(t.getLemma());
+
+        if (t.getBeginOffset() >= 0) {
+            begins[size] = t.getBeginOffset();
+            ends[size] = t.getEndOffset();
+        } else {
+            // look for the token after the end of the previous one
+            int from = 0;
+            for (int i = size - 1; i >= 0 && from == 0; i--) {
+                from = Math.max(ends[i], 0);
+            }
+            int begin = getText().indexOf(t.getText(), from);
+            begins[size] = begin;
+            ends[size] = begin < 0 ? -1 : begin + t.getText().length();
+        }
+
+        if (t.getAnnotationCount() > 0) {
+            setTokenAnnotations(size, t.getAnnotations());
+        }
+
+        size++;
+    }
+
+    /**
+     * Returns the tokens of the sentence, as views over the columns of the
+     * sentence.
+     *
+     * @return the tokens of the sentence.
+     */
+    @Override
+    public List<Token> getTokens() {
+        return new TokenList();
+    }
+
+    /**
+     * Returns the number of tokens of the sentence.
+     *
+     * @return the number of tokens.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the offset of the first character of a token in the text of the
+     * sentence.
+     *
+     * @param index the position of the token.
+     * @return the offset of the token, or -1 if unknown.
+     */
+    public int getBeginOffset(int index) {
+        return begins[index];
+    }
+
+    /**
+     * Returns the offset of the character following a token in the text of
+     * the sentence.
+     *
+     * @param index the position of the token.
+     * @return the end offset of the token, or -1 if unknown.
+     */
+    public int getEndOffset(int index) {
+        return ends[index];
+    }
+
+    /**
+     * Returns an array containing the POS tags of the tokens of the sentence.
+     *
+     * @return an array containing the POS tags of the sentence.
+     */
+    @Override
+    public String[] getPosTaggedSentence() {
+        String[] output = new String[size];
+        for (int i = 0; i < size; i++) {
+            output[i] = posIds[i] < 0 ? null : symbols.getSymbol(posIds[i]);
+        }
+        return output;
+    }
+
+    /**
+     * Reduces the memory used by the sentence to the minimum, once all the
+     * tokens have been added.
+     */
+    public void trimToSize() {
+        textIds = Arrays.copyOf(textIds, size);
+        stemIds = Arrays.copyOf(stemIds, size);
+        posIds = Arrays.copyOf(posIds, size);
+        lemmaIds = Arrays.copyOf(lemmaIds, size);
+        begins = Arrays.copyOf(begins, size);
+        ends = Arrays.copyOf(ends, size);
+        if (annotations != null) {
+            annotations = Arrays.copyOf(annotations, size);
+        }
+    }
+
+    /**
+     * Gets the annotations of a token.
+     *
+     * @param index the position of the token.
+     * @return the annotations of the token, or null if it has none.
+     */
+    private Annotation[] getTokenAnnotations(int index) {
+        return annotations == null || index >= annotations.length
+                ? null : annotations[index];
+    }
+
+    /**
+     * Sets the annotations of a token, creating or growing the side table
+     * if needed.
+     *
+     * @param index the position of the token.
+     * @param tokenAnnotations the annotations of the token.
+     */
+    private void setTokenAnnotations(int index,
+            Annotation[] tokenAnnotations) {
+        if (annotations == null) {
+            annotations = new Annotation[textIds.length][];
+        } else if (index >= annotations.length) {
+            annotations = Arrays.copyOf(annotations, textIds.length);
+        }
+        annotations[index] = tokenAnnotations;
+    }
+
+    /**
+     * The list of the tokens of the sentence.
+     */
+    private class TokenList extends AbstractList<Token> implements RandomAccess {
+
+        @Override
+        public Token get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException(
+                        "Index: " + index + ", size: " + size);
+            }
+            return new TokenView(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * A token that reads and writes its data in the columns of the sentence.
+     */
+    private class TokenView extends Token {
+
+        /**
+         * The position of the token in the sentence.
+         */
+        private final int index;
+
+        private TokenView(int index) {
+            super(symbols, textIds[index]);
+            this.index = index;
+        }
+
+        @Override
+        public Token detach() {
+            return new Token(this);
+        }
+
+        @Override
+        public void setStem(String stem) {
+            stemIds[index] = intern(stem);
+        }
+
+        @Override
+        public void setPoS(String PoS) {
+            posIds[index] = intern(PoS);
+        }
+
+        @Override
+        public void setLemma(String lemma) {
+            lemmaIds[index] = intern(lemma);
+        }
+
+        @Override
+        public void setOffsets(int beginOffset, int endOffset) {
+            begins[index] = beginOffset;
+            ends[index] = endOffset;
+        }
+
+        @Override
+        public int getBeginOffset() {
+            return begins[index];
+        }
+
+        @Override
+        public int getEndOffset() {
+            return ends[index];
+        }
+
+        @Override
+        public int getStemId() {
+            return stemIds[index];
+        }
+
+        @Override
+        public int getPoSId() {
+            return posIds[index];
+        }
+
+        @Override
+        public int getLemmaId() {
+            return lemmaIds[index];
+        }
+
+        @Override
+        public void addAnnotation(Annotation ann) {
+            Annotation[] current = getTokenAnnotations(index);
+            if (current == null) {
+                setTokenAnnotations(index, new Annotation[]{ann});
+                return;
+            }
+            for (int i = 0; i < current.length; i++) {
+                if (current[i].getAnnotator().equals(ann.getAnnotator())) {
+                    current[i] = ann;
+                    return;
+                }
+            }
+            current = Arrays.copyOf(current, current.length + 1);
+            current[current.length - 1] = ann;
+            setTokenAnnotations(index, current);
+        }
+
+        @Override
+        public Annotation getAnnotation(String annotator) {
+            Annotation[] current = getTokenAnnotations(index);
+            if (current != null) {
+                for (Annotation a : current) {
+                    if (a.getAnnotator().equals(annotator)) {
+                        return a;
+                    }
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public Annotation[] getAnnotations() {
+            Annotation[] current = getTokenAnnotations(index);
+            return current == null ? new Annotation[0] : current.clone();
+        }
+
+        @Override
+        public void forEachAnnotation(Consumer<? super Annotation> action) {
+            Annotation[] current = getTokenAnnotations(index);
+            if (current != null) {
+                for (Annotation a : current) {
+                    action.accept(a);
+                }
+            }
+        }
+
+        @Override
+        public int getAnnotationCount() {
+            Annotation[] current = getTokenAnnotations(index);
+            return current == null ? 0 : current.length;
+        }
+
+        @Override
+        public boolean hasAnnotation(String annotator) {
+            return getAnnotation(annotator) != null;
+        }
+    }
+}
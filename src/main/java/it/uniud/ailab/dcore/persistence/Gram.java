@@ -20,9 +20,11 @@ package it.uniud.ailab.dcore.persistence;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import it.uniud.ailab.dcore.annotation.Annotable;
-import it.uniud.ailab.dcore.utils.ListUtils;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * A generic n-gram, a simple list of n words.
@@ -48,6 +50,16 @@ public abstract class Gram extends Annotable {
      */
     private final List<String> surfaces;
     
+    /**
+     * The number of occurrences of every distinct surface of the gram.
+     */
+    private final Map<String, SurfaceCount> surfaceCounts;
+    
+    /**
+     * The most common surface of the gram.
+     */
+    private SurfaceCount mostCommon;
+    
     /**
      * The concept Units in which the gram appears.
      */
@@ -80,10 +92,55 @@ public abstract class Gram extends Annotable {
         this.type = type;
         
         tokenLists = new ArrayList<>();
-        tokenLists.add(sequence);
+        tokenLists.add(detach(sequence));
         
         surfaces = new ArrayList<>();
+        surfaceCounts = new HashMap<>();
         surfaces.add(surface);
+        countSurface(surface);
+    }
+    
+    /**
+     * The occurrences of a distinct surface of the gram.
+     */
+    private static class SurfaceCount {
+        
+        /**
+         * The position of the first occurrence of the surface in the list 
+         * of the surfaces, which is also the position of its tokens.
+         */
+        private final int first;
+        
+        /**
+         * The number of occurrences of the surface.
+         */
+        private int count;
+
+        private SurfaceCount(int first) {
+            this.first = first;
+        }
+    }
+    
+    /**
+     * Updates the counters after a surface has been appended to the list of 
+     * the surfaces, keeping track of the most common one. Since counters only
+     * grow, the most common surface can only be replaced by the one that has 
+     * just been counted; on ties, the surface added first wins.
+     * 
+     * @param surface the surface just added.
+     */
+    private void countSurface(String surface) {
+        SurfaceCount c = surfaceCounts.get(surface);
+        if (c == null) {
+            c = new SurfaceCount(surfaces.size() - 1);
+            surfaceCounts.put(surface, c);
+        }
+        c.count++;
+        
+        if (mostCommon == null || c.count > mostCommon.count ||
+                (c.count == mostCommon.count && c.first < mostCommon.first)) {
+            mostCommon = c;
+        }
     }
     
     /**
@@ -94,7 +151,8 @@ public abstract class Gram extends Annotable {
      */
     public void addSurface(String surface,List<Token> tokens) {
         surfaces.add(surface);
-        tokenLists.add(tokens);
+        tokenLists.add(detach(tokens));
+        countSurface(surface);
     }
     
      /**
@@ -109,12 +167,29 @@ public abstract class Gram extends Annotable {
             throw new IllegalArgumentException(
                 "Mismatching size of surfaces and token lists.");
         
-        this.surfaces.addAll(surfaces);
-        
         // note: do not use addAll. The references are lost if you don't copy
-        for (List<Token> t : tokenLists) {
-            this.tokenLists.add(new ArrayList<Token>(t));
+        int n = surfaces.size();
+        for (int i = 0; i < n; i++) {
+            this.surfaces.add(surfaces.get(i));
+            this.tokenLists.add(detach(tokenLists.get(i)));
+            countSurface(surfaces.get(i));
+        }
+    }
+    
+    /**
+     * Copies a list of tokens, replacing the tokens that are views on other
+     * objects (e.g. on a {@link CompactSentence}) with detached copies, so
+     * that the gram does not reference the sentence it comes from.
+     * 
+     * @param tokens the tokens to copy.
+     * @return the copied list.
+     */
+    private static List<Token> detach(List<Token> tokens) {
+        List<Token> copy = new ArrayList<>(tokens.size());
+        for (Token t : tokens) {
+            copy.add(t.detach());
         }
+        return copy;
     }
     
     /**
@@ -132,7 +207,7 @@ public abstract class Gram extends Annotable {
      * @return the tokens of the surface of the gram.
      */
     public List<Token> getTokens() {
-        return tokenLists.get(surfaces.indexOf(ListUtils.mostCommon(surfaces)));
+        return tokenLists.get(mostCommon.first);
     }
     
     /**
@@ -142,7 +217,7 @@ public abstract class Gram extends Annotable {
      */
     @JsonIgnore
     public List<List<Token>> getTokenLists() {
-        return tokenLists;
+        return Collections.unmodifiableList(tokenLists);
     }
 
     /**
@@ -153,18 +228,19 @@ public abstract class Gram extends Annotable {
      * @return the human-readable form of the gram.
      */
     public String getSurface() {
-        return ListUtils.mostCommon(surfaces);
+        return surfaces.get(mostCommon.first);
     }
     
     /**
      * Returns all the surfaces of the gram. Note: may contain 
-     * duplicates.
+     * duplicates. The list can't be modified: use 
+     * {@link #addSurface(java.lang.String, java.util.List)} instead.
      * 
      * @return all the surfaces of the gram.
      */
     @JsonIgnore
     public List<String> getSurfaces() {
-        return surfaces;
+        return Collections.unmodifiableList(surfaces);
     }
     
     /**
@@ -21,7 +21,6 @@ package it.uniud.ailab.dcore.persistence;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import it.uniud.ailab.dcore.annotation.Annotation;
 import it.uniud.ailab.dcore.annotation.annotations.FeatureAnnotation;
-import it.uniud.ailab.dcore.utils.ListUtils;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -35,14 +34,6 @@ import java.util.List;
 //@JsonIgnoreProperties({"surfaces,tokenLists,appaerances,features"})
 public class Keyphrase extends Gram {
 
-    /**
-     * The different list of words forming the surface of the gram.
-     */
-    private List<List<Token>> tokenLists;
-    /**
-     * The different string representation of the gram.
-     */
-    private final List<String> surfaces;
     /**
      * The concept Units in which the gram appears.
      */
@@ -70,92 +61,9 @@ public class Keyphrase extends Gram {
         
         super(identifier, sequence, surface,KEYPHRASE);
         
-        tokenLists = new ArrayList<>();
-        tokenLists.add(sequence);
-        
-        surfaces = new ArrayList<>();
-        surfaces.add(surface);
         appareances = new ArrayList<>();
     }
     
-    /**
-     * Adds a surface to the n-gram. Duplicates are permitted.
-     * 
-     * @param surface the surface to add
-     * @param tokens the tokens that form the surface
-     */
-    @Override
-    public void addSurface(String surface,List<Token> tokens) {
-        surfaces.add(surface);
-        tokenLists.add(tokens);
-    }
-    
-     /**
-     * Adds a group of surfaces to the n-gram. Duplicates are permitted.
-     * 
-     * @param surfaces the surface to add
-     * @param tokenLists the tokens that form the surface
-     */
-    @Override
-    public void addSurfaces(List<String> surfaces,List<List<Token>> tokenLists) {
-        
-        if (surfaces.size() != tokenLists.size())
-            throw new IllegalArgumentException(
-                "Mismatching size of surfaces and token lists.");
-        
-        this.surfaces.addAll(surfaces);
-        
-        // note: do not use addAll. The references are lost if you don't copy
-        for (List<Token> t : tokenLists) {
-            this.tokenLists.add(new ArrayList<Token>(t));
-        }
-    }
-
-    /**
-     * The tokens that form the most common surface of the gram.
-     *
-     * @return the tokens of the surface of the gram.
-     */
-    @Override
-    public List<Token> getTokens() {
-        return tokenLists.get(surfaces.indexOf(ListUtils.mostCommon(surfaces)));
-    }
-    
-    /**
-     * Returns all the possible lists of tokens that form the gram.
-     * 
-     * @return all the possible lists of tokens that form the gram.
-     */
-    @Override
-    @JsonIgnore
-    public List<List<Token>> getTokenLists() {
-        return tokenLists;
-    }
-
-    /**
-     * The human-readable form of the gram. This is the most common surface
-     * between all the surfaces associated with the gram; if there are more than
-     * one, the first one that has been added to the gram is selected.
-     *
-     * @return the human-readable form of the gram.
-     */
-    @Override
-    public String getSurface() {
-        return ListUtils.mostCommon(surfaces);
-    }
-    
-    /**
-     * Returns all the surfaces of the gram. Note: may contain 
-     * duplicates.
-     * 
-     * @return all the surfaces of the gram.
-     */
-    @Override
-    @JsonIgnore
-    public List<String> getSurfaces() {
-        return surfaces;
-    }
-
     /**
      * The identifier of the gram. Please note that it is possible that two
      * grams with different surface or tokens may have the same identifier, 
@@ -235,12 +143,13 @@ public class Keyphrase extends Gram {
     @JsonIgnore
     public FeatureAnnotation[] getFeatures() {
         
-        List<FeatureAnnotation> features = new ArrayList<>();
+        List<FeatureAnnotation> features 
+                = new ArrayList<>(getAnnotationCount());
         
-        for (Annotation ann : getAnnotations()) {
+        forEachAnnotation(ann -> {
             if (ann instanceof FeatureAnnotation)
                 features.add((FeatureAnnotation)ann);
-        }
+        });
         
         return features.toArray(new FeatureAnnotation[features.size()]);        
     }
@@ -22,6 +22,7 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
+import java.util.Set;
 
 /**
  * The Sentence class contains a document's sentence with all its annotations 
@@ -173,4 +174,14 @@ public class Sentence extends DocumentComponent {
                 
         }
     }
+    
+    /**
+     * Removes from the sentence all the grams that have one of the specified
+     * identifiers.
+     * 
+     * @param identifiers the identifiers of the grams to remove
+     */
+    public void removeGrams(Set<String> identifiers) {
+        grams.removeIf((g) -> identifiers.contains(g.getIdentifier()));
+    }
 }
@@ -18,9 +18,12 @@
  */
 package it.uniud.ailab.dcore.persistence;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import it.uniud.ailab.dcore.annotation.Annotable;
 import it.uniud.ailab.dcore.annotation.Annotation;
 import it.uniud.ailab.dcore.annotation.annotations.TextAnnotation;
+import it.uniud.ailab.dcore.utils.SymbolTable;
+import java.util.Objects;
 
 /**
  * The smallest object of the Distiller, which represents a component of a sentence
@@ -29,28 +32,130 @@ import it.uniud.ailab.dcore.annotation.annotations.TextAnnotation;
 public class Token extends Annotable {
 
     /**
-     * The stem of the word.
+     * The table of the symbols of the token.
      */
-    private String stem;
+    private final SymbolTable symbols;
+
+    /**
+     * The identifier of the text of the word.
+     */
+    private final int textId;
+
+    /**
+     * The identifier of the stem of the word, or -1 if not set.
+     */
+    private int stemId = -1;
     
     /**
-     * The part-of-speech tag of the word.
+     * The identifier of the part-of-speech tag of the word, or -1 if not set.
      */
-    private String PoS;
+    private int posId = -1;
     
     /**
-     * The lemmatized form of the token, that is obtained removing inflectional 
-     * endings only and returning the base or dictionary form of a word.
+     * The identifier of the lemmatized form of the token, that is obtained 
+     * removing inflectional endings only and returning the base or dictionary 
+     * form of a word, or -1 if not set.
+     */
+    private int lemmaId = -1;
+
+    /**
+     * The offset of the first character of the token in the text of its 
+     * sentence, or -1 if unknown.
+     */
+    private int beginOffset = -1;
+
+    /**
+     * The offset of the character following the token in the text of its 
+     * sentence, or -1 if unknown.
      */
-    private String lemma;
+    private int endOffset = -1;
 
     /**
-     * Creates a token.
+     * Creates a token, whose strings are interned in the global symbol table.
+     * The global table is never emptied, so the annotators that create 
+     * tokens while distilling a document should use 
+     * {@link #Token(String, SymbolTable)} with the table of the blackboard.
      * 
      * @param text the text of the token.
      */
     public Token(String text){
-        super(text);
+        this(text, SymbolTable.getGlobal());
+    }
+
+    /**
+     * Creates a token, whose strings are interned in the given symbol table,
+     * e.g. the table of the blackboard, that lives only for a run of the 
+     * Distiller.
+     * 
+     * @param text the text of the token.
+     * @param symbols the symbol table.
+     */
+    public Token(String text, SymbolTable symbols){
+        super(symbols.intern(text));
+        this.symbols = symbols;
+        this.textId = symbols.getId(text);
+    }
+
+    /**
+     * Creates a token whose text is already interned in a symbol table. Used
+     * by the compact representations of sentences to create views of their
+     * tokens.
+     * 
+     * @param symbols the symbol table.
+     * @param textId the identifier of the text of the token.
+     */
+    protected Token(SymbolTable symbols, int textId){
+        super(symbols.getSymbol(textId));
+        this.symbols = symbols;
+        this.textId = textId;
+    }
+    
+    /**
+     * Creates a copy of a token, with the same strings, offsets and
+     * annotations. The copy shares the symbol table of the original token.
+     * 
+     * @param other the token to copy.
+     */
+    public Token(Token other){
+        this(other.getSymbolTable(), other.getTextId());
+        this.stemId = other.getStemId();
+        this.posId = other.getPoSId();
+        this.lemmaId = other.getLemmaId();
+        this.beginOffset = other.getBeginOffset();
+        this.endOffset = other.getEndOffset();
+        other.forEachAnnotation(this::addAnnotation);
+    }
+    
+    /**
+     * Returns a token that holds its data by itself. A token that is a view
+     * on the data of another object, like the tokens of a 
+     * {@link CompactSentence}, returns a copy of itself; any other token
+     * returns itself.
+     * 
+     * @return a token that does not depend on other objects.
+     */
+    public Token detach() {
+        return this;
+    }
+    
+    /**
+     * Interns a string in the symbol table of the token.
+     * 
+     * @param symbol the string to intern.
+     * @return the identifier of the string, or -1 if the string is null.
+     */
+    protected int intern(String symbol) {
+        return symbol == null ? -1 : symbols.getId(symbol);
+    }
+    
+    /**
+     * Gets the string associated with an identifier.
+     * 
+     * @param id the identifier.
+     * @return the string, or null if the identifier is -1.
+     */
+    protected String resolve(int id) {
+        return id < 0 ? null : symbols.getSymbol(id);
     }
     
     // <editor-fold desc="Id, stem and PoS">
@@ -61,7 +166,7 @@ public class Token extends Annotable {
      * @param stem the stemmed token
      */
     public void setStem(String stem) {
-        this.stem = stem;
+        this.stemId = intern(stem);
     }
     
     /**
@@ -70,7 +175,7 @@ public class Token extends Annotable {
      * @param PoS the POS tag.
      */
     public void setPoS(String PoS) {
-        this.PoS = PoS;
+        this.posId = intern(PoS);
     }   
     
     /**
@@ -79,7 +184,7 @@ public class Token extends Annotable {
      * @param lemma the lemma for the token. 
      */
     public void setLemma(String lemma){
-        this.lemma = lemma;
+        this.lemmaId = intern(lemma);
     }
     
     /**
@@ -97,7 +202,7 @@ public class Token extends Annotable {
      * @return the stem of the token.
      */
     public String getStem() {
-        return stem;
+        return resolve(getStemId());
     }
     
     /**
@@ -106,7 +211,7 @@ public class Token extends Annotable {
      * @return the POS tag of the token.
      */
     public String getPoS() {
-        return PoS;
+        return resolve(getPoSId());
     }    
     
     /**
@@ -115,7 +220,92 @@ public class Token extends Annotable {
      * @return the lemma for token. 
      */
     public String getLemma(){
-        return lemma;
+        return resolve(getLemmaId());
+    }
+    
+    /**
+     * Returns the symbol table where the strings of the token are interned.
+     * 
+     * @return the symbol table of the token.
+     */
+    @JsonIgnore
+    public SymbolTable getSymbolTable() {
+        return symbols;
+    }
+    
+    /**
+     * Returns the identifier of the text of the token in its symbol table.
+     * 
+     * @return the identifier of the text.
+     */
+    @JsonIgnore
+    public int getTextId() {
+        return textId;
+    }
+    
+    /**
+     * Returns the identifier of the stem of the token in its symbol table.
+     * 
+     * @return the identifier of the stem, or -1 if the stem is not set.
+     */
+    @JsonIgnore
+    public int getStemId() {
+        return stemId;
+    }
+    
+    /**
+     * Returns the identifier of the POS tag of the token in its symbol table.
+     * 
+     * @return the identifier of the POS tag, or -1 if the tag is not set.
+     */
+    @JsonIgnore
+    public int getPoSId() {
+        return posId;
+    }
+    
+    /**
+     * Returns the identifier of the lemma of the token in its symbol table.
+     * 
+     * @return the identifier of the lemma, or -1 if the lemma is not set.
+     */
+    @JsonIgnore
+    public int getLemmaId() {
+        return lemmaId;
+    }
+    // </editor-fold>
+    
+    // <editor-fold desc="Offsets">
+    /**
+     * Sets the position of the token in the text of its sentence, as found 
+     * by the tokenizer, so that the surface of a sequence of tokens can be 
+     * cut from the sentence without searching the tokens in the text.
+     * 
+     * @param beginOffset the offset of the first character of the token.
+     * @param endOffset the offset of the character following the token.
+     */
+    public void setOffsets(int beginOffset, int endOffset) {
+        this.beginOffset = beginOffset;
+        this.endOffset = endOffset;
+    }
+    
+    /**
+     * Returns the offset of the first character of the token in the text of
+     * its sentence.
+     * 
+     * @return the begin offset of the token, or -1 if unknown.
+     */
+    public int getBeginOffset() {
+        return beginOffset;
+    }
+    
+    /**
+     * Returns the offset of the character following the token in the text of
+     * its sentence.
+     * 
+     * @return the end offset of the token, or -1 if unknown.
+     */
+    public int getEndOffset() {
+        return endOffset;
     }
     // </editor-fold>
     
@@ -171,12 +361,13 @@ public class Token extends Annotable {
         String ret = getText() + " {(POS:" + getPoS() + "), " 
                 + "(Lemma: " + getLemma() + "), "
                 + "(Stem: " +getStem()+ ")";
-        for (Annotation a : getAnnotations()) {
+        StringBuilder sb = new StringBuilder(ret);
+        forEachAnnotation(a -> {
             if (a instanceof TextAnnotation)
-                ret = ret + ", (" + a.getAnnotator() + ":" + 
-                        ((TextAnnotation) a).getAnnotation() + ")";
-        }
-        return ret + "}";
+                sb.append(", (").append(a.getAnnotator()).append(":")
+                        .append(((TextAnnotation) a).getAnnotation()).append(")");
+        });
+        return sb.append("}").toString();
     }            
 
     /**
@@ -200,13 +391,22 @@ public class Token extends Annotable {
             return false;
         }
         final Token other = (Token) obj;
-        if (!getText().equals(other.getText())) {
-            return false;
+        if (symbols == other.symbols) {
+            // same table: compare the identifiers
+            return getTextId() == other.getTextId() 
+                    && getStemId() == other.getStemId()
+                    && getPoSId() == other.getPoSId();
         }
-        if (!stem.equals(other.stem)) {
-            return false;
-        }
-        return PoS.equals(other.PoS);
+        return getText().equals(other.getText())
+                && Objects.equals(getStem(), other.getStem())
+                && Objects.equals(getPoS(), other.getPoS());
+    }
+
+    @Override
+    public int hashCode() {
+        // based on the strings, so that it's consistent with equals() even
+        // for tokens interned in different tables
+        return Objects.hash(getText(), getStem(), getPoS());
     }
 
     @Override
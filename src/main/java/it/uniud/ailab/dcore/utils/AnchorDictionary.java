@@ -0,0 +1,384 @@
+/*
+ * Copyright (C) 2016 Artificial Intelligence
+ * Laboratory @ University of Udine.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package it.uniud.ailab.dcore.utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * A dictionary of the anchor texts of the links of Wikipedia, compiled in an
+ * Aho-Corasick automaton over token sequences, that finds all the anchors of
+ * a sentence in a single pass over its tokens.
+ *
+ * The dictionary is read from a tab-separated file (plain or gzipped) whose
+ * lines contain the anchor text, the title of the linked page, the link
+ * probability of the anchor (i.e. the ratio between the times the text
+ * appears as a link and the times it appears in Wikipedia) and, optionally,
+ * the commonness of the page for that anchor. When an anchor links to more
+ * pages, the most common one is kept. Anchors are matched ignoring case.
+ *
+ * @author agent
+ */
+public class AnchorDictionary {
+
+    /**
+     * An anchor found in a sequence of tokens.
+     */
+    public static class Match {
+
+        private final int start;
+        private final int end;
+        private final String title;
+        private final double linkProbability;
+
+        private Match(int start, int end, String title, double linkProbability) {
+            this.start = start;
+            this.end = end;
+            this.title = title;
+            this.linkProbability = linkProbability;
+        }
+
+        /**
+         * @return the index of the first token of the anchor.
+         */
+        public int getStart() {
+            return start;
+        }
+
+        /**
+         * @return the index of the token following the anchor.
+         */
+        public int getEnd() {
+            return end;
+        }
+
+        /**
+         * @return the title of the Wikipedia page linked by the anchor.
+         */
+        public String getTitle() {
+            return title;
+        }
+
+        /**
+         * @return the link probability of the anchor.
+         */
+        public double getLinkProbability() {
+            return linkProbability;
+        }
+    }
+
+    /**
+     * Splits the anchors in tokens, separating punctuation and the
+     * possessive clitic as the PoS taggers do.
+     */
+    private static final Pattern TOKEN_SEPARATOR = Pattern.compile(
+            "\\s+|(?=[,;:!?()\"])|(?<=[,;:!?()\"])|(?='s\\b)");
+
+    /**
+     * The identifiers of the tokens.
+     */
+    private final Map<String, Integer> symbols = new HashMap<>();
+
+    /**
+     * The transitions of the automaton; the key is made by the source state
+     * in the upper 32 bits and the token in the lower 32 bits.
+     */
+    private final Map<Long, Integer> transitions = new HashMap<>();
+
+    /**
+     * The failure function of the automaton.
+     */
+    private int[] fail;
+
+    /**
+     * The anchor recognized by every state, or -1.
+     */
+    private int[] output;
+
+    /**
+     * The nearest state in the failure chain of every state that recognizes
+     * an anchor, or -1.
+     */
+    private int[] outputLink;
+
+    /**
+     * The number of tokens read to reach every state.
+     */
+    private int[] depth;
+
+    /**
+     * The number of states of the automaton.
+     */
+    private int states = 1;
+
+    private final List<String> titles = new ArrayList<>();
+    private final List<Double> linkProbabilities = new ArrayList<>();
+    private final List<Double> commonness = new ArrayList<>();
+
+    /**
+     * Loads a dictionary, ignoring the anchors whose link probability is
+     * lower than a threshold.
+     *
+     * @param file the dictionary file.
+     * @param minLinkProbability the minimum link probability of an anchor.
+     * @throws IOException if the dictionary can't be read.
+     */
+    public AnchorDictionary(File file, double minLinkProbability)
+            throws IOException {
+
+        fail = new int[1024];
+        output = new int[1024];
+        depth = new int[1024];
+        output[0] = -1;
+
+        // the children of every state, used only to build the failure links
+        List<List<int[]>> children = new ArrayList<>();
+        children.add(new ArrayList<>());
+
+        InputStream in = new FileInputStream(file);
+        if (file.getName().endsWith(".gz")) {
+            in = new GZIPInputStream(in);
+        }
+
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(in, StandardCharsets.UTF_8))) {
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t");
+                if (fields.length < 3) {
+                    continue;
+                }
+
+                double probability;
+                double common;
+                try {
+                    probability = Double.parseDouble(fields[2]);
+                    common = fields.length > 3
+                            ? Double.parseDouble(fields[3]) : 1;
+                } catch (NumberFormatException ex) {
+                    continue;
+                }
+                if (probability < minLinkProbability) {
+                    continue;
+                }
+
+                int state = 0;
+                for (String token : tokenize(fields[0])) {
+                    int symbol = symbols.computeIfAbsent(token,
+                            (k) -> symbols.size());
+                    long key = ((long) state << 32) | symbol;
+                    Integer next = transitions.get(key);
+                    if (next == null) {
+                        next = newState(depth[state] + 1);
+                        transitions.put(key, next);
+                        children.get(state).add(new int[]{symbol, next});
+                        children.add(new ArrayList<>());
+                    }
+                    state = next;
+                }
+
+                if (state == 0) {
+                    continue;
+                }
+
+                String title = fields[1].replace('_', ' ');
+                if (output[state] < 0) {
+                    output[state] = titles.size();
+                    titles.add(title);
+                    linkProbabilities.add(probability);
+                    commonness.add(common);
+                } else if (common > commonness.get(output[state])) {
+                    titles.set(output[state], title);
+                    linkProbabilities.set(output[state], probability);
+                    commonness.set(output[state], common);
+                }
+            }
+        }
+
+        buildFailureLinks(children);
+    }
+
+    /**
+     * Creates a new state of the automaton.
+     *
+     * @param stateDepth the depth of the new state.
+     * @return the new state.
+     */
+    private int newState(int stateDepth) {
+        if (states == output.length) {
+            fail = Arrays.copyOf(fail, states * 2);
+            output = Arrays.copyOf(output, states * 2);
+            depth = Arrays.copyOf(depth, states * 2);
+        }
+        output[states] = -1;
+        depth[states] = stateDepth;
+        return states++;
+    }
+
+    /**
+     * Computes the failure and output links with a breadth-first visit of
+     * the trie of the anchors.
+     *
+     * @param children the children of every state.
+     */
+    private void buildFailureLinks(List<List<int[]>> children) {
+
+        outputLink = new int[states];
+        outputLink[0] = -1;
+
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int[] child : children.get(0)) {
+            fail[child[1]] = 0;
+            outputLink[child[1]] = -1;
+            queue.add(child[1]);
+        }
+
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (int[] child : children.get(state)) {
+                int f = fail[state];
+                while (f != 0 && !transitions.containsKey(
+                        ((long) f << 32) | child[0])) {
+                    f = fail[f];
+                }
+                Integer target = transitions.get(((long) f << 32) | child[0]);
+                fail[child[1]] = target == null || target == child[1] ? 0 : target;
+                outputLink[child[1]] = output[fail[child[1]]] >= 0
+                        ? fail[child[1]] : outputLink[fail[child[1]]];
+                queue.add(child[1]);
+            }
+        }
+    }
+
+    /**
+     * Splits a text in lowercase tokens, the way the anchors are split.
+     *
+     * @param text the text to split.
+     * @return the tokens of the text.
+     */
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        for (String t : TOKEN_SEPARATOR.split(text.trim())) {
+            if (!t.isEmpty()) {
+                tokens.add(t.toLowerCase(Locale.ROOT));
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Gets the number of anchors in the dictionary.
+     *
+     * @return the number of anchors.
+     */
+    public int size() {
+        return titles.size();
+    }
+
+    /**
+     * Finds all the anchors that appear in a sequence of tokens, including
+     * overlapping ones.
+     *
+     * @param tokens the tokens, in lowercase.
+     * @return the anchors found.
+     */
+    public List<Match> findAll(List<String> tokens) {
+
+        List<Match> matches = new ArrayList<>();
+        int state = 0;
+
+        for (int i = 0; i < tokens.size(); i++) {
+            Integer symbol = symbols.get(tokens.get(i));
+
+            if (symbol == null) {
+                // the token is not part of any anchor
+                state = 0;
+                continue;
+            }
+
+            Integer next = transitions.get(((long) state << 32) | symbol);
+            while (next == null && state != 0) {
+                state = fail[state];
+                next = transitions.get(((long) state << 32) | symbol);
+            }
+            state = next == null ? 0 : next;
+
+            int s = output[state] >= 0 ? state : outputLink[state];
+            while (s > 0) {
+                int anchor = output[s];
+                matches.add(new Match(i + 1 - depth[s], i + 1,
+                        titles.get(anchor), linkProbabilities.get(anchor)));
+                s = outputLink[s];
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Finds the anchors that appear in a sequence of tokens, choosing the
+     * longest ones (and, among anchors of the same length, the most probable)
+     * when they overlap.
+     *
+     * @param tokens the tokens, in lowercase.
+     * @return the non-overlapping anchors found, in order of appearance.
+     */
+    public List<Match> find(List<String> tokens) {
+
+        List<Match> matches = findAll(tokens);
+        matches.sort((a, b) -> {
+            int c = Integer.compare(b.end - b.start, a.end - a.start);
+            if (c == 0) {
+                c = Double.compare(b.linkProbability, a.linkProbability);
+            }
+            return c == 0 ? Integer.compare(a.start, b.start) : c;
+        });
+
+        boolean[] taken = new boolean[tokens.size()];
+        List<Match> selected = new ArrayList<>();
+        for (Match m : matches) {
+            boolean free = true;
+            for (int i = m.start; i < m.end && free; i++) {
+                free = !taken[i];
+            }
+            if (free) {
+                Arrays.fill(taken, m.start, m.end, true);
+                selected.add(m);
+            }
+        }
+
+        selected.sort((a, b) -> Integer.compare(a.start, b.start));
+        return selected;
+    }
+}
@@ -23,7 +23,6 @@ import it.uniud.ailab.dcore.annotation.annotations.InferenceAnnotation;
 import it.uniud.ailab.dcore.annotation.annotators.WikipediaInferenceAnnotator;
 import it.uniud.ailab.dcore.Blackboard;
 import it.uniud.ailab.dcore.annotation.Annotation;
-import it.uniud.ailab.dcore.annotation.annotators.GenericEvaluatorAnnotator;
 import it.uniud.ailab.dcore.persistence.Gram;
 import it.uniud.ailab.dcore.persistence.Keyphrase;
 import java.util.ArrayList;
@@ -33,7 +32,6 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 /**
  * Some utilities for operations on the blackboard.
@@ -60,20 +58,9 @@ public class BlackboardUtils {
         
         System.out.println("** SCORES **");
 
-        Map<Keyphrase, Double> scoredGrams = new HashMap<>();
-
-        for (Gram g : grams) {
-            Keyphrase k = (Keyphrase)g;
-            scoredGrams.put(k, k.getFeature(GenericEvaluatorAnnotator.SCORE));
-        }
-
-        Stream<Map.Entry<Keyphrase, Double>> ordered
-                = scoredGrams.entrySet().stream().sorted(
-                        Collections.reverseOrder(Map.Entry.comparingByValue())).limit(20);
-
-        for (Map.Entry<Keyphrase, Double> scoredGram : ordered.collect(Collectors.toList())) {
-            System.out.print(String.format("%-24s", scoredGram.getKey().getIdentifier()));           
-            for (FeatureAnnotation f : scoredGram.getKey().getFeatures()) {
+        for (Keyphrase scoredGram : b.getKeyphraseRanking().getTop(20)) {
+            System.out.print(String.format("%-24s", scoredGram.getIdentifier()));           
+            for (FeatureAnnotation f : scoredGram.getFeatures()) {
                 System.out.print(String.format("%-12s:%8.3f ; ", f.getAnnotator(), f.getScore()));
             }
 
@@ -82,27 +69,26 @@ public class BlackboardUtils {
                 System.out.println();
                 System.out.print(String.format("%-24s", "--POS pattern:"));
                 
-                System.out.print(scoredGram.getKey().getTokens().get(0).getPoS());
+                System.out.print(scoredGram.getTokens().get(0).getPoS());
                 for (int i = 1; 
-                        i < scoredGram.getKey().getTokens().size();
+                        i < scoredGram.getTokens().size();
                         i++)
                 {
                     System.out.print("/" + 
-                            scoredGram.getKey().getTokens().get(i).getPoS());
+                            scoredGram.getTokens().get(i).getPoS());
                 }
 
             }
 
-            Annotation[] anns = scoredGram.getKey().getAnnotations();
-
-            if (printDetails && anns.length > 0) {
+            if (printDetails 
+                    && scoredGram.getAnnotationCount() > 0) {
 
                 System.out.println();
                 System.out.print(String.format("%-24s", "--Annotations:"));
 
-                for (Annotation a : anns) {
+                scoredGram.forEachAnnotation(a -> {
                     System.out.print(a + " ; ");
-                }
+                });
             }
 
             System.out.println();
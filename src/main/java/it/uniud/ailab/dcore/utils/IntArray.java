@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2016 Artificial Intelligence
+ * Laboratory @ University of Udine.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package it.uniud.ailab.dcore.utils;
+
+import java.util.Arrays;
+
+/**
+ * A growable array of primitive integers, to store counters and identifiers
+ * without boxing them.
+ *
+ * @author agent
+ */
+public final class IntArray {
+
+    private int[] values;
+    private int size = 0;
+
+    /**
+     * Creates an empty array with the default capacity.
+     */
+    public IntArray() {
+        this(256);
+    }
+
+    /**
+     * Creates an empty array.
+     *
+     * @param capacity the initial capacity of the array.
+     */
+    public IntArray(int capacity) {
+        values = new int[Math.max(capacity, 1)];
+    }
+
+    /**
+     * Appends a value to the array.
+     *
+     * @param value the value to append.
+     */
+    public void add(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+    }
+
+    /**
+     * Gets a value of the array.
+     *
+     * @param index the index of the value.
+     * @return the value.
+     */
+    public int get(int index) {
+        checkIndex(index);
+        return values[index];
+    }
+
+    /**
+     * Replaces a value of the array.
+     *
+     * @param index the index of the value.
+     * @param value the new value.
+     */
+    public void set(int index, int value) {
+        checkIndex(index);
+        values[index] = value;
+    }
+
+    /**
+     * Increments a value of the array by one.
+     *
+     * @param index the index of the value.
+     */
+    public void increment(int index) {
+        checkIndex(index);
+        values[index]++;
+    }
+
+    /**
+     * Gets the number of values in the array.
+     *
+     * @return the number of values.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Copies the values in a new array of the exact size.
+     *
+     * @return the values.
+     */
+    public int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    private void checkIndex(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException(
+                    "Index: " + index + ", Size: " + size);
+        }
+    }
+}
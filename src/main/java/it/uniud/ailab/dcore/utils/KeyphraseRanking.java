@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2016 Artificial Intelligence
+ * Laboratory @ University of Udine.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package it.uniud.ailab.dcore.utils;
+
+import it.uniud.ailab.dcore.annotation.annotators.GenericEvaluatorAnnotator;
+import it.uniud.ailab.dcore.persistence.Keyphrase;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The keyphrases of a document ranked by their score, as computed by a
+ * {@link GenericEvaluatorAnnotator}.
+ *
+ * The scores are read once, when the ranking is created. The best keyphrases
+ * are found with a bounded heap, so getting the best k out of n keyphrases
+ * takes O(n log k) time and only the best k are sorted. Keyphrases with the
+ * same score are ranked in the order they have been given to the ranking.
+ * Changes to the scores made after the ranking is created are not seen.
+ *
+ * @author agent
+ */
+public class KeyphraseRanking {
+
+    /**
+     * The keyphrases.
+     */
+    private final Keyphrase[] keyphrases;
+
+    /**
+     * The score of every keyphrase.
+     */
+    private final double[] scores;
+
+    /**
+     * The indexes of the best keyphrases found so far, sorted by descending
+     * score.
+     */
+    private int[] top = new int[0];
+
+    /**
+     * Ranks some keyphrases.
+     *
+     * @param keyphrases the keyphrases to rank.
+     */
+    public KeyphraseRanking(Collection<Keyphrase> keyphrases) {
+        this.keyphrases = keyphrases.toArray(new Keyphrase[keyphrases.size()]);
+        this.scores = new double[this.keyphrases.length];
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] = this.keyphrases[i].getFeature(
+                    GenericEvaluatorAnnotator.SCORE);
+        }
+    }
+
+    /**
+     * Gets the number of keyphrases ranked.
+     *
+     * @return the number of keyphrases.
+     */
+    public int size() {
+        return keyphrases.length;
+    }
+
+    /**
+     * Gets the best keyphrases.
+     *
+     * @param k the number of keyphrases to get.
+     * @return the best k keyphrases (or all of them, if they're less than k),
+     * sorted by descending score.
+     */
+    public List<Keyphrase> getTop(int k) {
+        int[] best = select(k);
+        List<Keyphrase> result = new ArrayList<>(best.length);
+        for (int i : best) {
+            result.add(keyphrases[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Gets the scores of the best keyphrases.
+     *
+     * @param k the number of scores to get.
+     * @return the scores of the best k keyphrases (or of all of them, if
+     * they're less than k), in descending order.
+     */
+    public double[] getTopScores(int k) {
+        int[] best = select(k);
+        double[] result = new double[best.length];
+        for (int i = 0; i < best.length; i++) {
+            result[i] = scores[best[i]];
+        }
+        return result;
+    }
+
+    /**
+     * Gets the keyphrases that are not among the best ones, for example to
+     * remove them from the blackboard.
+     *
+     * @param k the number of best keyphrases.
+     * @return the keyphrases not in the best k, in the order they have been
+     * given to the ranking.
+     */
+    public List<Keyphrase> getDiscarded(int k) {
+        boolean[] kept = new boolean[keyphrases.length];
+        for (int i : select(k)) {
+            kept[i] = true;
+        }
+        List<Keyphrase> result = new ArrayList<>(
+                keyphrases.length - Math.min(Math.max(k, 0), keyphrases.length));
+        for (int i = 0; i < keyphrases.length; i++) {
+            if (!kept[i]) {
+                result.add(keyphrases[i]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Finds the indexes of the best keyphrases. The last selection is kept,
+     * so asking for less keyphrases than before costs nothing.
+     *
+     * @param k the number of keyphrases to find.
+     * @return the indexes of the best keyphrases, sorted by descending score.
+     */
+    private int[] select(int k) {
+        k = Math.max(0, Math.min(k, keyphrases.length));
+        if (k <= top.length) {
+            return k == top.length ? top : Arrays.copyOf(top, k);
+        }
+
+        // keep the best k in a heap whose root is the worst of them
+        int[] heap = new int[k];
+        int size = 0;
+        for (int i = 0; i < keyphrases.length; i++) {
+            if (size < k) {
+                heap[size] = i;
+                siftUp(heap, size++);
+            } else if (isBetter(i, heap[0])) {
+                heap[0] = i;
+                siftDown(heap, 0, size);
+            }
+        }
+
+        // empty the heap from the worst, filling the result from the end
+        int[] result = new int[k];
+        while (size > 0) {
+            result[size - 1] = heap[0];
+            heap[0] = heap[--size];
+            siftDown(heap, 0, size);
+        }
+
+        top = result;
+        return top;
+    }
+
+    /**
+     * Checks if a keyphrase is ranked before another.
+     *
+     * @param a the index of a keyphrase.
+     * @param b the index of another keyphrase.
+     * @return true if a has an higher score than b or, if the scores are
+     * equal, if a comes first.
+     */
+    private boolean isBetter(int a, int b) {
+        int c = Double.compare(scores[a], scores[b]);
+        return c > 0 || (c == 0 && a < b);
+    }
+
+    private void siftUp(int[] heap, int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (!isBetter(heap[parent], heap[i])) {
+                break;
+            }
+            swap(heap, i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int[] heap, int i, int size) {
+        while (true) {
+            int worst = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < size && isBetter(heap[worst], heap[left])) {
+                worst = left;
+            }
+            if (right < size && isBetter(heap[worst], heap[right])) {
+                worst = right;
+            }
+            if (worst == i) {
+                return;
+            }
+            swap(heap, i, worst);
+            i = worst;
+        }
+    }
+
+    private static void swap(int[] heap, int i, int j) {
+        int t = heap[i];
+        heap[i] = heap[j];
+        heap[j] = t;
+    }
+}
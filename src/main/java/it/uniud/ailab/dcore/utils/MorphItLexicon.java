@@ -0,0 +1,277 @@
+/*
+ * Copyright (C) 2016 Artificial Intelligence
+ * Laboratory @ University of Udine.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package it.uniud.ailab.dcore.utils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact, read-only version of the Morph-it! lexicon, that associates every
+ * word form with its candidate lemmas.
+ *
+ * The word forms are stored in a single character pool and found through an
+ * open-addressing hash table of integers; the candidates of every form are
+ * stored in parallel integer arrays that point to the distinct lemmas. The
+ * PoS tag of every candidate is translated once, when the lexicon is loaded,
+ * in the prefix of the OpenNLP tag it corresponds to, so that lemmatizing a
+ * word requires only a lookup and a few prefix comparisons. The lexicon is
+ * immutable and thread-safe.
+ *
+ * @author agent
+ */
+public class MorphItLexicon {
+
+    /**
+     * The characters of all the word forms.
+     */
+    private final char[] wordChars;
+
+    /**
+     * The start of every word form in the pool; the last element is the
+     * length of the pool.
+     */
+    private final int[] wordOffsets;
+
+    /**
+     * The hash table of the word forms: every slot contains the index of a
+     * form plus one, or 0 if it's empty.
+     */
+    private final int[] slots;
+
+    /**
+     * The first candidate of every word form; the last element is the number
+     * of candidates.
+     */
+    private final int[] candidateOffsets;
+
+    /**
+     * The lemma of every candidate.
+     */
+    private final int[] candidateLemmas;
+
+    /**
+     * The OpenNLP tag prefix of every candidate, or -1 if its tag has no
+     * mapping.
+     */
+    private final int[] candidateTags;
+
+    /**
+     * The distinct lemmas.
+     */
+    private final String[] lemmas;
+
+    /**
+     * The distinct OpenNLP tag prefixes.
+     */
+    private final String[] tags;
+
+    /**
+     * Loads the lexicon.
+     *
+     * @param lexicon the Morph-it! lexicon, with lines made by the word form,
+     * the lemma and the Morph-it! tag, separated by tabs.
+     * @param mapping the mapping between the Morph-it! tags and the OpenNLP
+     * ones, with lines made by the Morph-it! tag and the OpenNLP tag,
+     * separated by tabs. Lines starting with "#" are ignored.
+     * @throws IOException if the files can't be read.
+     */
+    public MorphItLexicon(BufferedReader lexicon, BufferedReader mapping)
+            throws IOException {
+
+        String line;
+
+        // translate the Morph-it tags in the prefixes of the OpenNLP tags
+        Map<String, Integer> tagIds = new HashMap<>();
+        List<String> tagList = new ArrayList<>();
+        Map<String, Integer> mappedTags = new HashMap<>();
+        while ((line = mapping.readLine()) != null) {
+            // skip comments
+            if (line.startsWith("#") || line.isEmpty()) {
+                continue;
+            }
+
+            String[] splittedLine = line.split("\\t");
+            // keep only the tag before the ":"
+            String prefix = splittedLine[1].split(":")[0];
+            Integer id = tagIds.get(prefix);
+            if (id == null) {
+                id = tagList.size();
+                tagIds.put(prefix, id);
+                tagList.add(prefix);
+            }
+            mappedTags.put(splittedLine[0], id);
+        }
+
+        // read the candidates, numbering the forms and the lemmas in order of
+        // appearance
+        Map<String, Integer> formIds = new HashMap<>();
+        Map<String, Integer> lemmaIds = new HashMap<>();
+        List<String> lemmaList = new ArrayList<>();
+        StringBuilder pool = new StringBuilder();
+        IntArray offsets = new IntArray(1024);
+        IntArray forms = new IntArray(1024);
+        IntArray entryLemmas = new IntArray(1024);
+        IntArray entryTags = new IntArray(1024);
+
+        while ((line = lexicon.readLine()) != null) {
+
+            String[] splittedLine = line.split("\\t");
+            if (splittedLine.length != 3) {
+                continue;
+            }
+
+            Integer form = formIds.get(splittedLine[0]);
+            if (form == null) {
+                form = formIds.size();
+                formIds.put(splittedLine[0], form);
+                offsets.add(pool.length());
+                pool.append(splittedLine[0]);
+            }
+
+            Integer lemma = lemmaIds.get(splittedLine[1]);
+            if (lemma == null) {
+                lemma = lemmaList.size();
+                lemmaIds.put(splittedLine[1], lemma);
+                lemmaList.add(splittedLine[1]);
+            }
+
+            Integer tag = mappedTags.get(splittedLine[2]);
+
+            forms.add(form);
+            entryLemmas.add(lemma);
+            entryTags.add(tag == null ? -1 : tag);
+        }
+
+        int formCount = formIds.size();
+        int entryCount = forms.size();
+
+        wordChars = pool.toString().toCharArray();
+        offsets.add(wordChars.length);
+        wordOffsets = offsets.toArray();
+        lemmas = lemmaList.toArray(new String[lemmaList.size()]);
+        tags = tagList.toArray(new String[tagList.size()]);
+
+        // group the candidates by form, keeping the order of the file
+        candidateOffsets = new int[formCount + 1];
+        for (int i = 0; i < entryCount; i++) {
+            candidateOffsets[forms.get(i) + 1]++;
+        }
+        for (int i = 0; i < formCount; i++) {
+            candidateOffsets[i + 1] += candidateOffsets[i];
+        }
+
+        candidateLemmas = new int[entryCount];
+        candidateTags = new int[entryCount];
+        int[] cursors = Arrays.copyOf(candidateOffsets, formCount);
+        for (int i = 0; i < entryCount; i++) {
+            int position = cursors[forms.get(i)]++;
+            candidateLemmas[position] = entryLemmas.get(i);
+            candidateTags[position] = entryTags.get(i);
+        }
+
+        // build the hash table of the forms
+        slots = new int[Integer.highestOneBit(Math.max(formCount, 1)) * 4];
+        for (Map.Entry<String, Integer> e : formIds.entrySet()) {
+            int slot = e.getKey().hashCode() & (slots.length - 1);
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & (slots.length - 1);
+            }
+            slots[slot] = e.getValue() + 1;
+        }
+    }
+
+    /**
+     * Gets the number of word forms in the lexicon.
+     *
+     * @return the number of word forms.
+     */
+    public int size() {
+        return wordOffsets.length - 1;
+    }
+
+    /**
+     * Finds the index of a word form.
+     *
+     * @param word the word form.
+     * @return the index of the form, or -1 if the form is not in the lexicon.
+     */
+    private int find(String word) {
+        int slot = word.hashCode() & (slots.length - 1);
+        while (slots[slot] != 0) {
+            int form = slots[slot] - 1;
+            int start = wordOffsets[form];
+            int length = wordOffsets[form + 1] - start;
+            if (length == word.length()) {
+                int i = 0;
+                while (i < length && wordChars[start + i] == word.charAt(i)) {
+                    i++;
+                }
+                if (i == length) {
+                    return form;
+                }
+            }
+            slot = (slot + 1) & (slots.length - 1);
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the lemma of a word. If the word has only one candidate lemma, that
+     * lemma is returned; otherwise, the lemma returned is the one whose tag
+     * is the longest prefix of the PoS tag of the word.
+     *
+     * @param word the word form.
+     * @param pos the OpenNLP PoS tag of the word.
+     * @return the lemma of the word; null if the word is not in the lexicon
+     * or none of its candidates matches the PoS tag.
+     */
+    public String getLemma(String word, String pos) {
+
+        int form = find(word);
+        if (form < 0) {
+            return null;
+        }
+
+        int first = candidateOffsets[form];
+        int last = candidateOffsets[form + 1];
+
+        // if there's only one candidate lemma, don't care about the mapping
+        if (last - first == 1) {
+            return lemmas[candidateLemmas[first]];
+        }
+
+        String lemma = null;
+        int mappedTagLength = 0;
+        for (int i = first; i < last; i++) {
+            if (candidateTags[i] >= 0) {
+                String tag = tags[candidateTags[i]];
+                if (pos.startsWith(tag) && mappedTagLength < tag.length()) {
+                    mappedTagLength = tag.length();
+                    lemma = lemmas[candidateLemmas[i]];
+                }
+            }
+        }
+        return lemma;
+    }
+}
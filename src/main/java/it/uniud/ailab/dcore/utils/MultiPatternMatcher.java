@@ -0,0 +1,254 @@
+/*
+ * Copyright (C) 2016 Artificial Intelligence
+ * Laboratory @ University of Udine.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package it.uniud.ailab.dcore.utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the occurrences of many strings in a text with a single pass over the
+ * text, using an Aho-Corasick automaton over the characters of the patterns.
+ * Patterns can be repeated and can be empty; an empty pattern occurs at every
+ * position of the text.
+ *
+ * @author agent
+ */
+public class MultiPatternMatcher {
+
+    /**
+     * Receives the occurrences of the patterns found in a text.
+     */
+    public interface MatchHandler {
+
+        /**
+         * Called for every occurrence of a pattern.
+         *
+         * @param pattern the index of the pattern.
+         * @param start the position of the first character of the occurrence.
+         * @param end the position following the occurrence.
+         */
+        void onMatch(int pattern, int start, int end);
+    }
+
+    /**
+     * The transitions of the automaton; the key is made by the source state
+     * in the upper 32 bits and the character in the lower 32 bits.
+     */
+    private final Map<Long, Integer> transitions = new HashMap<>();
+
+    /**
+     * The failure function of the automaton.
+     */
+    private int[] fail;
+
+    /**
+     * The first pattern recognized by every state, or -1.
+     */
+    private int[] output;
+
+    /**
+     * The nearest state in the failure chain of every state that recognizes
+     * a pattern, or -1.
+     */
+    private int[] outputLink;
+
+    /**
+     * The next pattern equal to every pattern, or -1.
+     */
+    private final int[] nextEqual;
+
+    /**
+     * The length of every pattern.
+     */
+    private final int[] lengths;
+
+    /**
+     * The number of states of the automaton.
+     */
+    private int states = 1;
+
+    /**
+     * Builds a matcher.
+     *
+     * @param patterns the patterns to find.
+     */
+    public MultiPatternMatcher(List<String> patterns) {
+
+        fail = new int[1024];
+        output = new int[1024];
+        output[0] = -1;
+        nextEqual = new int[patterns.size()];
+        lengths = new int[patterns.size()];
+
+        // the children of every state, used only to build the failure links
+        List<List<int[]>> children = new ArrayList<>();
+        children.add(new ArrayList<>());
+
+        for (int p = 0; p < patterns.size(); p++) {
+            String pattern = patterns.get(p);
+            lengths[p] = pattern.length();
+
+            int state = 0;
+            for (int i = 0; i < pattern.length(); i++) {
+                long key = getTransitionKey(state, pattern.charAt(i));
+                Integer next = transitions.get(key);
+                if (next == null) {
+                    next = newState();
+                    transitions.put(key, next);
+                    children.get(state).add(new int[]{pattern.charAt(i), next});
+                    children.add(new ArrayList<>());
+                }
+                state = next;
+            }
+
+            nextEqual[p] = output[state];
+            output[state] = p;
+        }
+
+        buildFailureLinks(children);
+    }
+
+    /**
+     * Creates a new state of the automaton.
+     *
+     * @return the new state.
+     */
+    private int newState() {
+        if (states == output.length) {
+            fail = Arrays.copyOf(fail, states * 2);
+            output = Arrays.copyOf(output, states * 2);
+        }
+        output[states] = -1;
+        return states++;
+    }
+
+    /**
+     * Computes the failure and output links with a breadth-first visit of
+     * the trie of the patterns.
+     *
+     * @param children the children of every state.
+     */
+    private void buildFailureLinks(List<List<int[]>> children) {
+
+        outputLink = new int[states];
+        outputLink[0] = -1;
+
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int[] child : children.get(0)) {
+            fail[child[1]] = 0;
+            outputLink[child[1]] = -1;
+            queue.add(child[1]);
+        }
+
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (int[] child : children.get(state)) {
+                int f = fail[state];
+                while (f != 0 && !transitions.containsKey(
+                        getTransitionKey(f, child[0]))) {
+                    f = fail[f];
+                }
+                Integer target = transitions.get(getTransitionKey(f, child[0]));
+                fail[child[1]] = target == null || target == child[1] ? 0 : target;
+                outputLink[child[1]] = output[fail[child[1]]] >= 0
+                        ? fail[child[1]] : outputLink[fail[child[1]]];
+                queue.add(child[1]);
+            }
+        }
+    }
+
+    /**
+     * Gets the key of a transition of the automaton.
+     *
+     * @param state the source state.
+     * @param c the character.
+     * @return the key of the transition.
+     */
+    private static long getTransitionKey(int state, int c) {
+        return ((long) state << 32) | c;
+    }
+
+    /**
+     * Finds all the occurrences of the patterns in a text, including the
+     * overlapping ones.
+     *
+     * @param text the text to scan.
+     * @param handler receives the occurrences.
+     */
+    public void match(CharSequence text, MatchHandler handler) {
+
+        // the empty patterns are recognized by the initial state
+        for (int p = output[0]; p >= 0; p = nextEqual[p]) {
+            for (int i = 0; i <= text.length(); i++) {
+                handler.onMatch(p, i, i);
+            }
+        }
+
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+
+            Integer next = transitions.get(getTransitionKey(state, c));
+            while (next == null && state != 0) {
+                state = fail[state];
+                next = transitions.get(getTransitionKey(state, c));
+            }
+            state = next == null ? 0 : next;
+
+            for (int s = output[state] >= 0 ? state : outputLink[state];
+                    s > 0; s = outputLink[s]) {
+                for (int p = output[s]; p >= 0; p = nextEqual[p]) {
+                    handler.onMatch(p, i + 1 - lengths[p], i + 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks if there is a word boundary at a position of a text, with the
+     * same definition of word characters of the <code>\b</code> regular
+     * expression construct: letters, digits and the underscore.
+     *
+     * @param text the text.
+     * @param position the position to check, between 0 and the length of the
+     * text.
+     * @return true if there is a word boundary at the position.
+     */
+    public static boolean isWordBoundary(CharSequence text, int position) {
+        boolean before = position > 0 && isWordChar(text.charAt(position - 1));
+        boolean after = position < text.length()
+                && isWordChar(text.charAt(position));
+        return before != after;
+    }
+
+    /**
+     * Checks if a character is a word character.
+     *
+     * @param c the character.
+     * @return true if the character is a letter, a digit or an underscore.
+     */
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+}
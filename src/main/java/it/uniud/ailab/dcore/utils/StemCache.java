@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2016 Artificial Intelligence
+ * Laboratory @ University of Udine.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package it.uniud.ailab.dcore.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import org.tartarus.snowball.SnowballStemmer;
+
+/**
+ * A cache of the stems of the words of a language, computed with the Snowball
+ * stemmer. Since the frequency of words follows a Zipfian distribution, most
+ * of the stems requested while analyzing a document have already been
+ * computed.
+ *
+ * There is one cache per language, shared by the whole process. The cache is
+ * thread-safe: every thread uses its own stemmer, and the stems are kept in a
+ * fixed number of segments, each one guarded by its own lock. Every segment is
+ * bounded and drops its least recently used word when full, so the frequent
+ * words stay in the cache while the rare ones are evicted.
+ *
+ * @author agent
+ */
+public class StemCache {
+
+    /**
+     * The maximum number of words cached for every language.
+     */
+    public static final int DEFAULT_CAPACITY = 100000;
+
+    /**
+     * The caches of the languages requested so far.
+     */
+    private static final Map<String, StemCache> CACHES
+            = new ConcurrentHashMap<>();
+
+    /**
+     * The number of segments of a cache. Words are assigned to segments by
+     * their hash, so that threads stemming different words rarely contend
+     * for the same lock.
+     */
+    private static final int SEGMENTS = 16;
+
+    /**
+     * The stems of the words: access-ordered maps, that drop the least
+     * recently used word when full.
+     */
+    private final Map<String, String>[] stems;
+
+    /**
+     * The stemmer of every thread.
+     */
+    private final ThreadLocal<SnowballStemmer> stemmers;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+
+    /**
+     * Creates a cache.
+     *
+     * @param language the language of the words.
+     * @param capacity the maximum number of words cached.
+     */
+    @SuppressWarnings("unchecked")
+    private StemCache(Locale language, int capacity) {
+        final int segmentCapacity = Math.max(1, capacity / SEGMENTS);
+        this.stems = new Map[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            stems[i] = new LinkedHashMap<String, String>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<String, String> eldest) {
+                    return size() > segmentCapacity;
+                }
+            };
+        }
+        this.stemmers = ThreadLocal.withInitial(
+                () -> SnowballStemmerSelector.getStemmerForLanguage(language));
+    }
+
+    /**
+     * Gets the cache of a language.
+     *
+     * @param language the language.
+     * @return the cache of the language, or null if there is no stemmer for
+     * that language.
+     */
+    public static StemCache forLanguage(Locale language) {
+        StemCache cache = CACHES.get(language.getLanguage());
+        if (cache == null && SnowballStemmerSelector
+                .getStemmerForLanguage(language) != null) {
+            cache = CACHES.computeIfAbsent(language.getLanguage(),
+                    (l) -> new StemCache(language, DEFAULT_CAPACITY));
+        }
+        return cache;
+    }
+
+    /**
+     * Gets the stem of a word.
+     *
+     * @param word the word.
+     * @return the stem of the word, or the word itself if the stemmer can't
+     * stem it.
+     */
+    public String stem(String word) {
+
+        requests.increment();
+        Map<String, String> segment = stems[(word.hashCode() & 0x7fffffff)
+                % SEGMENTS];
+
+        String stem;
+        synchronized (segment) {
+            stem = segment.get(word);
+        }
+        if (stem != null) {
+            hits.increment();
+            return stem;
+        }
+
+        // stem outside the lock: at worst, two threads stem the same word
+        SnowballStemmer stemmer = stemmers.get();
+        stemmer.setCurrent(word);
+        stem = stemmer.stem() ? stemmer.getCurrent() : word;
+
+        synchronized (segment) {
+            segment.put(word, stem);
+        }
+        return stem;
+    }
+
+    /**
+     * Gets the number of stems requested to the cache.
+     *
+     * @return the number of requests.
+     */
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    /**
+     * Gets the number of stems found in the cache.
+     *
+     * @return the number of hits.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Gets the ratio of stems found in the cache.
+     *
+     * @return the hit rate, between 0 and 1.
+     */
+    public double getHitRate() {
+        long r = getRequests();
+        return r == 0 ? 0 : (double) getHits() / r;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d requests, %d hits (hit rate %.2f)",
+                getRequests(), getHits(), getHitRate());
+    }
+}
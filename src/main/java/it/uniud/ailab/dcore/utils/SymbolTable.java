@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2016 Artificial Intelligence
+ * Laboratory @ University of Udine.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package it.uniud.ailab.dcore.utils;
+
+import com.rits.cloning.Immutable;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A table that interns strings (words, stems, lemmas, PoS tags...) into
+ * integer identifiers, so that every distinct string is stored only once and
+ * strings can be compared by comparing their identifiers. Identifiers are
+ * assigned incrementally, starting from 0, and never change.
+ *
+ * The table is thread-safe: lookups are lock-free, and only the insertion of
+ * a new symbol is synchronized. The table is marked as immutable for the
+ * cloner, so that objects that refer to it can be deep-cloned without copying
+ * the table.
+ *
+ * @author agent
+ */
+@Immutable
+public class SymbolTable {
+
+    /**
+     * The table shared by the whole process.
+     */
+    private static final SymbolTable GLOBAL = new SymbolTable();
+
+    /**
+     * The identifiers of the symbols.
+     */
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+
+    /**
+     * The symbols, indexed by identifier. A symbol is written in the array
+     * before its identifier is published in the map, so readers that got an
+     * identifier always find the symbol.
+     */
+    private volatile String[] symbols = new String[1024];
+
+    /**
+     * Gets the symbol table shared by the whole process.
+     *
+     * @return the global symbol table.
+     */
+    public static SymbolTable getGlobal() {
+        return GLOBAL;
+    }
+
+    /**
+     * Gets the identifier of a symbol, adding the symbol to the table if
+     * needed.
+     *
+     * @param symbol the symbol.
+     * @return the identifier of the symbol.
+     */
+    public int getId(String symbol) {
+        Integer id = ids.get(symbol);
+        if (id != null) {
+            return id;
+        }
+
+        synchronized (this) {
+            id = ids.get(symbol);
+            if (id == null) {
+                id = ids.size();
+                String[] array = symbols;
+                if (id == array.length) {
+                    array = Arrays.copyOf(array, array.length * 2);
+                }
+                array[id] = symbol;
+                symbols = array;
+                ids.put(symbol, id);
+            }
+            return id;
+        }
+    }
+
+    /**
+     * Gets the identifier of a symbol without adding it to the table.
+     *
+     * @param symbol the symbol.
+     * @return the identifier of the symbol, or -1 if the symbol is not in the
+     * table.
+     */
+    public int lookup(String symbol) {
+        Integer id = ids.get(symbol);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Gets the symbol associated with an identifier.
+     *
+     * @param id the identifier.
+     * @return the symbol.
+     */
+    public String getSymbol(int id) {
+        return symbols[id];
+    }
+
+    /**
+     * Gets the instance of a symbol stored in the table, adding the symbol if
+     * needed. All the strings equal to the symbol can be replaced by the
+     * returned instance, to save memory.
+     *
+     * @param symbol the symbol.
+     * @return the instance of the symbol stored in the table.
+     */
+    public String intern(String symbol) {
+        return getSymbol(getId(symbol));
+    }
+
+    /**
+     * Gets the number of symbols in the table.
+     *
+     * @return the number of symbols.
+     */
+    public int size() {
+        return ids.size();
+    }
+
+    /**
+     * An immutable sequence of symbol identifiers, that can be used as key of
+     * an hash map, e.g. to identify a n-gram by the identifiers of its stems.
+     */
+    public static final class Sequence {
+
+        private final int[] ids;
+        private final int hash;
+
+        /**
+         * Creates a sequence.
+         *
+         * @param ids the identifiers of the symbols; the array is not copied,
+         * so it must not be modified after the creation of the sequence.
+         */
+        public Sequence(int... ids) {
+            this.ids = ids;
+            this.hash = Arrays.hashCode(ids);
+        }
+
+        /**
+         * Gets the number of symbols in the sequence.
+         *
+         * @return the length of the sequence.
+         */
+        public int length() {
+            return ids.length;
+        }
+
+        /**
+         * Gets the identifier of a symbol of the sequence.
+         *
+         * @param index the position of the symbol.
+         * @return the identifier of the symbol.
+         */
+        public int get(int index) {
+            return ids[index];
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Sequence)) {
+                return false;
+            }
+            Sequence other = (Sequence) obj;
+            return hash == other.hash && Arrays.equals(ids, other.ids);
+        }
+    }
+}
@@ -0,0 +1,387 @@
+/*
+ * Copyright (C) 2016 Artificial Intelligence
+ * Laboratory @ University of Udine.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package it.uniud.ailab.dcore.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.commons.io.FileUtils;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+/**
+ * A two-level cache for the categories and the links of Wikipedia pages. The
+ * first level is an in-memory LRU map, the second one is a directory on disk
+ * that keeps the entries between different runs. Entries older than the
+ * time-to-live are discarded from both levels: expired files are deleted when
+ * the cache is created and when they are looked up. The cache is thread-safe,
+ * so it can be shared by all the documents and threads of a process.
+ *
+ * @author agent
+ */
+public class WikipediaCache {
+
+    /**
+     * The default maximum number of entries kept in memory.
+     */
+    public static final int DEFAULT_SIZE = 10000;
+
+    /**
+     * The default time-to-live of an entry: one week.
+     */
+    public static final long DEFAULT_TTL = 7L * 24 * 60 * 60 * 1000;
+
+    /**
+     * An entry of the cache.
+     */
+    private static class Entry {
+
+        private final long timestamp;
+        private final Pair<List<String>, List<String>> value;
+
+        private Entry(long timestamp, Pair<List<String>, List<String>> value) {
+            this.timestamp = timestamp;
+            this.value = value;
+        }
+    }
+
+    /**
+     * The in-memory level: an access-ordered map, that drops the least
+     * recently used entry when full.
+     */
+    private final Map<String, Entry> memory;
+
+    /**
+     * The on-disk level, or null if the cache lives only in memory.
+     */
+    private final File directory;
+
+    /**
+     * The time-to-live of the entries, in milliseconds.
+     */
+    private final long ttl;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+
+    /**
+     * Creates a cache.
+     *
+     * @param size the maximum number of entries kept in memory.
+     * @param ttl the time-to-live of the entries, in milliseconds.
+     * @param directory the directory of the on-disk level; if null, the
+     * entries are kept only in memory.
+     */
+    public WikipediaCache(final int size, long ttl, File directory) {
+        this.ttl = ttl;
+        this.directory = directory;
+        this.memory = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > size;
+            }
+        };
+
+        if (directory != null) {
+            directory.mkdirs();
+            purgeExpired();
+        }
+    }
+
+    /**
+     * Creates a cache with the default size and time-to-live, whose on-disk
+     * level is in the temporary folder of the Distiller.
+     */
+    public WikipediaCache() {
+        this(DEFAULT_SIZE, DEFAULT_TTL, new File(
+                FileSystem.getDistillerTmpPath()
+                .concat(FileSystem.getSeparator())
+                .concat("wikipediaCache")));
+    }
+
+    /**
+     * Gets the categories and the links of a page.
+     *
+     * @param key the identifier of the page, e.g. its language and title.
+     * @return a pair with the categories and the links of the page, or null
+     * if the page is not in the cache.
+     */
+    public Pair<List<String>, List<String>> get(String key) {
+
+        requests.incrementAndGet();
+        long now = System.currentTimeMillis();
+
+        synchronized (memory) {
+            Entry e = memory.get(key);
+            if (e != null && now - e.timestamp <= ttl) {
+                memoryHits.incrementAndGet();
+                return e.value;
+            }
+            memory.remove(key);
+        }
+
+        Entry e = readFromDisk(key);
+        if (e != null) {
+            if (now - e.timestamp <= ttl) {
+                diskHits.incrementAndGet();
+                synchronized (memory) {
+                    memory.put(key, e);
+                }
+                return e.value;
+            }
+
+            // check the file too, in case it has just been rewritten
+            File f = getFile(key);
+            if (now - f.lastModified() > ttl) {
+                f.delete();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds the categories and the links of a page to the cache.
+     *
+     * @param key the identifier of the page, e.g. its language and title.
+     * @param categories the categories of the page.
+     * @param links the links of the page.
+     */
+    public void put(String key, List<String> categories, List<String> links) {
+
+        Entry e = new Entry(System.currentTimeMillis(),
+                new Pair<>(categories, links));
+
+        synchronized (memory) {
+            memory.put(key, e);
+        }
+        writeToDisk(key, e);
+    }
+
+    /**
+     * Gets the number of lookups performed on the cache.
+     *
+     * @return the number of lookups.
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * Gets the number of lookups answered by the in-memory level.
+     *
+     * @return the number of memory hits.
+     */
+    public long getMemoryHits() {
+        return memoryHits.get();
+    }
+
+    /**
+     * Gets the number of lookups answered by the on-disk level.
+     *
+     * @return the number of disk hits.
+     */
+    public long getDiskHits() {
+        return diskHits.get();
+    }
+
+    /**
+     * Gets the ratio of lookups answered by the cache, by either level.
+     *
+     * @return the hit rate, between 0 and 1.
+     */
+    public double getHitRate() {
+        long r = requests.get();
+        return r == 0 ? 0 : (double) (memoryHits.get() + diskHits.get()) / r;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d requests, %d memory hits, %d disk hits "
+                + "(hit rate %.2f)", getRequests(), getMemoryHits(),
+                getDiskHits(), getHitRate());
+    }
+
+    /**
+     * Deletes the files of the on-disk level that are older than the 
+     * time-to-live. The age of a file is given by its modification time, which
+     * is the time its entry was written, so the files don't need to be read.
+     */
+    private void purgeExpired() {
+
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        int purged = 0;
+        for (File f : files) {
+            // the temporary files of interrupted writes are purged as well
+            if (f.isFile() && f.getName().contains(".json")
+                    && now - f.lastModified() > ttl && f.delete()) {
+                purged++;
+            }
+        }
+
+        if (purged > 0) {
+            Logger.getLogger(WikipediaCache.class.getName()).log(Level.FINE,
+                    "Purged {0} expired cache entries from {1}",
+                    new Object[]{purged, directory});
+        }
+    }
+
+    /**
+     * Gets the file that contains an entry in the on-disk level.
+     *
+     * @param key the key of the entry.
+     * @return the file of the entry.
+     */
+    private File getFile(String key) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            StringBuilder name = new StringBuilder();
+            for (byte b : md.digest(key.getBytes(StandardCharsets.UTF_8))) {
+                name.append(String.format("%02x", b));
+            }
+            return new File(directory, name.append(".json").toString());
+        } catch (NoSuchAlgorithmException ex) {
+            throw new RuntimeException("Absurd failure: SHA-1 is not supported.", ex);
+        }
+    }
+
+    /**
+     * Reads an entry from the on-disk level.
+     *
+     * @param key the key of the entry.
+     * @return the entry, or null if it is not on disk.
+     */
+    private Entry readFromDisk(String key) {
+
+        if (directory == null) {
+            return null;
+        }
+
+        File f = getFile(key);
+        if (!f.exists()) {
+            return null;
+        }
+
+        try {
+            Object parsed = (new JSONParser()).parse(
+                    FileUtils.readFileToString(f, "UTF-8"));
+            if (!(parsed instanceof JSONObject)) {
+                throw new IOException("The entry is not a JSON object");
+            }
+            JSONObject json = (JSONObject) parsed;
+
+            // the key is stored too, to rule out hash collisions
+            if (!key.equals(json.get("key"))) {
+                return null;
+            }
+
+            Object timestamp = json.get("timestamp");
+            if (!(timestamp instanceof Number)) {
+                throw new IOException("The entry has no valid timestamp");
+            }
+
+            return new Entry(((Number) timestamp).longValue(), new Pair<>(
+                    getStrings(json, "categories"),
+                    getStrings(json, "links")));
+
+        } catch (IOException | ParseException ex) {
+            Logger.getLogger(WikipediaCache.class.getName()).log(
+                    Level.WARNING, "Cannot read cache entry " + f, ex);
+            return null;
+        }
+    }
+
+    /**
+     * Copies an array of strings of an entry read from disk, checking the type
+     * of its elements.
+     *
+     * @param json the entry.
+     * @param field the name of the array.
+     * @return the strings of the array.
+     * @throws IOException if the field is not an array of strings.
+     */
+    private static List<String> getStrings(JSONObject json, String field)
+            throws IOException {
+
+        Object array = json.get(field);
+        if (!(array instanceof JSONArray)) {
+            throw new IOException("The entry has no valid " + field);
+        }
+
+        List<String> strings = new ArrayList<>(((JSONArray) array).size());
+        for (Object o : (JSONArray) array) {
+            if (!(o instanceof String)) {
+                throw new IOException("The entry has no valid " + field);
+            }
+            strings.add((String) o);
+        }
+        return strings;
+    }
+
+    /**
+     * Writes an entry in the on-disk level.
+     *
+     * @param key the key of the entry.
+     * @param e the entry.
+     */
+    private void writeToDisk(String key, Entry e) {
+
+        if (directory == null) {
+            return;
+        }
+
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("key", key);
+        json.put("timestamp", e.timestamp);
+        json.put("categories", e.value.getLeft());
+        json.put("links", e.value.getRight());
+
+        File f = getFile(key);
+        File tmp = new File(f.getPath() + "." + Thread.currentThread().getId());
+        try {
+            // write and rename, so that readers never see partial entries
+            FileUtils.writeStringToFile(tmp, JSONValue.toJSONString(json),
+                    "UTF-8");
+            if (!tmp.renameTo(f)) {
+                f.delete();
+                tmp.renameTo(f);
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(WikipediaCache.class.getName()).log(
+                    Level.WARNING, "Cannot write cache entry " + f, ex);
+        }
+    }
+}
@@ -0,0 +1,353 @@
+/*
+ * Copyright (C) 2016 Artificial Intelligence
+ * Laboratory @ University of Udine.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package it.uniud.ailab.dcore.utils;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+/**
+ * A client for the Wikipedia query API that retrieves the categories and the
+ * links of many pages at once. Titles are sent in batches of at most
+ * {@link #MAX_TITLES} per request, the batches are sent concurrently over a
+ * bounded pool of connections, and the API continuations are followed until
+ * every category and link has been retrieved. The requests are spaced so that
+ * they never exceed the configured rate. The client is thread-safe.
+ *
+ * @author agent
+ */
+public class WikipediaClient {
+
+    /**
+     * The maximum number of titles per request allowed by the API.
+     */
+    public static final int MAX_TITLES = 50;
+
+    /**
+     * The address of the API. The language needs to be filled in.
+     */
+    public static final String API = "https://%s.wikipedia.org/w/api.php";
+
+    /**
+     * The timeout of connections and reads, in milliseconds.
+     */
+    private static final int TIMEOUT = 30000;
+
+    /**
+     * The address of the API queried by the client, with a placeholder for
+     * the language.
+     */
+    private final String api;
+
+    /**
+     * The pooled HTTP client.
+     */
+    private final CloseableHttpClient httpClient;
+
+    /**
+     * The threads that send the batches.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * The minimum interval between two requests, in nanoseconds.
+     */
+    private final long minInterval;
+
+    /**
+     * The time at which the next request can be sent, in nanoseconds.
+     */
+    private long nextRequest = System.nanoTime();
+
+    /**
+     * Creates a client.
+     *
+     * @param maxConnections the maximum number of concurrent requests.
+     * @param requestsPerSecond the maximum number of requests per second;
+     * zero or less for no limit.
+     */
+    public WikipediaClient(int maxConnections, double requestsPerSecond) {
+        this(maxConnections, requestsPerSecond, API);
+    }
+
+    /**
+     * Creates a client that queries a custom address, e.g. a mirror of 
+     * Wikipedia.
+     *
+     * @param maxConnections the maximum number of concurrent requests.
+     * @param requestsPerSecond the maximum number of requests per second;
+     * zero or less for no limit.
+     * @param api the address of the API, where a <code>%s</code> placeholder
+     * is replaced by the language code (see {@link #API}).
+     */
+    public WikipediaClient(int maxConnections, double requestsPerSecond,
+            String api) {
+
+        this.api = api;
+
+        PoolingHttpClientConnectionManager pool
+                = new PoolingHttpClientConnectionManager();
+        pool.setMaxTotal(maxConnections);
+        pool.setDefaultMaxPerRoute(maxConnections);
+
+        httpClient = HttpClients.custom()
+                .setConnectionManager(pool)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectTimeout(TIMEOUT)
+                        .setSocketTimeout(TIMEOUT)
+                        .build())
+                .build();
+
+        executor = Executors.newFixedThreadPool(maxConnections, (r) -> {
+            Thread t = new Thread(r, "wikipedia-client");
+            t.setDaemon(true);
+            return t;
+        });
+
+        minInterval = requestsPerSecond > 0
+                ? (long) (TimeUnit.SECONDS.toNanos(1) / requestsPerSecond) : 0;
+    }
+
+    /**
+     * Gets the categories and the links of some Wikipedia pages.
+     *
+     * @param language the language code of the Wikipedia to query, e.g. "en".
+     * @param titles the titles of the pages.
+     * @param userAgent the user agent of the requests, as Wikipedia asks for
+     * one.
+     * @return a map that associates every requested title with a pair
+     * containing the categories and the links of the page. Pages that do
+     * not exist have no categories and no links.
+     * @throws IOException if Wikipedia can't be queried.
+     */
+    public Map<String, Pair<List<String>, List<String>>> getCategoriesAndLinks(
+            String language, Collection<String> titles, String userAgent)
+            throws IOException {
+
+        List<String> unique = new ArrayList<>(new LinkedHashSet<>(titles));
+        List<Future<Map<String, Pair<List<String>, List<String>>>>> batches
+                = new ArrayList<>();
+
+        for (int i = 0; i < unique.size(); i += MAX_TITLES) {
+            List<String> batch = unique.subList(i,
+                    Math.min(i + MAX_TITLES, unique.size()));
+            batches.add(executor.submit(
+                    () -> queryBatch(language, batch, userAgent)));
+        }
+
+        Map<String, Pair<List<String>, List<String>>> results = new HashMap<>();
+        try {
+            for (Future<Map<String, Pair<List<String>, List<String>>>> batch
+                    : batches) {
+                results.putAll(batch.get());
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while querying Wikipedia", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw new IOException("Error while querying Wikipedia", ex.getCause());
+        } finally {
+            for (Future<?> batch : batches) {
+                batch.cancel(true);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Gets the categories and the links of a batch of pages, following the
+     * continuations of the API.
+     *
+     * @param language the language code of the Wikipedia to query.
+     * @param titles the titles of the pages, at most {@link #MAX_TITLES}.
+     * @param userAgent the user agent of the requests.
+     * @return the categories and the links of every requested title.
+     * @throws IOException if Wikipedia can't be queried.
+     * @throws InterruptedException if interrupted while waiting to send a
+     * request.
+     */
+    private Map<String, Pair<List<String>, List<String>>> queryBatch(
+            String language, List<String> titles, String userAgent)
+            throws IOException, InterruptedException {
+
+        // the pages of the results are indexed by their normalized title
+        Map<String, String> normalized = new HashMap<>();
+        Map<String, Set<String>> categories = new HashMap<>();
+        Map<String, Set<String>> links = new HashMap<>();
+
+        Map<String, String> continuation = new HashMap<>();
+        continuation.put("continue", "");
+
+        while (continuation != null) {
+
+            JSONObject json;
+            try {
+                URIBuilder uri = new URIBuilder(String.format(api, language))
+                        .addParameter("action", "query")
+                        .addParameter("prop", "categories|links")
+                        .addParameter("clshow", "!hidden")
+                        .addParameter("cllimit", "max")
+                        .addParameter("pllimit", "max")
+                        .addParameter("plnamespace", "0")
+                        .addParameter("format", "json")
+                        .addParameter("titles", String.join("|", titles));
+                for (Map.Entry<String, String> c : continuation.entrySet()) {
+                    uri.addParameter(c.getKey(), c.getValue());
+                }
+
+                HttpGet get = new HttpGet(uri.build());
+                if (userAgent != null) {
+                    get.setHeader("User-Agent", userAgent);
+                }
+
+                throttle();
+                try (CloseableHttpResponse response = httpClient.execute(get)) {
+                    if (response.getStatusLine().getStatusCode() != 200) {
+                        throw new IOException("Wikipedia answered "
+                                + response.getStatusLine());
+                    }
+                    json = (JSONObject) (new JSONParser()).parse(
+                            EntityUtils.toString(response.getEntity(), "UTF-8"));
+                }
+            } catch (URISyntaxException | ParseException ex) {
+                throw new IOException("Error while querying Wikipedia", ex);
+            }
+
+            JSONObject query = (JSONObject) json.get("query");
+            if (query == null) {
+                break;
+            }
+
+            JSONArray normalizations = (JSONArray) query.get("normalized");
+            if (normalizations != null) {
+                for (Object o : normalizations) {
+                    JSONObject n = (JSONObject) o;
+                    normalized.put((String) n.get("from"), (String) n.get("to"));
+                }
+            }
+
+            JSONObject pages = (JSONObject) query.get("pages");
+            if (pages != null) {
+                for (Object o : pages.values()) {
+                    JSONObject page = (JSONObject) o;
+                    String title = (String) page.get("title");
+                    collectTitles(page, "categories",
+                            categories.computeIfAbsent(title,
+                                    (k) -> new LinkedHashSet<>()));
+                    collectTitles(page, "links",
+                            links.computeIfAbsent(title,
+                                    (k) -> new LinkedHashSet<>()));
+                }
+            }
+
+            // the continuation contains the parameters to add to the next
+            // request to get the remaining categories and links
+            JSONObject next = (JSONObject) json.get("continue");
+            continuation = null;
+            if (next != null) {
+                continuation = new HashMap<>();
+                for (Object key : next.keySet()) {
+                    continuation.put((String) key, String.valueOf(next.get(key)));
+                }
+            }
+        }
+
+        Map<String, Pair<List<String>, List<String>>> results = new HashMap<>();
+        for (String title : titles) {
+            String pageTitle = normalized.getOrDefault(title, title);
+            results.put(title, new Pair<>(
+                    new ArrayList<>(categories.getOrDefault(
+                            pageTitle, new LinkedHashSet<>())),
+                    new ArrayList<>(links.getOrDefault(
+                            pageTitle, new LinkedHashSet<>()))));
+        }
+        return results;
+    }
+
+    /**
+     * Adds the titles contained in a list of a page block to a set.
+     *
+     * @param page the page block of the API answer.
+     * @param list the name of the list, e.g. "categories".
+     * @param titles the set to fill.
+     */
+    private static void collectTitles(JSONObject page, String list,
+            Set<String> titles) {
+        JSONArray items = (JSONArray) page.get(list);
+        if (items != null) {
+            for (Object o : items) {
+                titles.add((String) ((JSONObject) o).get("title"));
+            }
+        }
+    }
+
+    /**
+     * Waits until a new request can be sent without exceeding the rate limit.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    private void throttle() throws InterruptedException {
+        long wait;
+        synchronized (this) {
+            long now = System.nanoTime();
+            long slot = Math.max(now, nextRequest);
+            nextRequest = slot + minInterval;
+            wait = slot - now;
+        }
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    /**
+     * Releases the connections and the threads of the client.
+     *
+     * @throws IOException if the connections can't be closed.
+     */
+    public void close() throws IOException {
+        executor.shutdownNow();
+        httpClient.close();
+    }
+}
@@ -0,0 +1,322 @@
+/*
+ * Copyright (C) 2016 Artificial Intelligence
+ * Laboratory @ University of Udine.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package it.uniud.ailab.dcore.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A read-only, memory-mapped index of the categories and the links of the
+ * pages of a Wikipedia, built from the Wikipedia dumps by
+ * {@link WikipediaGraphIndexBuilder}. The index allows to find the categories
+ * and the links of a page without querying Wikipedia.
+ *
+ * Every title (of a page or of a category) has an integer identifier, that is
+ * its position in the sorted list of titles. The file contains:
+ * <ul>
+ * <li>a header with the number of titles and of edges;</li>
+ * <li>the offsets of the titles, of the categories and of the links of every
+ * identifier;</li>
+ * <li>the identifiers of the categories and of the links, grouped by source
+ * page;</li>
+ * <li>the titles, encoded in UTF-8.</li>
+ * </ul>
+ *
+ * The file is mapped in memory, so opening an index is immediate and the
+ * pages are loaded by the operating system only when needed. The index is
+ * thread-safe.
+ *
+ * @author agent
+ */
+public class WikipediaGraphIndex {
+
+    /**
+     * The first integer of an index file.
+     */
+    static final int MAGIC = 0x57474958;
+
+    /**
+     * The version of the file format.
+     */
+    static final int VERSION = 1;
+
+    /**
+     * The length of the header, in bytes.
+     */
+    static final int HEADER_LENGTH = 40;
+
+    /**
+     * A region of a file mapped in memory, possibly longer than 2GB. Integers
+     * and longs must be aligned to their size.
+     */
+    static final class Region {
+
+        private static final int CHUNK_BITS = 30;
+        private static final long CHUNK_MASK = (1L << CHUNK_BITS) - 1;
+
+        private final MappedByteBuffer[] chunks;
+
+        Region(FileChannel channel, FileChannel.MapMode mode, long start,
+                long length) throws IOException {
+            int n = (int) ((length + CHUNK_MASK) >>> CHUNK_BITS);
+            chunks = new MappedByteBuffer[n];
+            for (int i = 0; i < n; i++) {
+                long offset = (long) i << CHUNK_BITS;
+                chunks[i] = channel.map(mode, start + offset,
+                        Math.min(1L << CHUNK_BITS, length - offset));
+            }
+        }
+
+        byte get(long pos) {
+            return chunks[(int) (pos >>> CHUNK_BITS)].get(
+                    (int) (pos & CHUNK_MASK));
+        }
+
+        int getInt(long pos) {
+            return chunks[(int) (pos >>> CHUNK_BITS)].getInt(
+                    (int) (pos & CHUNK_MASK));
+        }
+
+        long getLong(long pos) {
+            return chunks[(int) (pos >>> CHUNK_BITS)].getLong(
+                    (int) (pos & CHUNK_MASK));
+        }
+
+        void put(long pos, byte b) {
+            chunks[(int) (pos >>> CHUNK_BITS)].put((int) (pos & CHUNK_MASK), b);
+        }
+
+        void putInt(long pos, int i) {
+            chunks[(int) (pos >>> CHUNK_BITS)].putInt((int) (pos & CHUNK_MASK), i);
+        }
+
+        void putLong(long pos, long l) {
+            chunks[(int) (pos >>> CHUNK_BITS)].putLong((int) (pos & CHUNK_MASK), l);
+        }
+    }
+
+    /**
+     * The number of titles in the index.
+     */
+    private final int size;
+
+    private final Region titleOffsets;
+    private final Region categoryOffsets;
+    private final Region linkOffsets;
+    private final Region categories;
+    private final Region links;
+    private final Region titles;
+
+    /**
+     * Opens an index.
+     *
+     * @param file the index file.
+     * @throws IOException if the file can't be read or is not an index.
+     */
+    public WikipediaGraphIndex(File file) throws IOException {
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+                FileChannel channel = raf.getChannel()) {
+
+            Region header = new Region(channel, FileChannel.MapMode.READ_ONLY,
+                    0, HEADER_LENGTH);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                throw new IOException(file + " is not a Wikipedia index.");
+            }
+
+            size = header.getInt(8);
+            long categoryEdges = header.getLong(16);
+            long linkEdges = header.getLong(24);
+            long titleBytes = header.getLong(32);
+
+            long[] layout = getLayout(size, categoryEdges, linkEdges);
+            FileChannel.MapMode ro = FileChannel.MapMode.READ_ONLY;
+
+            titleOffsets = new Region(channel, ro, layout[0], 8L * (size + 1));
+            categoryOffsets = new Region(channel, ro, layout[1], 8L * (size + 1));
+            linkOffsets = new Region(channel, ro, layout[2], 8L * (size + 1));
+            categories = new Region(channel, ro, layout[3],
+                    Math.max(4, 4 * categoryEdges));
+            links = new Region(channel, ro, layout[4],
+                    Math.max(4, 4 * linkEdges));
+            titles = new Region(channel, ro, layout[5], Math.max(1, titleBytes));
+        }
+    }
+
+    /**
+     * Computes the position of the sections of an index file.
+     *
+     * @param size the number of titles.
+     * @param categoryEdges the number of page-category pairs.
+     * @param linkEdges the number of page-link pairs.
+     * @return the positions of the title offsets, category offsets, link
+     * offsets, categories, links and titles sections, followed by the
+     * position of the end of the file.
+     */
+    static long[] getLayout(int size, long categoryEdges, long linkEdges) {
+        long[] layout = new long[7];
+        layout[0] = HEADER_LENGTH;
+        layout[1] = layout[0] + 8L * (size + 1);
+        layout[2] = layout[1] + 8L * (size + 1);
+        layout[3] = layout[2] + 8L * (size + 1);
+        // keep the following sections aligned to 8 bytes
+        layout[4] = layout[3] + ((4 * categoryEdges + 7) & ~7L);
+        layout[5] = layout[4] + ((4 * linkEdges + 7) & ~7L);
+        return layout;
+    }
+
+    /**
+     * Gets the number of titles in the index.
+     *
+     * @return the number of titles.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the title associated with an identifier.
+     *
+     * @param id the identifier.
+     * @return the title.
+     */
+    public String getTitle(int id) {
+        long start = titleOffsets.getLong(8L * id);
+        long end = titleOffsets.getLong(8L * (id + 1));
+        byte[] bytes = new byte[(int) (end - start)];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = titles.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Gets the identifier of a title. Underscores are considered as spaces
+     * and, as Wikipedia does, the first letter of the title is capitalized if
+     * the title is not found as is.
+     *
+     * @param title the title to find.
+     * @return the identifier of the title, or -1 if the title is not in the
+     * index.
+     */
+    public int getId(String title) {
+        title = title.replace('_', ' ');
+        int id = find(title);
+        if (id < 0 && !title.isEmpty()) {
+            String capitalized = title.substring(0, 1).toUpperCase()
+                    + title.substring(1);
+            if (!capitalized.equals(title)) {
+                id = find(capitalized);
+            }
+        }
+        return id;
+    }
+
+    /**
+     * Performs a binary search of a title.
+     *
+     * @param title the title to find.
+     * @return the identifier of the title, or -1 if the title is not in the
+     * index.
+     */
+    private int find(String title) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = getTitle(mid).compareTo(title);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the identifiers of the categories of a page.
+     *
+     * @param id the identifier of the page.
+     * @return the identifiers of the categories of the page.
+     */
+    public int[] getCategories(int id) {
+        return read(categoryOffsets, categories, id);
+    }
+
+    /**
+     * Gets the identifiers of the pages linked by a page.
+     *
+     * @param id the identifier of the page.
+     * @return the identifiers of the linked pages.
+     */
+    public int[] getLinks(int id) {
+        return read(linkOffsets, links, id);
+    }
+
+    /**
+     * Reads the targets of a page.
+     *
+     * @param offsets the offsets of the targets.
+     * @param targets the targets.
+     * @param id the identifier of the page.
+     * @return the targets of the page.
+     */
+    private static int[] read(Region offsets, Region targets, int id) {
+        long start = offsets.getLong(8L * id);
+        long end = offsets.getLong(8L * (id + 1));
+        int[] result = new int[(int) (end - start)];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = targets.getInt(4 * (start + i));
+        }
+        return result;
+    }
+
+    /**
+     * Gets the categories and the links of a page.
+     *
+     * @param title the title of the page.
+     * @return a pair with the titles of the categories and of the links of
+     * the page; if the page is not in the index, both lists are empty.
+     */
+    public Pair<List<String>, List<String>> getCategoriesAndLinks(String title) {
+
+        List<String> pageCategories = new ArrayList<>();
+        List<String> pageLinks = new ArrayList<>();
+
+        int id = getId(title);
+        if (id >= 0) {
+            for (int c : getCategories(id)) {
+                pageCategories.add(getTitle(c));
+            }
+            for (int l : getLinks(id)) {
+                pageLinks.add(getTitle(l));
+            }
+        }
+        return new Pair<>(pageCategories, pageLinks);
+    }
+}
@@ -0,0 +1,573 @@
+/*
+ * Copyright (C) 2016 Artificial Intelligence
+ * Laboratory @ University of Udine.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package it.uniud.ailab.dcore.utils;
+
+import it.uniud.ailab.dcore.utils.WikipediaGraphIndex.Region;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Builds a {@link WikipediaGraphIndex} from the SQL dumps of a Wikipedia, as
+ * published at <a href="https://dumps.wikimedia.org/">dumps.wikimedia.org</a>:
+ * the <i>page</i> table (e.g. enwiki-latest-page.sql.gz), the
+ * <i>categorylinks</i> table and the <i>pagelinks</i> table. The dumps can
+ * be either plain or gzipped.
+ *
+ * The layout of every table is read from the CREATE TABLE statement of its
+ * dump. Older dumps store the title of the target of a link in the link
+ * tables (<i>cl_to</i>, <i>pl_namespace</i> and <i>pl_title</i>), while
+ * current ones store the identifier of a row of the <i>linktarget</i> table
+ * (<i>cl_target_id</i> and <i>pl_target_id</i>): in that case, the dump of
+ * the linktarget table is needed too. Dumps with any other layout are
+ * rejected.
+ *
+ * Only the articles (namespace 0) are indexed; links to pages that do not
+ * exist are dropped. Given the dump of the <i>page_props</i> table, the
+ * hidden categories, i.e. the maintenance categories flagged with the
+ * <i>hiddencat</i> property, are dropped too, as the online client does. The dumps of the links are read twice, once to count
+ * the edges of every page and once to write them directly in the
+ * memory-mapped index, so the memory needed is proportional to the number
+ * of titles and not to the number of links.
+ *
+ * @author agent
+ */
+public class WikipediaGraphIndexBuilder {
+
+    /**
+     * The namespace of the articles.
+     */
+    private static final String ARTICLES = "0";
+
+    /**
+     * The namespace of the categories.
+     */
+    private static final String CATEGORIES = "14";
+
+    /**
+     * The property of the hidden categories in the page_props table.
+     */
+    private static final String HIDDEN_CATEGORY = "hiddencat";
+
+    /**
+     * Builds an index from dumps that store the titles of the targets of the
+     * links in the link tables, keeping the hidden categories.
+     *
+     * @param pageDump the dump of the page table.
+     * @param categoryLinksDump the dump of the categorylinks table.
+     * @param pageLinksDump the dump of the pagelinks table.
+     * @param output the index file to create.
+     * @throws IOException if the dumps can't be read or the index can't be
+     * written.
+     */
+    public static void build(File pageDump, File categoryLinksDump,
+            File pageLinksDump, File output) throws IOException {
+        build(pageDump, categoryLinksDump, pageLinksDump, null, null, output);
+    }
+
+    /**
+     * Builds an index, keeping the hidden categories.
+     *
+     * @param pageDump the dump of the page table.
+     * @param categoryLinksDump the dump of the categorylinks table.
+     * @param pageLinksDump the dump of the pagelinks table.
+     * @param linkTargetDump the dump of the linktarget table, needed if the
+     * link tables refer to their targets by identifier; may be null for dumps
+     * that store the titles of the targets.
+     * @param output the index file to create.
+     * @throws IOException if the dumps can't be read, have an unsupported 
+     * layout, or the index can't be written.
+     */
+    public static void build(File pageDump, File categoryLinksDump,
+            File pageLinksDump, File linkTargetDump, File output)
+            throws IOException {
+        build(pageDump, categoryLinksDump, pageLinksDump, linkTargetDump,
+                null, output);
+    }
+
+    /**
+     * Builds an index.
+     *
+     * @param pageDump the dump of the page table.
+     * @param categoryLinksDump the dump of the categorylinks table.
+     * @param pageLinksDump the dump of the pagelinks table.
+     * @param linkTargetDump the dump of the linktarget table, needed if the
+     * link tables refer to their targets by identifier; may be null for dumps
+     * that store the titles of the targets.
+     * @param pagePropsDump the dump of the page_props table, used to drop
+     * the hidden categories; may be null to keep them.
+     * @param output the index file to create.
+     * @throws IOException if the dumps can't be read, have an unsupported 
+     * layout, or the index can't be written.
+     */
+    public static void build(File pageDump, File categoryLinksDump,
+            File pageLinksDump, File linkTargetDump, File pagePropsDump,
+            File output) throws IOException {
+
+        Logger log = Logger.getLogger(WikipediaGraphIndexBuilder.class.getName());
+
+        // find the columns of the tables
+        Columns page = new Columns(pageDump);
+        int pageId = page.get("page_id");
+        int pageNamespace = page.get("page_namespace");
+        int pageTitle = page.get("page_title");
+
+        Columns categoryLinks = new Columns(categoryLinksDump);
+        int clFrom = categoryLinks.get("cl_from");
+        int clTo = categoryLinks.find("cl_to");
+        int clTarget = clTo < 0 ? categoryLinks.get("cl_target_id") : -1;
+
+        Columns pageLinks = new Columns(pageLinksDump);
+        int plFrom = pageLinks.get("pl_from");
+        int plTitle = pageLinks.find("pl_title");
+        int plNamespace = plTitle < 0 ? -1 : pageLinks.get("pl_namespace");
+        int plTarget = plTitle < 0 ? pageLinks.get("pl_target_id") : -1;
+
+        // check the layout of the link targets now, before the long reads
+        if ((clTarget >= 0 || plTarget >= 0) && linkTargetDump == null) {
+            throw new IOException("The link tables refer to the linktarget "
+                    + "table: its dump is needed too");
+        }
+        Columns targets = clTarget >= 0 || plTarget >= 0
+                ? new Columns(linkTargetDump).require(
+                        "lt_id", "lt_namespace", "lt_title")
+                : null;
+        Columns props = pagePropsDump != null
+                ? new Columns(pagePropsDump).require("pp_page", "pp_propname")
+                : null;
+
+        // find the pages of the hidden categories
+        Set<Integer> hiddenIds = new HashSet<>();
+        if (props != null) {
+            int ppPage = props.get("pp_page");
+            int ppName = props.get("pp_propname");
+            readTuples(pagePropsDump, (t) -> {
+                if (props.fits(t) && t.get(ppName).equals(HIDDEN_CATEGORY)) {
+                    hiddenIds.add(Integer.parseInt(t.get(ppPage)));
+                }
+            });
+        }
+
+        // read the articles and the titles of the hidden categories
+        List<String> pageTitles = new ArrayList<>();
+        IntArray pageIds = new IntArray(1024);
+        Set<String> hidden = new HashSet<>();
+        readTuples(pageDump, (t) -> {
+            if (!page.fits(t)) {
+                return;
+            }
+            String namespace = t.get(pageNamespace);
+            if (namespace.equals(ARTICLES)) {
+                pageIds.add(Integer.parseInt(t.get(pageId)));
+                pageTitles.add(t.get(pageTitle).replace('_', ' '));
+            } else if (namespace.equals(CATEGORIES) && hiddenIds.contains(
+                    Integer.parseInt(t.get(pageId)))) {
+                hidden.add(t.get(pageTitle).replace('_', ' '));
+            }
+        });
+        hiddenIds.clear();
+        log.log(Level.INFO, "Read {0} pages and {1} hidden categories",
+                new Object[]{pageTitles.size(), hidden.size()});
+
+        // read the categories, by name or through the link targets
+        Set<String> categoryNames = new HashSet<>();
+        if (clTo >= 0) {
+            readTuples(categoryLinksDump, (t) -> {
+                if (categoryLinks.fits(t)) {
+                    String title = t.get(clTo).replace('_', ' ');
+                    if (!hidden.contains(title)) {
+                        categoryNames.add(title);
+                    }
+                }
+            });
+        } else {
+            Set<Integer> used = new HashSet<>();
+            readTuples(categoryLinksDump, (t) -> {
+                if (categoryLinks.fits(t)) {
+                    used.add(Integer.parseInt(t.get(clTarget)));
+                }
+            });
+            readLinkTargets(linkTargetDump, targets, CATEGORIES, (id, title) -> {
+                if (used.contains(id) && !hidden.contains(title)) {
+                    categoryNames.add(title);
+                }
+            });
+        }
+        log.log(Level.INFO, "Read {0} categories", categoryNames.size());
+
+        // sort the titles to assign the identifiers
+        Set<String> allTitles = new HashSet<>(pageTitles);
+        allTitles.addAll(categoryNames);
+        categoryNames.clear();
+        String[] titles = allTitles.toArray(new String[allTitles.size()]);
+        allTitles.clear();
+        Arrays.sort(titles);
+
+        Map<String, Integer> ids = new HashMap<>(titles.length * 2);
+        for (int i = 0; i < titles.length; i++) {
+            ids.put(titles[i], i);
+        }
+
+        Map<Integer, Integer> pages = new HashMap<>(pageTitles.size() * 2);
+        Map<String, Integer> articles = new HashMap<>(pageTitles.size() * 2);
+        for (int i = 0; i < pageTitles.size(); i++) {
+            int id = ids.get(pageTitles.get(i));
+            pages.put(pageIds.get(i), id);
+            articles.put(pageTitles.get(i), id);
+        }
+        pageTitles.clear();
+
+        // find the target of every link
+        Function<List<String>, Integer> categoryOf;
+        if (clTo >= 0) {
+            categoryOf = (t) -> {
+                String title = t.get(clTo).replace('_', ' ');
+                return hidden.contains(title) ? null : ids.get(title);
+            };
+        } else {
+            Map<Integer, Integer> categoryTargets = new HashMap<>();
+            readLinkTargets(linkTargetDump, targets, CATEGORIES,
+                    (id, title) -> {
+                        Integer category = ids.get(title);
+                        if (category != null && !hidden.contains(title)) {
+                            categoryTargets.put(id, category);
+                        }
+                    });
+            categoryOf = (t) -> categoryTargets.get(
+                    Integer.parseInt(t.get(clTarget)));
+        }
+
+        Function<List<String>, Integer> articleOf;
+        if (plTitle >= 0) {
+            articleOf = (t) -> t.get(plNamespace).equals(ARTICLES)
+                    ? articles.get(t.get(plTitle).replace('_', ' ')) : null;
+        } else {
+            Map<Integer, Integer> articleTargets = new HashMap<>();
+            readLinkTargets(linkTargetDump, targets, ARTICLES,
+                    (id, title) -> {
+                        Integer article = articles.get(title);
+                        if (article != null) {
+                            articleTargets.put(id, article);
+                        }
+                    });
+            articleOf = (t) -> articleTargets.get(
+                    Integer.parseInt(t.get(plTarget)));
+        }
+
+        // count the edges of every page
+        long[] categoryOffsets = new long[titles.length + 1];
+        long[] linkOffsets = new long[titles.length + 1];
+
+        readLinks(categoryLinksDump, categoryLinks, clFrom, categoryOf, pages,
+                (e) -> categoryOffsets[e[0] + 1]++);
+        readLinks(pageLinksDump, pageLinks, plFrom, articleOf, pages,
+                (e) -> linkOffsets[e[0] + 1]++);
+
+        for (int i = 0; i < titles.length; i++) {
+            categoryOffsets[i + 1] += categoryOffsets[i];
+            linkOffsets[i + 1] += linkOffsets[i];
+        }
+        long categoryEdges = categoryOffsets[titles.length];
+        long linkEdges = linkOffsets[titles.length];
+        log.log(Level.INFO, "Found {0} category links and {1} page links",
+                new Object[]{categoryEdges, linkEdges});
+
+        // write the index
+        long[] titleOffsets = new long[titles.length + 1];
+        for (int i = 0; i < titles.length; i++) {
+            titleOffsets[i + 1] = titleOffsets[i]
+                    + titles[i].getBytes(StandardCharsets.UTF_8).length;
+        }
+        long titleBytes = titleOffsets[titles.length];
+
+        long[] layout = WikipediaGraphIndex.getLayout(
+                titles.length, categoryEdges, linkEdges);
+        long length = layout[5] + titleBytes;
+
+        output.delete();
+        try (RandomAccessFile raf = new RandomAccessFile(output, "rw");
+                FileChannel channel = raf.getChannel()) {
+
+            raf.setLength(length);
+            Region file = new Region(channel, FileChannel.MapMode.READ_WRITE,
+                    0, length);
+
+            file.putInt(0, WikipediaGraphIndex.MAGIC);
+            file.putInt(4, WikipediaGraphIndex.VERSION);
+            file.putInt(8, titles.length);
+            file.putLong(16, categoryEdges);
+            file.putLong(24, linkEdges);
+            file.putLong(32, titleBytes);
+
+            for (int i = 0; i <= titles.length; i++) {
+                file.putLong(layout[0] + 8L * i, titleOffsets[i]);
+                file.putLong(layout[1] + 8L * i, categoryOffsets[i]);
+                file.putLong(layout[2] + 8L * i, linkOffsets[i]);
+            }
+
+            for (int i = 0; i < titles.length; i++) {
+                byte[] bytes = titles[i].getBytes(StandardCharsets.UTF_8);
+                for (int j = 0; j < bytes.length; j++) {
+                    file.put(layout[5] + titleOffsets[i] + j, bytes[j]);
+                }
+            }
+
+            // write the edges, using the offsets as cursors
+            readLinks(categoryLinksDump, categoryLinks, clFrom, categoryOf,
+                    pages, (e) -> file.putInt(
+                            layout[3] + 4 * categoryOffsets[e[0]]++, e[1]));
+            readLinks(pageLinksDump, pageLinks, plFrom, articleOf,
+                    pages, (e) -> file.putInt(
+                            layout[4] + 4 * linkOffsets[e[0]]++, e[1]));
+        }
+
+        log.log(Level.INFO, "Index of {0} titles written in {1}",
+                new Object[]{titles.length, output});
+    }
+
+    /**
+     * Reads the links from the articles to other pages.
+     *
+     * @param dump the dump of the categorylinks or pagelinks table.
+     * @param columns the columns of the table.
+     * @param from the column of the page id of the source of the link.
+     * @param target finds the identifier of the target of a link, or null if
+     * the target is not indexed.
+     * @param pages the identifiers of the articles, indexed by page id.
+     * @param consumer receives the pairs (article, target).
+     * @throws IOException if the dump can't be read.
+     */
+    private static void readLinks(File dump, Columns columns, int from,
+            Function<List<String>, Integer> target,
+            Map<Integer, Integer> pages, Consumer<int[]> consumer)
+            throws IOException {
+        readTuples(dump, (t) -> {
+            Integer source = columns.fits(t)
+                    ? pages.get(Integer.parseInt(t.get(from))) : null;
+            if (source != null) {
+                Integer to = target.apply(t);
+                if (to != null) {
+                    consumer.accept(new int[]{source, to});
+                }
+            }
+        });
+    }
+
+    /**
+     * Reads the link targets of a namespace.
+     *
+     * @param dump the dump of the linktarget table.
+     * @param columns the columns of the table.
+     * @param namespace the namespace of the targets to read.
+     * @param consumer receives the identifier and the title of every target.
+     * @throws IOException if the dump can't be read.
+     */
+    private static void readLinkTargets(File dump, Columns columns,
+            String namespace, BiConsumer<Integer, String> consumer)
+            throws IOException {
+        int id = columns.get("lt_id");
+        int ns = columns.get("lt_namespace");
+        int title = columns.get("lt_title");
+        readTuples(dump, (t) -> {
+            if (columns.fits(t) && t.get(ns).equals(namespace)) {
+                consumer.accept(Integer.parseInt(t.get(id)),
+                        t.get(title).replace('_', ' '));
+            }
+        });
+    }
+
+    /**
+     * Opens a dump.
+     *
+     * @param dump the dump, plain or gzipped.
+     * @return a reader of the dump.
+     * @throws IOException if the dump can't be opened.
+     */
+    private static BufferedReader open(File dump) throws IOException {
+        InputStream in = new FileInputStream(dump);
+        if (dump.getName().endsWith(".gz")) {
+            in = new GZIPInputStream(in, 1 << 16);
+        }
+        return new BufferedReader(
+                new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    /**
+     * Reads the rows of the INSERT statements of a SQL dump.
+     *
+     * @param dump the dump, plain or gzipped.
+     * @param consumer receives the values of every row.
+     * @throws IOException if the dump can't be read.
+     */
+    static void readTuples(File dump, Consumer<List<String>> consumer)
+            throws IOException {
+
+        try (BufferedReader reader = open(dump)) {
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.startsWith("INSERT INTO")) {
+                    continue;
+                }
+
+                List<String> tuple = new ArrayList<>();
+                StringBuilder value = new StringBuilder();
+                boolean inTuple = false;
+                boolean inString = false;
+
+                for (int i = line.indexOf(" VALUES ") + 8; i < line.length(); i++) {
+                    char c = line.charAt(i);
+                    if (inString) {
+                        if (c == '\\' && i + 1 < line.length()) {
+                            value.append(line.charAt(++i));
+                        } else if (c == '\'') {
+                            inString = false;
+                        } else {
+                            value.append(c);
+                        }
+                    } else if (c == '\'') {
+                        inString = true;
+                    } else if (c == '(' && !inTuple) {
+                        inTuple = true;
+                    } else if (inTuple && (c == ',' || c == ')')) {
+                        tuple.add(value.toString());
+                        value.setLength(0);
+                        if (c == ')') {
+                            consumer.accept(tuple);
+                            tuple = new ArrayList<>();
+                            inTuple = false;
+                        }
+                    } else if (inTuple) {
+                        value.append(c);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The columns of the table of a dump, as declared by the CREATE TABLE
+     * statement at the beginning of the dump.
+     */
+    private static final class Columns {
+
+        private final File dump;
+        private final List<String> names = new ArrayList<>();
+
+        /**
+         * Reads the columns of the table of a dump.
+         *
+         * @param dump the dump.
+         * @throws IOException if the dump can't be read or has no CREATE
+         * TABLE statement.
+         */
+        Columns(File dump) throws IOException {
+            this.dump = dump;
+            try (BufferedReader reader = open(dump)) {
+                boolean inTable = false;
+                String line;
+                while ((line = reader.readLine()) != null
+                        && !line.startsWith("INSERT INTO")) {
+                    if (line.startsWith("CREATE TABLE")) {
+                        inTable = true;
+                    } else if (inTable && line.startsWith(")")) {
+                        break;
+                    } else if (inTable && line.trim().startsWith("`")) {
+                        String column = line.trim();
+                        names.add(column.substring(1, column.indexOf('`', 1)));
+                    }
+                }
+            }
+            if (names.isEmpty()) {
+                throw new IOException(
+                        "No CREATE TABLE statement found in " + dump);
+            }
+        }
+
+        /**
+         * Finds a column.
+         *
+         * @param name the name of the column.
+         * @return the position of the column, or -1 if there is no such
+         * column.
+         */
+        int find(String name) {
+            return names.indexOf(name);
+        }
+
+        /**
+         * Gets a column that the table must have.
+         *
+         * @param name the name of the column.
+         * @return the position of the column.
+         * @throws IOException if there is no such column.
+         */
+        int get(String name) throws IOException {
+            int i = names.indexOf(name);
+            if (i < 0) {
+                throw new IOException("Unsupported layout of " + dump
+                        + ": no column " + name + " in " + names);
+            }
+            return i;
+        }
+
+        /**
+         * Checks that the table has some columns.
+         *
+         * @param required the names of the columns.
+         * @return the columns of the table.
+         * @throws IOException if a column is missing.
+         */
+        Columns require(String... required) throws IOException {
+            for (String name : required) {
+                get(name);
+            }
+            return this;
+        }
+
+        /**
+         * Checks if a row has all the columns of the table.
+         *
+         * @param tuple the values of the row.
+         * @return true if the row is complete.
+         */
+        boolean fits(List<String> tuple) {
+            return tuple.size() >= names.size();
+        }
+    }
+}
@@ -0,0 +1,308 @@
+/*
+ * Copyright (C) 2016 Artificial Intelligence
+ * Laboratory @ University of Udine.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package it.uniud.ailab.dcore.wrappers.external;
+
+import com.cybozu.labs.langdetect.Detector;
+import com.cybozu.labs.langdetect.DetectorFactory;
+import com.cybozu.labs.langdetect.LangDetectException;
+import com.cybozu.labs.langdetect.Language;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Thread-safe access to the Cybozu Language Detector Library.
+ *
+ * The library keeps the language profiles in a JVM-wide singleton that can be
+ * filled only once, so this class loads the profiles a single time for all the
+ * annotators and guards them with a read-write lock: any number of threads can
+ * detect languages at the same time, while (re)loading the profiles is
+ * exclusive. Only the profiles of the languages that have been requested are
+ * loaded, which reduces both the loading time and the cost of every
+ * detection.
+ *
+ * @author agent
+ * @see <a href="https://code.google.com/p/language-detection/">language-detection</a>
+ */
+public final class CybozuLanguageDetectionService {
+
+    /**
+     * The language profiles embedded in the jar.
+     */
+    public static final List<String> PROFILES = Collections.unmodifiableList(
+            Arrays.asList("af", "ar", "bg", "bn", "cs", "da", "de", "el",
+                    "en", "es", "et", "fa", "fi", "fr", "gu", "he", "hi", "hr",
+                    "hu", "id", "it", "ja", "kn", "ko", "lt", "lv", "mk", "ml",
+                    "mr", "ne", "nl", "no", "pa", "pl", "pt", "ro", "ru", "sk",
+                    "sl", "so", "sq", "sv", "sw", "ta", "te", "th", "tl", "tr",
+                    "uk", "ur", "vi", "zh-cn", "zh-tw"));
+
+    /**
+     * Guards the profiles loaded in the Cybozu detector factory.
+     */
+    private static final ReadWriteLock LOCK = new ReentrantReadWriteLock();
+
+    /**
+     * The profiles currently loaded in the detector factory.
+     */
+    private static final Set<String> loadedProfiles = new HashSet<>();
+
+    /**
+     * This class should not be instantiated.
+     */
+    private CybozuLanguageDetectionService() {
+    }
+
+    /**
+     * Gets the name of the Cybozu profile for a locale, or null if the
+     * library has no profile for it.
+     *
+     * @param locale the locale.
+     * @return the name of the profile of the locale.
+     */
+    public static String getProfileName(Locale locale) {
+        String tag = locale.toLanguageTag().toLowerCase();
+        if (PROFILES.contains(tag)) {
+            return tag;
+        }
+        return PROFILES.contains(locale.getLanguage())
+                ? locale.getLanguage() : null;
+    }
+
+    /**
+     * Loads the profiles of the specified languages, if they have not been
+     * loaded yet. Call this method at startup to avoid paying the loading
+     * time during the first detection.
+     *
+     * @param languages the profiles to load; null or empty to load all the
+     * available profiles.
+     * @throws LangDetectException if the profiles can't be loaded.
+     */
+    public static void load(Collection<String> languages)
+            throws LangDetectException {
+
+        Set<String> requested = new HashSet<>(
+                languages == null || languages.isEmpty() ? PROFILES : languages);
+        requested.retainAll(PROFILES);
+
+        LOCK.writeLock().lock();
+        try {
+            if (loadedProfiles.containsAll(requested)) {
+                return;
+            }
+
+            // the factory can't be extended, so reload everything
+            requested.addAll(loadedProfiles);
+
+            List<String> models = new ArrayList<>();
+            for (String profile : PROFILES) {
+                if (!requested.contains(profile)) {
+                    continue;
+                }
+
+                try (InputStream s = CybozuLanguageDetectionService.class.
+                        getClassLoader().getResourceAsStream("cybozu/" + profile)) {
+                    models.add(IOUtils.toString(s, "UTF-8"));
+                } catch (IOException ex) {
+                    throw new IllegalStateException(
+                            "Cannot load cybozu model " + profile, ex);
+                }
+            }
+
+            DetectorFactory.clear();
+            loadedProfiles.clear();
+            DetectorFactory.loadProfile(models);
+            loadedProfiles.addAll(requested);
+        } finally {
+            LOCK.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Detects the language of a text, choosing among the specified
+     * candidates.
+     *
+     * @param text the text to analyze.
+     * @param candidates the profiles of the candidate languages; null or
+     * empty to use every available profile.
+     * @return the code of the language detected.
+     * @throws LangDetectException if the profiles can't be loaded or the
+     * language can't be detected.
+     */
+    public static String detect(String text, Collection<String> candidates)
+            throws LangDetectException {
+
+        return detect(text, candidates, 0, 1, 1.0);
+    }
+
+    /**
+     * Detects the language of a text, choosing among the specified
+     * candidates and looking only at a sample of the text. The sample is 
+     * made by sampleLength characters, taken from the given number of 
+     * windows evenly spread over the text, starting from its beginning. The
+     * windows are read one at a time: after every window, the language of 
+     * all the windows read so far is detected, and the detection stops as 
+     * soon as the probability of the most probable language reaches the
+     * given confidence.
+     *
+     * @param text the text to analyze.
+     * @param candidates the profiles of the candidate languages; null or
+     * empty to use every available profile.
+     * @param sampleLength the number of characters to analyze; if lower or 
+     * equal than zero, or greater than the length of the text, the whole 
+     * text is analyzed.
+     * @param samples the number of windows in which the sample is taken.
+     * @param confidence the probability of the most probable language that
+     * stops the detection; if greater than 1, all the windows are read.
+     * @return the code of the language detected.
+     * @throws LangDetectException if the profiles can't be loaded or the
+     * language can't be detected.
+     */
+    public static String detect(String text, Collection<String> candidates,
+            int sampleLength, int samples, double confidence)
+            throws LangDetectException {
+
+        Set<String> profiles = new HashSet<>(
+                candidates == null || candidates.isEmpty() ? PROFILES : candidates);
+        profiles.retainAll(PROFILES);
+
+        if (profiles.isEmpty()) {
+            throw new IllegalArgumentException(
+                    "No cybozu profile for the languages " + candidates);
+        }
+
+        List<String> windows = sample(text, sampleLength, samples);
+
+        while (true) {
+            LOCK.readLock().lock();
+            try {
+                if (loadedProfiles.containsAll(profiles)) {
+                    // a detector computes the probabilities only once, the
+                    // first time they're requested, so every check needs a
+                    // new detector fed with all the windows read so far
+                    StringBuilder read = new StringBuilder();
+                    for (int i = 0; i < windows.size() - 1; i++) {
+                        read.append(windows.get(i)).append(' ');
+                        Detector detector = createDetector(profiles);
+                        detector.append(read.toString());
+                        List<Language> probabilities;
+                        try {
+                            probabilities = detector.getProbabilities();
+                        } catch (LangDetectException ex) {
+                            // no features in the text read so far
+                            continue;
+                        }
+                        if (!probabilities.isEmpty()
+                                && probabilities.get(0).prob >= confidence) {
+                            return probabilities.get(0).lang;
+                        }
+                    }
+                    read.append(windows.get(windows.size() - 1));
+                    Detector detector = createDetector(profiles);
+                    detector.append(read.toString());
+                    return detector.detect();
+                }
+            } finally {
+                LOCK.readLock().unlock();
+            }
+
+            load(profiles);
+        }
+    }
+
+    /**
+     * Takes a sample of a text, made by windows evenly spread over it. The
+     * windows are cut at whitespaces, so that no word is broken.
+     *
+     * @param text the text to sample.
+     * @param sampleLength the total length of the windows.
+     * @param samples the number of windows.
+     * @return the windows of text.
+     */
+    private static List<String> sample(String text, int sampleLength,
+            int samples) {
+
+        List<String> windows = new ArrayList<>();
+
+        if (sampleLength <= 0 || text.length() <= sampleLength) {
+            windows.add(text);
+            return windows;
+        }
+
+        samples = Math.max(1, samples);
+        int windowLength = Math.max(1, sampleLength / samples);
+        int stride = samples > 1
+                ? (text.length() - windowLength) / (samples - 1) : 0;
+
+        for (int i = 0; i < samples; i++) {
+            int start = i * stride;
+            int end = Math.min(text.length(), start + windowLength);
+
+            // move the boundaries to the nearest whitespace
+            if (start > 0) {
+                int space = text.indexOf(' ', start);
+                start = space < 0 || space >= end ? start : space + 1;
+            }
+            if (end < text.length()) {
+                int space = text.lastIndexOf(' ', end);
+                end = space <= start ? end : space;
+            }
+            windows.add(text.substring(start, end));
+        }
+        return windows;
+    }
+
+    /**
+     * Creates a detector for the specified candidate languages. Detectors 
+     * are cheap and not thread-safe, so a new one should be created for every
+     * text. The caller must hold the read lock until the detector has been 
+     * used, because the factory shares its profiles with the detectors.
+     *
+     * @param profiles the profiles of the candidate languages, that must 
+     * have already been loaded.
+     * @return a new detector.
+     * @throws LangDetectException if the detector can't be created.
+     */
+    private static Detector createDetector(Set<String> profiles)
+            throws LangDetectException {
+
+        Detector detector = DetectorFactory.create();
+
+        // if more profiles than needed are loaded, rule out the other languages
+        if (loadedProfiles.size() > profiles.size()) {
+            HashMap<String, Double> priors = new HashMap<>();
+            for (String profile : loadedProfiles) {
+                priors.put(profile, profiles.contains(profile) ? 1.0 : 0.0);
+            }
+            detector.setPriorMap(priors);
+        }
+        return detector;
+    }
+}
@@ -18,23 +18,21 @@
  */
 package it.uniud.ailab.dcore.wrappers.external;
 
-import com.cybozu.labs.langdetect.Detector;
-import com.cybozu.labs.langdetect.DetectorFactory;
 import com.cybozu.labs.langdetect.LangDetectException;
 import java.util.Locale;
 import it.uniud.ailab.dcore.annotation.AnnotationException;
 import it.uniud.ailab.dcore.annotation.Annotator;
 import it.uniud.ailab.dcore.Blackboard;
 import it.uniud.ailab.dcore.persistence.DocumentComponent;
-import java.io.IOException;
-import java.io.InputStream;
-import java.util.Arrays;
-import java.util.logging.Level;
-import java.util.logging.Logger;
-import org.apache.commons.io.IOUtils;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 /**
- * Wrapper for the Cybozu Language Detector Library.
+ * Wrapper for the Cybozu Language Detector Library. The language profiles
+ * are loaded once and shared by all the instances of the annotator, see
+ * {@link CybozuLanguageDetectionService}.
  * 
  * @author Marco Basaldella
  * @see <a href="https://code.google.com/p/language-detection/">language-detection</a>
@@ -42,21 +40,119 @@ import org.apache.commons.io.IOUtils;
 public class CybozuLanguageDetectorAnnotator implements Annotator {
 
     /**
-     * The Cybozu detector object. The field is marked static to be optimized
-     * for re-use, so that subsequent calls of annotate() don't have to reload
-     * definitions every time, even for different instances of the annotator..
+     * The profiles of the languages that the detector can choose. An empty
+     * set means that all the available languages are candidates.
      */
-    private static Detector detector = null;
+    private Set<String> candidateLanguages = new HashSet<>();
     
     /**
-     * The language profiles of the detector.
+     * If true, the candidate languages are the ones for which the 
+     * {@link it.uniud.ailab.dcore.Distiller} has a pipeline.
      */
-    private final String profiles[] = new String[] { "af","ar","bg","bn","cs","da","de","el",
-        "en","es","et","fa","fi","fr","gu","he","hi","hr","hu","id","it","ja",
-        "kn","ko","lt","lv","mk","ml","mr","ne","nl","no","pa","pl","pt","ro",
-        "ru","sk","sl","so","sq","sv","sw","ta","te","th","tl","tr","uk","ur",
-        "vi","zh-cn","zh-tw"};
+    private boolean restrictToPipelines = false;
+
+    /**
+     * The number of characters of the document used for the detection. A 
+     * value lower or equal than zero means that the whole document is used.
+     */
+    private int sampleLength = 0;
+
+    /**
+     * The number of windows in which the sample is taken.
+     */
+    private int samples = 3;
+
+    /**
+     * The probability of the most probable language that stops the detection
+     * before the whole sample has been analyzed.
+     */
+    private double confidence = 0.99;
+
+    /**
+     * Sets the languages that the detector can choose, e.g. "en" or "it".
+     * If the list is empty, all the languages supported by the library are
+     * candidates. Restricting the candidates reduces the time needed to load
+     * the profiles and to perform the detection.
+     * 
+     * @param languages the candidate languages.
+     */
+    public void setLanguages(List<String> languages) {
+        candidateLanguages = new HashSet<>(languages);
+    }
+    
+    /**
+     * Sets the languages that the detector can choose, using the Cybozu 
+     * profiles that correspond to the given locales.
+     * 
+     * @param locales the candidate locales.
+     */
+    public void setCandidateLocales(Collection<Locale> locales) {
+        Set<String> languages = new HashSet<>();
+        for (Locale l : locales) {
+            String profile = CybozuLanguageDetectionService.getProfileName(l);
+            if (profile != null) {
+                languages.add(profile);
+            }
+        }
+        candidateLanguages = languages;
+    }
     
+    /**
+     * Sets whether the candidate languages should be the ones for which the
+     * {@link it.uniud.ailab.dcore.Distiller} has a pipeline. Default is false,
+     * so that documents in unsupported languages are reported as such.
+     * 
+     * @param restrictToPipelines true to detect only the languages for 
+     * which there is a pipeline.
+     */
+    public void setRestrictToPipelines(boolean restrictToPipelines) {
+        this.restrictToPipelines = restrictToPipelines;
+    }
+
+    /**
+     * Tells whether the candidate languages should be the ones for which the
+     * {@link it.uniud.ailab.dcore.Distiller} has a pipeline.
+     * 
+     * @return true if the detector considers only the languages for which 
+     * there is a pipeline.
+     */
+    public boolean isRestrictedToPipelines() {
+        return restrictToPipelines;
+    }
+
+    /**
+     * Sets the number of characters used for the detection. If set, the
+     * language is detected looking only at some windows of the document,
+     * evenly spread over its text, instead of at the whole text; this makes
+     * the detection time independent of the length of the document. A value
+     * lower or equal than zero (the default) disables sampling.
+     * 
+     * @param sampleLength the number of characters to analyze.
+     */
+    public void setSampleLength(int sampleLength) {
+        this.sampleLength = sampleLength;
+    }
+
+    /**
+     * Sets the number of windows in which the sample is taken. The first
+     * window is always at the beginning of the document. Default is 3.
+     * 
+     * @param samples the number of windows.
+     */
+    public void setSamples(int samples) {
+        this.samples = samples;
+    }
+
+    /**
+     * Sets the probability of the most probable language that stops the 
+     * detection of a sampled document as soon as it is reached, without 
+     * looking at the following windows. Default is 0.99.
+     * 
+     * @param confidence the confidence threshold.
+     */
+    public void setConfidence(double confidence) {
+        this.confidence = confidence;
+    }
 
     /**
      * Wraps the Cybozu lybrary and detects the language over a specified
@@ -67,29 +163,8 @@ public class CybozuLanguageDetectorAnnotator implements Annotator {
      * @throws LangDetectException when the model can't be loaded
      */
     public String detect(String text) throws LangDetectException {
-        
-        
-        if (detector == null) {
-            // retrieve the language database embedded in the jar
-            // load the models inside an array then put them in
-            // the library
-
-            String[] models = new String[profiles.length];
-            for (int i = 0; i < profiles.length; i++) {
-                InputStream s = getClass().getClassLoader().
-                        getResourceAsStream("cybozu/" + profiles[i]);
-                try {
-                    models[i] = IOUtils.toString(s, "UTF-8");
-                } catch (IOException ex) {
-                    Logger.getLogger(CybozuLanguageDetectorAnnotator.class.getName()).log(
-                            Level.SEVERE, "Cannot load cybozu model " + profiles[i], ex);
-                }
-            }
-            DetectorFactory.loadProfile(Arrays.asList(models));
-        }
-        detector = DetectorFactory.create();
-        detector.append(text);
-        return detector.detect();
+        return CybozuLanguageDetectionService.detect(text, candidateLanguages,
+                sampleLength, samples, confidence);
     }
 
     /**
@@ -33,11 +33,13 @@ import opennlp.tools.sentdetect.SentenceModel;
 import opennlp.tools.tokenize.Tokenizer;
 import opennlp.tools.tokenize.TokenizerME;
 import opennlp.tools.tokenize.TokenizerModel;
+import opennlp.tools.util.Span;
 import org.apache.commons.io.FileUtils;
 import it.uniud.ailab.dcore.annotation.AnnotationException;
 import it.uniud.ailab.dcore.annotation.Annotator;
 import it.uniud.ailab.dcore.Blackboard;
 import it.uniud.ailab.dcore.persistence.DocumentComponent;
+import it.uniud.ailab.dcore.persistence.CompactSentence;
 import it.uniud.ailab.dcore.persistence.DocumentComposite;
 import it.uniud.ailab.dcore.persistence.Sentence;
 import it.uniud.ailab.dcore.persistence.Token;
@@ -76,6 +78,12 @@ public class OpenNlpBootstrapperAnnotator implements Annotator {
      */
     private int sentenceCounter = 1;
 
+    /**
+     * If true, the sentences store their tokens in the compact column-wise
+     * representation of {@link CompactSentence}.
+     */
+    private boolean compactSentences = false;
+
     /**
      * Variable that contains the database paths of the models for the various
      * OpenNLP component. The name of the entries should match the naming
@@ -125,13 +133,17 @@ public class OpenNlpBootstrapperAnnotator implements Annotator {
         for (String sentenceString : sentences) {
 
             // the distilled sentence object
-            Sentence sentence = new Sentence(sentenceString,
-                    "" + sentenceCounter++);
+            Sentence sentence = compactSentences
+                    ? new CompactSentence(sentenceString, null,
+                            "" + sentenceCounter, blackboard.getSymbolTable())
+                    : new Sentence(sentenceString, "" + sentenceCounter);
+            sentenceCounter++;
             sentence.setLanguage(component.getLanguage());
 
             // Tokenize the sentence
             Tokenizer tokenizer = new TokenizerME(tokenModel);
-            String tokens[] = tokenizer.tokenize(sentenceString);
+            Span spans[] = tokenizer.tokenizePos(sentenceString);
+            String tokens[] = Span.spansToStrings(spans, sentenceString);
 
             // POS tag the tokens
             POSTaggerME tagger = new POSTaggerME(POSModel);
@@ -140,17 +152,22 @@ public class OpenNlpBootstrapperAnnotator implements Annotator {
             // put the features detected by OpenNLP in the distiller's
             // sentence
             for (int i = 0; i < tokens.length; i++) {
-                Token t = new Token(tokens[i]);
+                Token t = new Token(tokens[i], blackboard.getSymbolTable());
                 t.setPoS(tags[i]);
+                t.setOffsets(spans[i].getStart(), spans[i].getEnd());
                 sentence.addToken(t);
 
             } // for 
+            
+            if (compactSentences) {
+                ((CompactSentence) sentence).trimToSize();
+            }
             ((DocumentComposite) component).addComponent(sentence);
 
         } // for (String sentenceString : sentences)
     } // annotate
 
-    private static void setup() {
+    private static synchronized void setup() {
         if (databasePaths.entrySet().isEmpty()) {
             setDefaultModels();
         }
@@ -159,6 +176,17 @@ public class OpenNlpBootstrapperAnnotator implements Annotator {
         prepareModels();
     }
 
+    /**
+     * Sets the representation of the sentences. If set to true, sentences
+     * store their tokens column-wise (see {@link CompactSentence}), which
+     * takes much less memory on large documents. Default is false.
+     *
+     * @param compactSentences true to create compact sentences.
+     */
+    public void setCompactSentences(boolean compactSentences) {
+        this.compactSentences = compactSentences;
+    }
+
     // <editor-fold desc="model loading">
     /**
      * Public property to override the default models; the keys should be in the
@@ -274,7 +302,7 @@ public class OpenNlpBootstrapperAnnotator implements Annotator {
      * @param modelId the model to retrieve
      * @return the loaded model
      */
-    public static SentenceModel getSentenceModel(String modelId) {
+    public static synchronized SentenceModel getSentenceModel(String modelId) {
 
         // if the model has not already been loaded, cache it
         if (!sentenceModelsCache.containsKey(modelId)) {
@@ -326,7 +354,7 @@ public class OpenNlpBootstrapperAnnotator implements Annotator {
      * @param modelId the model to retrieve
      * @return the loaded model
      */
-    public static TokenizerModel getTokenizerModel(String modelId) {
+    public static synchronized TokenizerModel getTokenizerModel(String modelId) {
 
         // if the model has not already been loaded, cache it
         if (!tokenizerModelsCache.containsKey(modelId)) {
@@ -378,7 +406,7 @@ public class OpenNlpBootstrapperAnnotator implements Annotator {
      * @param modelId the model to retrieve
      * @return the loaded model
      */
-    public static POSModel getPOSTaggerModel(String modelId) {
+    public static synchronized POSModel getPOSTaggerModel(String modelId) {
 
         // if the model has not already been loaded, cache it
         if (!posModelsCache.containsKey(modelId)) {
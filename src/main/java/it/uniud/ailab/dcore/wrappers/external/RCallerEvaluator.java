@@ -94,6 +94,16 @@ public class RCallerEvaluator implements Annotator {
         this.requires = requires;
     }
 
+    /**
+     * The score uses features computed on the whole document.
+     *
+     * @return true.
+     */
+    @Override
+    public boolean isDocumentLevel() {
+        return true;
+    }
+
     @Override
     public void annotate(Blackboard blackboard, DocumentComponent component) {
 
@@ -20,15 +20,20 @@ package it.uniud.ailab.dcore.wrappers.external;
 
 import edu.stanford.nlp.dcoref.CorefChain;
 import edu.stanford.nlp.dcoref.CorefCoreAnnotations;
+import edu.stanford.nlp.ling.CoreAnnotations.CharacterOffsetBeginAnnotation;
 import edu.stanford.nlp.ling.CoreAnnotations.NamedEntityTagAnnotation;
 import edu.stanford.nlp.ling.CoreAnnotations.SentencesAnnotation;
 import edu.stanford.nlp.ling.CoreAnnotations.TokensAnnotation;
 import edu.stanford.nlp.ling.CoreLabel;
 import edu.stanford.nlp.pipeline.Annotation;
 import edu.stanford.nlp.pipeline.StanfordCoreNLP;
+import edu.stanford.nlp.semgraph.SemanticGraph;
+import edu.stanford.nlp.semgraph.SemanticGraphCoreAnnotations;
+import edu.stanford.nlp.semgraph.SemanticGraphEdge;
 import edu.stanford.nlp.trees.Tree;
 import edu.stanford.nlp.trees.TreeCoreAnnotations;
 import edu.stanford.nlp.util.CoreMap;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
 import java.util.Properties;
@@ -38,15 +43,22 @@ import it.uniud.ailab.dcore.annotation.DefaultAnnotations;
 import it.uniud.ailab.dcore.annotation.annotations.FeatureAnnotation;
 import it.uniud.ailab.dcore.annotation.annotations.NERAnnotation;
 import it.uniud.ailab.dcore.persistence.DocumentComponent;
+import it.uniud.ailab.dcore.persistence.CompactSentence;
 import it.uniud.ailab.dcore.persistence.DocumentComposite;
+import it.uniud.ailab.dcore.persistence.Gram;
 import it.uniud.ailab.dcore.persistence.Mention;
 import it.uniud.ailab.dcore.persistence.Sentence;
 import it.uniud.ailab.dcore.persistence.Token;
+import it.uniud.ailab.dcore.utils.Pair;
+import it.uniud.ailab.dcore.utils.SymbolTable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * A bootstrapper annotator for the English language developed using the
@@ -54,17 +66,51 @@ import java.util.Set;
  * and performs PoS tagging and Named Entity Recognition togethere with parsing
  * to detect coreferences in the document. This annotator supports only the
  * English language.
+ * 
+ * Parsing and coreference resolution are by far the most expensive steps of
+ * the Stanford pipeline, so the annotator runs them only when a following
+ * stage of the pipeline requires the annotations they produce, i.e. 
+ * {@link it.uniud.ailab.dcore.annotation.DefaultAnnotations#PHRASES_COUNT},
+ * {@link it.uniud.ailab.dcore.annotation.DefaultAnnotations#IS_NER} and
+ * the {@link it.uniud.ailab.dcore.persistence.Mention} grams. If the 
+ * annotator is run outside a pipeline that declares its requirements, all
+ * the annotations are produced.
  *
  * @author Giorgia Chiaradia
  */
 public class StanfordBootstrapperAnnotator implements Annotator {
 
     /**
-     * The Stanford NLP pipeline. The field is marked static to be optimized for
-     * re-use, so that subsequent calls of annotate() don't have to reload
-     * definitions every time, even for different instances of the annotator.
+     * The Stanford NLP pipelines, indexed by the list of annotators they run.
+     * The field is marked static to be optimized for re-use, so that 
+     * subsequent calls of annotate() don't have to reload definitions every 
+     * time, even for different instances of the annotator.
      */
-    private static StanfordCoreNLP pipeline = null;
+    private static final Map<String, StanfordCoreNLP> pipelinesCache
+            = new HashMap<>();
+
+    /**
+     * The dependency relations that introduce a new clause, used to count the
+     * phrases of a sentence when the dependency parser is used instead of the
+     * constituency parser.
+     */
+    private static final Set<String> CLAUSAL_RELATIONS = new HashSet<>(
+            Arrays.asList("ccomp", "xcomp", "advcl", "csubj", "csubjpass",
+                    "rcmod", "parataxis"));
+
+    /**
+     * The annotations required by the stages that follow the annotator. A
+     * null value means that the requirements are unknown, so everything
+     * should be produced.
+     */
+    private Set<String> requiredAnnotations = null;
+
+    /**
+     * If true, the phrases are counted using the (faster) neural dependency
+     * parser instead of the constituency parser, when the latter is not
+     * needed by coreference resolution.
+     */
+    private boolean useDependencyParser = false;
 
     /**
      * A counter that keeps track of the number of sentences identified by the
@@ -72,48 +118,421 @@ public class StanfordBootstrapperAnnotator implements Annotator {
      */
     private int sentenceCounter = 0;
 
+    /**
+     * A counter that keeps track of the number of phrases found in the 
+     * document.
+     */
+    private int phraseCounter = 0;
+
+    /**
+     * The coreference mentions added to the blackboard while processing the
+     * current document, indexed by their span in the document, so that the
+     * chains found again in the overlap of two chunks are added only once.
+     */
+    private Map<Long, Mention> addedMentions = new HashMap<>();
+
+    /**
+     * The separator between paragraphs, i.e. an empty line.
+     */
+    private static final Pattern PARAGRAPH_SEPARATOR
+            = Pattern.compile("\\n\\s*\\n");
+
+    /**
+     * The maximum length, in characters, of the chunks in which long 
+     * documents are split before being processed. A value lower or equal 
+     * than zero means that the documents are never split.
+     */
+    private int chunkSize = 0;
+
+    /**
+     * The number of paragraphs of the previous chunk that are processed 
+     * again as context of the following one.
+     */
+    private int chunkOverlap = 1;
+
+    /**
+     * The number of chunks processed at the same time.
+     */
+    private int chunkThreads = 1;
+
+    /**
+     * If true, the sentences store their tokens in the compact column-wise
+     * representation of {@link CompactSentence}.
+     */
+    private boolean compactSentences = false;
+
     /**
      * Identifier for the Coreference annotation.
      */
     public static final String COREFERENCE = "Coreference";
 
     /**
-     * Annotate the document by splitting the document, tokenizing it,
-     * performing PoS tagging and Named Entity Recognition using the Stanford
-     * Core NLP tools.
+     * Sets the phrase counting strategy. If set to true, phrases are counted
+     * using the dependency parser, which is much faster than the constituency 
+     * parser but gives an approximated count; note that the constituency 
+     * parser is used anyway when coreference resolution is required. Default
+     * is false.
      *
-     * @param component the component to annotate.
+     * @param useDependencyParser true to count phrases using the dependency
+     * parser.
+     */
+    public void setUseDependencyParser(boolean useDependencyParser) {
+        this.useDependencyParser = useDependencyParser;
+    }
+
+    /**
+     * Sets the maximum length of the chunks in which long documents are
+     * split. Parsing and coreference resolution use an amount of memory 
+     * which grows more than linearly with the length of the text; splitting
+     * the document at paragraph boundaries bounds the memory needed by 
+     * the annotator to the one needed to process chunkThreads chunks.
+     * A value lower or equal than zero (the default) disables chunking.
+     *
+     * @param chunkSize the maximum length of a chunk, in characters.
+     */
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Sets the number of paragraphs of each chunk that are processed again
+     * as the context of the following chunk, so that coreferences that 
+     * cross the chunks boundaries can be detected. Default is 1.
+     *
+     * @param chunkOverlap the number of overlapping paragraphs.
+     */
+    public void setChunkOverlap(int chunkOverlap) {
+        this.chunkOverlap = Math.max(0, chunkOverlap);
+    }
+
+    /**
+     * Sets the number of chunks processed in parallel. Default is 1.
+     *
+     * @param chunkThreads the number of chunks processed in parallel.
+     */
+    public void setChunkThreads(int chunkThreads) {
+        this.chunkThreads = Math.max(1, chunkThreads);
+    }
+
+    /**
+     * Sets the representation of the sentences. If set to true, sentences
+     * store their tokens column-wise (see {@link CompactSentence}), which
+     * takes much less memory on large documents. Default is false.
+     *
+     * @param compactSentences true to create compact sentences.
+     */
+    public void setCompactSentences(boolean compactSentences) {
+        this.compactSentences = compactSentences;
+    }
+
+    /**
+     * Stores the annotations required by the following stages, so that only
+     * the needed Stanford annotators will be run.
+     *
+     * @param downstreamRequirements the annotations required by the following
+     * stages.
      */
     @Override
-    public void annotate(Blackboard blackboard, DocumentComponent component) {
+    public void prepare(Set<String> downstreamRequirements) {
+        this.requiredAnnotations = downstreamRequirements;
+    }
 
+    /**
+     * Checks if an annotation should be produced.
+     *
+     * @param annotation the identifier of the annotation
+     * @return true if the annotation is required or if the requirements are
+     * unknown; false otherwise.
+     */
+    private boolean isRequired(String annotation) {
+        return requiredAnnotations == null
+                || requiredAnnotations.contains(annotation);
+    }
+
+    /**
+     * Builds the list of the Stanford annotators needed to produce the 
+     * required annotations.
+     *
+     * @return the annotators in the format expected by CoreNLP.
+     */
+    private String getStanfordAnnotators() {
+        boolean coref = isRequired(Mention.MENTION);
+        boolean phrases = isRequired(DefaultAnnotations.PHRASES_COUNT);
+        boolean ner = coref || isRequired(DefaultAnnotations.IS_NER);
+        boolean parse = coref || (phrases && !useDependencyParser);
+        
+        StringBuilder annotators 
+                = new StringBuilder("tokenize, ssplit, pos, lemma");
+        if (ner) {
+            annotators.append(", ner");
+        }
+        if (parse) {
+            annotators.append(", parse");
+        } else if (phrases) {
+            annotators.append(", depparse");
+        }
+        if (coref) {
+            annotators.append(", dcoref");
+        }
+        return annotators.toString();
+    }
+
+    /**
+     * Gets the Stanford pipeline that runs the specified annotators, creating
+     * it if it has not already been loaded before.
+     *
+     * @param annotators the annotators to run
+     * @return the Stanford pipeline.
+     */
+    private static synchronized StanfordCoreNLP getPipeline(String annotators) {
+        StanfordCoreNLP pipeline = pipelinesCache.get(annotators);
         if (pipeline == null) {
-            // creates a StanfordCoreNLP object, with POS tagging, lemmatization, 
-            //NER, parsing, and coreference resolution 
             Properties props = new Properties();
-            props.put("annotators", "tokenize, ssplit, pos, parse, lemma, ner, dcoref");
+            props.put("annotators", annotators);
             pipeline = new StanfordCoreNLP(props);
+            pipelinesCache.put(annotators, pipeline);
+        }
+        return pipeline;
+    }
 
+    /**
+     * Counts the phrases of a sentence using its dependency graph, as the
+     * number of roots plus the number of dependencies that introduce a
+     * clause.
+     *
+     * @param graph the dependency graph of the sentence.
+     * @return the number of phrases of the sentence.
+     */
+    private static int countPhrases(SemanticGraph graph) {
+        int count = graph.getRoots().size();
+        for (SemanticGraphEdge edge : graph.edgeIterable()) {
+            String relation = edge.getRelation().getShortName();
+            if (CLAUSAL_RELATIONS.contains(relation)
+                    || (relation.equals("conj") 
+                    && edge.getDependent().tag() != null
+                    && edge.getDependent().tag().startsWith("VB"))) {
+                count++;
+            }
         }
+        return count;
+    }
+
+    /**
+     * Annotate the document by splitting the document, tokenizing it,
+     * performing PoS tagging and Named Entity Recognition using the Stanford
+     * Core NLP tools. If a chunk size has been set and the document is longer
+     * than it, the document is processed in chunks.
+     *
+     * @param component the component to annotate.
+     */
+    @Override
+    public void annotate(Blackboard blackboard, DocumentComponent component) {
+
+        // get a StanfordCoreNLP object, with POS tagging, lemmatization 
+        // and, if needed, NER, parsing, and coreference resolution 
+        StanfordCoreNLP pipeline = getPipeline(getStanfordAnnotators());
 
         // read some text in the text variable
         String text = component.getText();
 
-        // create an empty Annotation just with the given text
-        Annotation document = new Annotation(text);
+        phraseCounter = 0;
+        addedMentions = new HashMap<>();
+
+        if (chunkSize <= 0 || text.length() <= chunkSize) {
+            // create an empty Annotation just with the given text
+            Annotation document = new Annotation(text);
+
+            // run all Annotators on this text
+            pipeline.annotate(document);
+
+            addToBlackboard(blackboard, component, document, 0, 0);
+            return;
+        }
+
+        // Long document: process the chunks in batches of chunkThreads 
+        // elements, so that at most chunkThreads CoreNLP annotations are 
+        // kept in memory at the same time. The results are stitched in 
+        // document order, so that the sentences get their global identifier.
+        List<Pair<String, Integer>> chunks = splitInChunks(text);
+
+        // the position in the text of the first chunk of the batch that has
+        // not been processed yet, excluding its overlapping prefix
+        int position = 0;
+
+        for (int i = 0; i < chunks.size(); i += chunkThreads) {
+
+            List<Annotation> batch = new ArrayList<>();
+            List<Integer> overlaps = new ArrayList<>();
+            for (int j = i; j < Math.min(i + chunkThreads, chunks.size()); j++) {
+                batch.add(new Annotation(chunks.get(j).getLeft()));
+                overlaps.add(chunks.get(j).getRight());
+            }
+
+            if (batch.size() > 1) {
+                pipeline.annotate(batch, batch.size());
+            } else {
+                pipeline.annotate(batch.get(0));
+            }
+
+            for (int j = 0; j < batch.size(); j++) {
+                addToBlackboard(blackboard, component,
+                        batch.get(j), overlaps.get(j),
+                        position - overlaps.get(j));
+                position += chunks.get(i + j).getLeft().length() 
+                        - overlaps.get(j);
+            }
+        }
+    }
+
+    /**
+     * Splits a text in chunks of at most chunkSize characters, breaking it 
+     * at paragraph boundaries. Every chunk is prefixed with the last
+     * chunkOverlap paragraphs of the previous chunk, so that coreferences
+     * that cross the chunk boundary can be resolved; paragraphs longer than
+     * chunkSize are broken at the last sentence end (or whitespace) before
+     * the limit.
+     *
+     * @param text the text to split.
+     * @return the chunks, paired with the length of their overlapping prefix.
+     */
+    private List<Pair<String, Integer>> splitInChunks(String text) {
+
+        // break the text in pieces no longer than chunkSize characters,
+        // keeping the paragraph separators at the end of the pieces
+        List<String> pieces = new ArrayList<>();
+        Matcher m = PARAGRAPH_SEPARATOR.matcher(text);
+        int start = 0;
+        while (start < text.length()) {
+            int end = m.find(start) ? m.end() : text.length();
+            while (end - start > chunkSize) {
+                // the piece includes the character at the cut, so it
+                // must be searched in the first chunkSize characters
+                int cut = text.lastIndexOf(". ", start + chunkSize - 1);
+                if (cut <= start) {
+                    cut = text.lastIndexOf(' ', start + chunkSize - 1);
+                }
+                cut = cut <= start ? start + chunkSize : cut + 1;
+                pieces.add(text.substring(start, cut));
+                start = cut;
+            }
+            if (end > start) {
+                pieces.add(text.substring(start, end));
+            }
+            start = end;
+        }
+
+        // group the pieces in chunks
+        List<Pair<String, Integer>> chunks = new ArrayList<>();
+        int first = 0;
+        while (first < pieces.size()) {
+            int last = first;
+            int length = pieces.get(first).length();
+            while (last + 1 < pieces.size()
+                    && length + pieces.get(last + 1).length() <= chunkSize) {
+                length += pieces.get(++last).length();
+            }
+
+            StringBuilder chunk = new StringBuilder();
+            for (int i = Math.max(0, first - chunkOverlap); i < first; i++) {
+                chunk.append(pieces.get(i));
+            }
+            int overlap = chunk.length();
+            for (int i = first; i <= last; i++) {
+                chunk.append(pieces.get(i));
+            }
+
+            chunks.add(new Pair<>(chunk.toString(), overlap));
+            first = last + 1;
+        }
+
+        return chunks;
+    }
 
-        // run all Annotators on this text
-        pipeline.annotate(document);
+    /**
+     * Gets the span of a coreference mention in the document.
+     *
+     * @param sentences the sentences of the annotated text.
+     * @param mention the mention.
+     * @param offset the position of the annotated text in the document.
+     * @return the span of the mention, with the begin position in the upper 
+     * 32 bits and the end position in the lower 32 bits.
+     */
+    private static long getSpan(List<CoreMap> sentences, 
+            CorefChain.CorefMention mention, int offset) {
+        List<CoreLabel> tokens = sentences
+                .get(mention.sentNum - 1).get(TokensAnnotation.class);
+        long begin = tokens.get(mention.startIndex - 1).beginPosition() + offset;
+        long end = tokens.get(mention.endIndex - 2).endPosition() + offset;
+        return (begin << 32) | end;
+    }
+
+    /**
+     * Gets the tokens of a coreference mention.
+     *
+     * @param sentences the sentences of the annotated text.
+     * @param mention the mention.
+     * @param symbols the symbol table of the tokens.
+     * @return the tokens that compose the mention.
+     */
+    private static List<Token> getTokens(List<CoreMap> sentences,
+            CorefChain.CorefMention mention, SymbolTable symbols) {
+        List<CoreLabel> tokens = sentences
+                .get(mention.sentNum - 1).get(TokensAnnotation.class);
+
+        List<Token> mentionTokens = new ArrayList<>();
+        for (int i = mention.startIndex - 1; i < mention.endIndex - 1; i++) {
+            CoreLabel current = tokens.get(i);
+            //set token features 
+            Token t = new Token(current.word(), symbols);
+            t.setPoS(current.tag());
+            t.setLemma(current.lemma());
+            mentionTokens.add(t);
+        }
+        return mentionTokens;
+    }
+
+    /**
+     * Copies the sentences, tokens and coreference mentions found by CoreNLP
+     * in the blackboard. The sentences that begin in the first overlap 
+     * characters of the annotated text belong to a previous chunk, so they
+     * are skipped, together with the coreference chains that lie entirely
+     * inside them. The chains that lie partly inside them have already been
+     * added from the previous chunk, so only their new mentions are added,
+     * as references of the mention already in the blackboard.
+     *
+     * @param blackboard the blackboard to fill.
+     * @param component the component to fill.
+     * @param document the text annotated by CoreNLP.
+     * @param overlap the length of the prefix of the text that has already
+     * been added to the blackboard.
+     * @param offset the position of the annotated text in the document.
+     */
+    private void addToBlackboard(Blackboard blackboard,
+            DocumentComponent component, Annotation document, int overlap,
+            int offset) {
+
+        // these are all the sentences in this document
+        // a CoreMap is essentially a Map that uses class objects as keys and 
+        //has values with custom types
+        List<CoreMap> sentences = document.get(SentencesAnnotation.class);
+
+        // find the first sentence that has not been already added
+        int firstSentence = 0;
+        while (firstSentence < sentences.size()
+                && sentences.get(firstSentence).get(
+                        CharacterOffsetBeginAnnotation.class) < overlap) {
+            firstSentence++;
+        }
 
         //get the graph for coreference resolution
         Map<Integer, CorefChain> graph
                 = document.get(CorefCoreAnnotations.CorefChainAnnotation.class);
 
-        //prepare the map for coreference graph of document
-        Map<String, Collection<Set<CorefChain.CorefMention>>> coreferenceGraph
-                = new HashMap<>();
+        // the graph is missing if coreference resolution has not been run
+        Collection<CorefChain> corefChains = graph == null
+                ? new ArrayList<>() : graph.values();
 
-        for (CorefChain corefChain : graph.values()) {
+        for (CorefChain corefChain : corefChains) {
 
             //get the representative mention, that is the word recall in other sentences
             CorefChain.CorefMention cm = corefChain.getRepresentativeMention();
@@ -123,25 +542,49 @@ public class StanfordBootstrapperAnnotator implements Annotator {
                 continue;
             }
 
-            //get the stemmed form of the references, so the comparison with 
-            //grams will be easier
-            List<CoreLabel> tks = document.get(SentencesAnnotation.class)
-                    .get(cm.sentNum - 1).get(TokensAnnotation.class);
-            //list of tokens which compose the anaphor
+            //eliminate the chains already found in the previous chunk
+            boolean alreadyFound = true;
+            for (CorefChain.CorefMention m : corefChain.getMentionsInTextualOrder()) {
+                alreadyFound = alreadyFound && m.sentNum - 1 < firstSentence;
+            }
+            if (alreadyFound) {
+                continue;
+            }
 
-            List<Token> anaphorsTokens = new ArrayList<>();
-            for (int i = cm.startIndex - 1; i < cm.endIndex - 1; i++) {
-                CoreLabel current = tks.get(i);
-                Token t = new Token(current.word());
-                t.setPoS(current.tag());
-                t.setLemma(current.lemma());
-                anaphorsTokens.add(t);
+            //find the mention that already contains the chain, if the chain
+            //has already been found in the previous chunk
+            Mention mention = null;
+            for (CorefChain.CorefMention m : corefChain.getMentionsInTextualOrder()) {
+                mention = addedMentions.get(getSpan(sentences, m, offset));
+                if (mention != null) {
+                    break;
+                }
             }
 
-            //the mention n-gram which is formed by the anaphor and a 
-            //list of references
-            Mention mention
-                    = new Mention(cm.mentionSpan, anaphorsTokens, cm.mentionSpan);
+            if (mention == null) {
+                //the mention n-gram which is formed by the anaphor and a 
+                //list of references; the tokens are in the stemmed form, 
+                //so the comparison with grams will be easier
+                mention = new Mention(cm.mentionSpan, 
+                        getTokens(sentences, cm, blackboard.getSymbolTable()), cm.mentionSpan);
+                
+                //assign to the document a new corenference obj
+                //containing the anaphor and its mentions; then, keep
+                //working on the copy stored in the blackboard. If another
+                //chain has the same anaphor, only its surface is added, and
+                //its references are not.
+                Map<String, Gram> mentions 
+                        = blackboard.getGrams().get(Mention.MENTION);
+                boolean known = mentions != null 
+                        && mentions.containsKey(mention.getIdentifier());
+                blackboard.addGram(mention);
+                if (known) {
+                    continue;
+                }
+                mention = (Mention) blackboard.getGrams()
+                        .get(Mention.MENTION).get(mention.getIdentifier());
+            }
+            addedMentions.putIfAbsent(getSpan(sentences, cm, offset), mention);
 
             //get map of the references to the corefchain obj
             Collection<Set<CorefChain.CorefMention>> mentionMap
@@ -149,48 +592,35 @@ public class StanfordBootstrapperAnnotator implements Annotator {
             for (Set<CorefChain.CorefMention> mentions : mentionMap) {
 
                 for (CorefChain.CorefMention reference : mentions) {
-                    //eliminate self-references
-                    if (reference.mentionSpan.equalsIgnoreCase(cm.mentionSpan)) {
+                    //eliminate self-references and the references
+                    //already added
+                    if (reference.mentionSpan.equalsIgnoreCase(cm.mentionSpan)
+                            || addedMentions.putIfAbsent(getSpan(
+                                    sentences, reference, offset), 
+                                    mention) != null) {
                         continue;
                     }
-                    List<CoreLabel> tokens = document.get(SentencesAnnotation.class)
-                            .get(reference.sentNum - 1).get(TokensAnnotation.class);
-
-                    //list of tokens which compose the mention
-                    List<Token> mentionTokens = new ArrayList<>();
-                    for (int i = reference.startIndex - 1; i < reference.endIndex - 1; i++) {
-                        CoreLabel current = tokens.get(i);
-                        //set token features 
-                        Token t = new Token(current.word());
-                        t.setPoS(current.tag());
-                        t.setLemma(current.lemma());
-                        mentionTokens.add(t);
-                    }
                     //add to mention a new reference
                     mention.addReference(
                             reference.mentionSpan,
-                            mentionTokens,
+                            getTokens(sentences, reference,
+                                    blackboard.getSymbolTable()),
                             reference.mentionType.toString());
                 }
             }
-
-            //assign to the document a new corenference obj
-            //containing the anaphor and its mentions 
-            blackboard.addGram(mention);
         }
 
-        // these are all the sentences in this document
-        // a CoreMap is essentially a Map that uses class objects as keys and 
-        //has values with custom types
-        List<CoreMap> sentences = document.get(SentencesAnnotation.class);
-
-        //A counter that keeps track of the number of phrases in a sentences
-        int phraseCounter = 0;
+        for (CoreMap stanfordSentence 
+                : sentences.subList(firstSentence, sentences.size())) {
 
-        for (CoreMap stanfordSentence : sentences) {
+            Sentence distilledSentence = compactSentences
+                    ? new CompactSentence(stanfordSentence.toString(), null,
+                            "" + sentenceCounter, blackboard.getSymbolTable())
+                    : new Sentence(stanfordSentence.toString(), "" + sentenceCounter);
+            sentenceCounter++;
 
-            Sentence distilledSentence
-                    = new Sentence(stanfordSentence.toString(), "" + sentenceCounter++);
+            int sentenceBegin = stanfordSentence.get(
+                    CharacterOffsetBeginAnnotation.class);
 
             distilledSentence.setLanguage(Locale.ENGLISH);
 
@@ -199,18 +629,28 @@ public class StanfordBootstrapperAnnotator implements Annotator {
             //is constitute by a group of clauses which can be the principal (main clauses) or not
             //(coordinate and subordinate). We use ROOT sentences as a starting point to find out all
             //the phrases present in the sentences themselves, checking out for the tag "S".
+            //If the constituency parser has not been run, we approximate the
+            //count using the clausal relations of the dependency graph.
             Tree sentenceTree = stanfordSentence.get(TreeCoreAnnotations.TreeAnnotation.class);
+            SemanticGraph dependencies = stanfordSentence.get(
+                    SemanticGraphCoreAnnotations.BasicDependenciesAnnotation.class);
 
-            for (Tree sub : sentenceTree.subTreeList()) {
-                if (sub.label().value().equals("S")) {
-                    phraseCounter++;
+            if (sentenceTree != null) {
+                for (Tree sub : sentenceTree.subTreeList()) {
+                    if (sub.label().value().equals("S")) {
+                        phraseCounter++;
+                    }
                 }
+            } else if (dependencies != null) {
+                phraseCounter += countPhrases(dependencies);
             }
 
             //annotate the sentence with a new feature counting all the phrases
             //cointained in the sentence    
-            distilledSentence.addAnnotation(new FeatureAnnotation(
-                    DefaultAnnotations.PHRASES_COUNT, phraseCounter));
+            if (sentenceTree != null || dependencies != null) {
+                distilledSentence.addAnnotation(new FeatureAnnotation(
+                        DefaultAnnotations.PHRASES_COUNT, phraseCounter));
+            }
 
             // traversing the words in the current sentence
             // for each token in the text, we create a new token annotate it 
@@ -218,7 +658,12 @@ public class StanfordBootstrapperAnnotator implements Annotator {
             for (CoreLabel token : stanfordSentence.get(TokensAnnotation.class)) {
 
                 // this is the text of the token
-                Token t = new Token(token.originalText());
+                Token t = new Token(token.originalText(),
+                        blackboard.getSymbolTable());
+
+                // this is the position of the token in the sentence
+                t.setOffsets(token.beginPosition() - sentenceBegin,
+                        token.endPosition() - sentenceBegin);
 
                 // this is the POS tag of the token                
                 t.setPoS(token.tag());
@@ -227,7 +672,7 @@ public class StanfordBootstrapperAnnotator implements Annotator {
                 t.setLemma(token.lemma());
 
                 String ner = token.get(NamedEntityTagAnnotation.class);
-                if (!ner.equalsIgnoreCase("O")) {
+                if (ner != null && !ner.equalsIgnoreCase("O")) {
                     t.addAnnotation(new NERAnnotation(DefaultAnnotations.IS_NER,
                             ner));
                 }
@@ -235,6 +680,10 @@ public class StanfordBootstrapperAnnotator implements Annotator {
                 distilledSentence.addToken(t);
             }
 
+            if (compactSentences) {
+                ((CompactSentence) distilledSentence).trimToSize();
+            }
+
             //add the sentence to document
             ((DocumentComposite) component).addComponent(distilledSentence);
         }
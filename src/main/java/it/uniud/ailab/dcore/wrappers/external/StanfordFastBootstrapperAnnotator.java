@@ -18,6 +18,7 @@
  */
 package it.uniud.ailab.dcore.wrappers.external;
 
+import edu.stanford.nlp.ling.CoreAnnotations.CharacterOffsetBeginAnnotation;
 import edu.stanford.nlp.ling.CoreAnnotations.SentencesAnnotation;
 import edu.stanford.nlp.ling.CoreAnnotations.TokensAnnotation;
 import edu.stanford.nlp.ling.CoreLabel;
@@ -30,6 +31,7 @@ import java.util.Properties;
 import it.uniud.ailab.dcore.annotation.Annotator;
 import it.uniud.ailab.dcore.Blackboard;
 import it.uniud.ailab.dcore.persistence.DocumentComponent;
+import it.uniud.ailab.dcore.persistence.CompactSentence;
 import it.uniud.ailab.dcore.persistence.DocumentComposite;
 import it.uniud.ailab.dcore.persistence.Sentence;
 import it.uniud.ailab.dcore.persistence.Token;
@@ -58,11 +60,28 @@ public class StanfordFastBootstrapperAnnotator implements Annotator {
      */
     private int sentenceCounter = 0;
 
+    /**
+     * If true, the sentences store their tokens in the compact column-wise
+     * representation of {@link CompactSentence}.
+     */
+    private boolean compactSentences = false;
+
     /**
      * Identifier for the Coreference annotation.
      */
     public static final String COREFERENCE = "Coreference";
 
+    /**
+     * Sets the representation of the sentences. If set to true, sentences
+     * store their tokens column-wise (see {@link CompactSentence}), which
+     * takes much less memory on large documents. Default is false.
+     *
+     * @param compactSentences true to create compact sentences.
+     */
+    public void setCompactSentences(boolean compactSentences) {
+        this.compactSentences = compactSentences;
+    }
+
     /**
      * Annotate the document by splitting the document, tokenizing it,
      * performing PoS tagging and Named Entity Recognition using the Stanford
@@ -98,8 +117,14 @@ public class StanfordFastBootstrapperAnnotator implements Annotator {
 
         for (CoreMap stanfordSentence : sentences) {
 
-            Sentence distilledSentence
-                    = new Sentence(stanfordSentence.toString(), "" + sentenceCounter++);
+            Sentence distilledSentence = compactSentences
+                    ? new CompactSentence(stanfordSentence.toString(), null,
+                            "" + sentenceCounter, blackboard.getSymbolTable())
+                    : new Sentence(stanfordSentence.toString(), "" + sentenceCounter);
+            sentenceCounter++;
+
+            int sentenceBegin = stanfordSentence.get(
+                    CharacterOffsetBeginAnnotation.class);
 
             distilledSentence.setLanguage(Locale.ENGLISH);
 
@@ -109,7 +134,12 @@ public class StanfordFastBootstrapperAnnotator implements Annotator {
             for (CoreLabel token : stanfordSentence.get(TokensAnnotation.class)) {
 
                 // this is the text of the token
-                Token t = new Token(token.originalText());
+                Token t = new Token(token.originalText(),
+                        blackboard.getSymbolTable());
+
+                // this is the position of the token in the sentence
+                t.setOffsets(token.beginPosition() - sentenceBegin,
+                        token.endPosition() - sentenceBegin);
 
                 // this is the POS tag of the token                
                 t.setPoS(token.tag());
@@ -121,6 +151,10 @@ public class StanfordFastBootstrapperAnnotator implements Annotator {
                 distilledSentence.addToken(t);
             }
 
+            if (compactSentences) {
+                ((CompactSentence) distilledSentence).trimToSize();
+            }
+
             //add the sentence to document
             ((DocumentComposite) component).addComponent(distilledSentence);
         }
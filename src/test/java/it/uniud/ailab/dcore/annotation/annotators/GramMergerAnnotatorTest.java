@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2016 Artificial Intelligence
+ * Laboratory @ University of Udine.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package it.uniud.ailab.dcore.annotation.annotators;
+
+import it.uniud.ailab.dcore.Blackboard;
+import it.uniud.ailab.dcore.persistence.DocumentComposite;
+import it.uniud.ailab.dcore.persistence.Gram;
+import it.uniud.ailab.dcore.persistence.Keyphrase;
+import it.uniud.ailab.dcore.persistence.Sentence;
+import it.uniud.ailab.dcore.persistence.Token;
+import it.uniud.ailab.dcore.utils.DocumentUtils;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Checks that the {@link GramMergerAnnotator} keeps exactly the grams that
+ * were kept by its original implementation, which searched every identifier
+ * in the concatenation of the longer identifiers already kept.
+ *
+ * @author agent
+ */
+public class GramMergerAnnotatorTest {
+
+    private static final String SAMPLE_TEXT
+            = "Software engineering is the application of engineering to the "
+            + "design, development, implementation, testing and maintenance "
+            + "of software in a systematic method. The term software "
+            + "engineering was popularized in 1968, when the NATO Science "
+            + "Committee sponsored two conferences on software engineering. "
+            + "Barry Boehm said that software engineering is the application "
+            + "of science and mathematics. He also argued that software "
+            + "engineers should measure their work. Keyphrase extraction is "
+            + "the task of automatically selecting a small set of phrases "
+            + "that best describe a document. Keyphrase extraction systems "
+            + "usually generate candidate phrases, score them and keep the "
+            + "best ones. The art of keyphrase extraction is to start from "
+            + "good candidates.";
+
+    /**
+     * The original merging algorithm: the identifiers are sorted from the
+     * longest, and an identifier is kept if it is not a substring of the
+     * concatenation of the identifiers kept so far.
+     *
+     * @param identifiers the identifiers of the grams.
+     * @return the identifiers to keep.
+     */
+    private static Set<String> mergeWithOldAlgorithm(List<String> identifiers) {
+        List<String> ids = new ArrayList<>(identifiers);
+        ids.sort((s1, s2) -> s2.length() - s1.length());
+
+        Set<String> idsToKeep = new HashSet<>();
+        final String separator = "\r\n\r\n";
+        String validIds = separator;
+
+        for (String id : ids) {
+            if (!validIds.contains(id)) {
+                idsToKeep.add(id);
+                validIds = validIds + id + separator;
+            }
+        }
+        return idsToKeep;
+    }
+
+    /**
+     * Creates a blackboard whose sentences contain the given identifiers as
+     * keyphrases.
+     *
+     * @param sentences the identifiers of the keyphrases of every sentence.
+     * @return the blackboard.
+     */
+    private static Blackboard createBlackboard(List<List<String>> sentences) {
+        Blackboard blackboard = new Blackboard();
+        DocumentComposite document
+                = (DocumentComposite) blackboard.getStructure();
+
+        int counter = 0;
+        for (List<String> identifiers : sentences) {
+            Sentence sentence = new Sentence(String.join(" ", identifiers),
+                    "" + counter++);
+            document.addComponent(sentence);
+            for (String id : identifiers) {
+                List<Token> tokens = new ArrayList<>();
+                for (String word : id.split(" ")) {
+                    tokens.add(new Token(word));
+                }
+                blackboard.addGram(sentence, new Keyphrase(id, tokens, id));
+            }
+        }
+        return blackboard;
+    }
+
+    /**
+     * Runs the annotator and checks that it keeps the same grams as the
+     * original algorithm, both in the blackboard and in the sentences.
+     *
+     * @param sentences the identifiers of the keyphrases of every sentence.
+     */
+    private static void assertSameAsOldAlgorithm(List<List<String>> sentences) {
+        Blackboard blackboard = createBlackboard(sentences);
+
+        List<String> identifiers = new ArrayList<>();
+        for (Gram g : blackboard.getKeyphrases()) {
+            identifiers.add(g.getIdentifier());
+        }
+        Set<String> expected = mergeWithOldAlgorithm(identifiers);
+
+        new GramMergerAnnotator().annotate(blackboard,
+                blackboard.getStructure());
+
+        Set<String> kept = new HashSet<>();
+        for (Gram g : blackboard.getKeyphrases()) {
+            kept.add(g.getIdentifier());
+        }
+        assertEquals(expected, kept);
+
+        for (Sentence s : DocumentUtils.getSentences(blackboard.getStructure())) {
+            for (Gram g : s.getGrams()) {
+                assertTrue(g.getIdentifier(), kept.contains(g.getIdentifier()));
+            }
+        }
+    }
+
+    /**
+     * Strips some common English suffixes, so that the identifiers look like
+     * stemmed surfaces and contain many partial words.
+     *
+     * @param word the word.
+     * @return the crudely stemmed word.
+     */
+    private static String stem(String word) {
+        for (String suffix : new String[]{"ing", "ion", "ed", "s"}) {
+            if (word.length() > suffix.length() + 2 && word.endsWith(suffix)) {
+                return word.substring(0, word.length() - suffix.length());
+            }
+        }
+        return word;
+    }
+
+    @Test
+    public void testSampleText() {
+        List<List<String>> sentences = new ArrayList<>();
+        for (String sentence : SAMPLE_TEXT.split("\\. ")) {
+            String[] words = sentence.toLowerCase()
+                    .replaceAll("[^a-z0-9 ]", "").split(" ");
+            List<String> identifiers = new ArrayList<>();
+            for (int n = 1; n <= 3; n++) {
+                for (int i = 0; i + n <= words.length; i++) {
+                    List<String> gram = new ArrayList<>();
+                    for (int j = i; j < i + n; j++) {
+                        gram.add(stem(words[j]));
+                    }
+                    identifiers.add(String.join(" ", gram));
+                }
+            }
+            sentences.add(identifiers);
+        }
+        assertSameAsOldAlgorithm(sentences);
+    }
+
+    @Test
+    public void testSubstringsOfWords() {
+        // identifiers are merged character-wise, not word-wise: "art" is 
+        // removed because it is contained in "start"
+        assertSameAsOldAlgorithm(Arrays.asList(
+                Arrays.asList("art", "start"),
+                Arrays.asList("star", "tar", "s", "art of war")));
+
+        Blackboard blackboard = createBlackboard(Arrays.asList(
+                Arrays.asList("art", "start", "star", "tar")));
+        new GramMergerAnnotator().annotate(blackboard,
+                blackboard.getStructure());
+        assertEquals(1, blackboard.getKeyphrases().size());
+        assertEquals("start", blackboard.getKeyphrases().get(0).getIdentifier());
+    }
+
+    @Test
+    public void testEdgeCases() {
+        // no keyphrases at all
+        assertSameAsOldAlgorithm(Arrays.asList(new ArrayList<>()));
+
+        // the empty identifier is contained in any other one, identifiers of
+        // the same length are never merged, and repeated grams are counted 
+        // once
+        assertSameAsOldAlgorithm(Arrays.asList(
+                Arrays.asList("", "abc", "abd", "abc"),
+                Arrays.asList("bc", "b", "abcabd")));
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright (C) 2016 Artificial Intelligence
+ * Laboratory @ University of Udine.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package it.uniud.ailab.dcore.annotation.annotators;
+
+import com.sun.net.httpserver.HttpServer;
+import it.uniud.ailab.dcore.Blackboard;
+import it.uniud.ailab.dcore.annotation.annotations.TextAnnotation;
+import it.uniud.ailab.dcore.persistence.DocumentComposite;
+import it.uniud.ailab.dcore.persistence.Sentence;
+import it.uniud.ailab.dcore.persistence.Token;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.commons.io.IOUtils;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link TagMeTokenAnnotator} against a stub of the TagMe service,
+ * checking that the spots found in the batches of sentences are mapped back to
+ * the right tokens.
+ *
+ * @author agent
+ */
+public class TagMeTokenAnnotatorTest {
+
+    /**
+     * The spots found by the stub, with their Wikipedia titles.
+     */
+    private static final Map<String, String> SPOTS = new LinkedHashMap<>();
+
+    static {
+        SPOTS.put("Software engineering", "Software engineering");
+        SPOTS.put("software engineering", "Software engineering");
+        SPOTS.put("Barry Boehm", "Barry Boehm");
+        SPOTS.put("NATO", "NATO");
+    }
+
+    /**
+     * A spot that the stub returns with a confidence below the threshold.
+     */
+    private static final String WEAK_SPOT = "discipline";
+
+    private HttpServer server;
+
+    /**
+     * The texts received by the stub, including the failed requests.
+     */
+    private final List<String> texts
+            = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * The number of requests that the stub still has to fail.
+     */
+    private final AtomicInteger failures = new AtomicInteger();
+
+    private TagMeTokenAnnotator annotator;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/tag", (exchange) -> {
+            Map<String, String> form = parseForm(IOUtils.toString(
+                    exchange.getRequestBody(), "UTF-8"));
+            texts.add(form.get("text"));
+
+            int status = 200;
+            String answer = answer(form.get("text"));
+            if (failures.getAndDecrement() > 0) {
+                status = 503;
+                answer = "Service unavailable";
+            }
+
+            byte[] body = answer.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+
+        annotator = new TagMeTokenAnnotator();
+        annotator.setApiKey("test");
+        annotator.setEndpoint("http://127.0.0.1:"
+                + server.getAddress().getPort() + "/tag");
+        annotator.setRetryDelay(10);
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    /**
+     * Decodes the form sent to the stub.
+     *
+     * @param body the body of the request.
+     * @return the parameters of the form.
+     * @throws IOException if the body can't be decoded.
+     */
+    private static Map<String, String> parseForm(String body)
+            throws IOException {
+        Map<String, String> form = new HashMap<>();
+        for (String parameter : body.split("&")) {
+            String[] kv = parameter.split("=", 2);
+            form.put(URLDecoder.decode(kv[0], "UTF-8"),
+                    kv.length > 1 ? URLDecoder.decode(kv[1], "UTF-8") : "");
+        }
+        return form;
+    }
+
+    /**
+     * Creates the answer of TagMe for a text, with the offsets of the spots
+     * in the whole text received.
+     *
+     * @param text the text to tag.
+     * @return the JSON answer.
+     */
+    private static String answer(String text) {
+        StringBuilder annotations = new StringBuilder();
+        for (Map.Entry<String, String> spot : SPOTS.entrySet()) {
+            appendSpots(annotations, text, spot.getKey(), spot.getValue(),
+                    "0.5");
+        }
+        appendSpots(annotations, text, WEAK_SPOT, "Discipline", "0.05");
+        return "{\"annotations\":[" + annotations + "]}";
+    }
+
+    private static void appendSpots(StringBuilder annotations, String text,
+            String spot, String title, String rho) {
+        Matcher m = Pattern.compile(Pattern.quote(spot)).matcher(text);
+        while (m.find()) {
+            if (annotations.length() > 0) {
+                annotations.append(',');
+            }
+            // TagMe sends numbers as strings in some versions
+            annotations.append(String.format("{\"start\":%d,\"end\":\"%d\","
+                    + "\"rho\":\"%s\",\"title\":\"%s\"}",
+                    m.start(), m.end(), rho, title));
+        }
+    }
+
+    /**
+     * Creates a sentence, splitting its text in words and punctuation.
+     *
+     * @param text the text of the sentence.
+     * @param id the identifier of the sentence.
+     * @param withOffsets if true, the offsets of the tokens are set, 
+     * otherwise the annotator has to find the tokens in the text.
+     * @return the sentence.
+     */
+    private static Sentence createSentence(String text, String id,
+            boolean withOffsets) {
+        Sentence sentence = new Sentence(text, Locale.ENGLISH, id);
+        Matcher m = Pattern.compile("\\w+|[^\\w\\s]").matcher(text);
+        while (m.find()) {
+            Token t = new Token(m.group());
+            if (withOffsets) {
+                t.setOffsets(m.start(), m.end());
+            }
+            sentence.addToken(t);
+        }
+        return sentence;
+    }
+
+    /**
+     * Gets the Wikipedia titles of the tokens of a sentence.
+     *
+     * @param sentence the sentence.
+     * @return the title of every token, or null for the tokens that are not
+     * annotated.
+     */
+    private static List<String> getTitles(Sentence sentence) {
+        List<String> titles = new ArrayList<>();
+        for (Token t : sentence.getTokens()) {
+            TextAnnotation ann = (TextAnnotation) t.getAnnotation(
+                    GenericWikipediaAnnotator.WIKIFLAG);
+            titles.add(ann == null ? null : ann.getAnnotation());
+        }
+        return titles;
+    }
+
+    @Test
+    public void testBatchesAndRetry() {
+        Blackboard blackboard = new Blackboard();
+        DocumentComposite document
+                = (DocumentComposite) blackboard.getStructure();
+        Sentence first = createSentence(
+                "Software engineering is a discipline.", "0", true);
+        Sentence second = createSentence(
+                "Barry Boehm studied software engineering.", "1", false);
+        Sentence third = createSentence("The NATO sponsored it.", "2", true);
+        document.addComponent(first);
+        document.addComponent(second);
+        document.addComponent(third);
+
+        // the first two sentences fit in a batch, the third one does not
+        annotator.setDocumentBatching(true);
+        annotator.setMaxBatchLength(first.getText().length()
+                + second.getText().length() + 2);
+
+        // the first request fails and is retried
+        failures.set(1);
+
+        annotator.annotate(blackboard, document);
+
+        String firstBatch = first.getText() + "\n" + second.getText();
+        assertEquals(Arrays.asList(firstBatch, firstBatch, third.getText()),
+                texts);
+
+        assertEquals(Arrays.asList("Software engineering",
+                "Software engineering", null, null, null, null),
+                getTitles(first));
+        assertEquals(Arrays.asList("Barry Boehm", "Barry Boehm", null,
+                "Software engineering", "Software engineering", null),
+                getTitles(second));
+        assertEquals(Arrays.asList(null, "NATO", null, null, null),
+                getTitles(third));
+
+        TextAnnotation ann = (TextAnnotation) second.getTokens().get(3)
+                .getAnnotation(GenericWikipediaAnnotator.WIKIFLAG);
+        assertEquals(2, ann.getTokens().length);
+        assertEquals("engineering", ann.getTokens()[1].getText());
+    }
+
+    @Test
+    public void testOneSentencePerRequest() {
+        Blackboard blackboard = new Blackboard();
+        DocumentComposite document
+                = (DocumentComposite) blackboard.getStructure();
+        Sentence first = createSentence("The NATO sponsored it.", "0", false);
+        Sentence second = createSentence(
+                "Barry Boehm studied software engineering.", "1", true);
+        document.addComponent(first);
+        document.addComponent(second);
+
+        annotator.annotate(blackboard, document);
+
+        assertEquals(Arrays.asList(first.getText(), second.getText()), texts);
+        assertEquals(Arrays.asList(null, "NATO", null, null, null),
+                getTitles(first));
+        assertEquals(Arrays.asList("Barry Boehm", "Barry Boehm", null,
+                "Software engineering", "Software engineering", null),
+                getTitles(second));
+        assertNull(second.getTokens().get(2).getAnnotation(
+                GenericWikipediaAnnotator.WIKIFLAG));
+    }
+}
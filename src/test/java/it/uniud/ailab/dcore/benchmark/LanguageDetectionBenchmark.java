@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2016 Artificial Intelligence
+ * Laboratory @ University of Udine.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package it.uniud.ailab.dcore.benchmark;
+
+import com.cybozu.labs.langdetect.LangDetectException;
+import it.uniud.ailab.dcore.wrappers.external.CybozuLanguageDetectionService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the detection of the language of a whole document with the 
+ * detection on a sample of it, on documents of 1 KB, 100 KB and 2 MB in
+ * five languages. The documents are made of the sentences of a short text
+ * in random order; the English and Italian ones also contain some 
+ * sentences of the other language. Before the measurement, the languages
+ * detected with and without sampling are printed, so that the accuracy of 
+ * the sampled detection can be checked.
+ *
+ * @author agent
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LanguageDetectionBenchmark {
+
+    private static final Map<String, String[]> SENTENCES 
+            = new LinkedHashMap<>();
+
+    static {
+        SENTENCES.put("en", new String[]{
+            "The library of the university is open every day of the week.",
+            "Students can borrow up to ten books for a period of one month.",
+            "The reading rooms are quiet and well lit, with many desks.",
+            "A new collection of historical maps was donated last year.",
+            "Researchers often ask the librarians for help with old records.",
+            "The catalogue can be searched online from any computer."});
+        SENTENCES.put("it", new String[]{
+            "La biblioteca dell'università è aperta tutti i giorni.",
+            "Gli studenti possono prendere in prestito fino a dieci libri.",
+            "Le sale di lettura sono silenziose e ben illuminate.",
+            "L'anno scorso è stata donata una collezione di mappe storiche.",
+            "I ricercatori chiedono spesso aiuto ai bibliotecari.",
+            "Il catalogo si può consultare da qualsiasi computer."});
+        SENTENCES.put("de", new String[]{
+            "Die Bibliothek der Universität ist jeden Tag geöffnet.",
+            "Studenten können bis zu zehn Bücher für einen Monat ausleihen.",
+            "Die Lesesäle sind ruhig und gut beleuchtet.",
+            "Im letzten Jahr wurde eine Sammlung historischer Karten gespendet.",
+            "Forscher bitten die Bibliothekare oft um Hilfe.",
+            "Der Katalog kann von jedem Computer aus durchsucht werden."});
+        SENTENCES.put("fr", new String[]{
+            "La bibliothèque de l'université est ouverte tous les jours.",
+            "Les étudiants peuvent emprunter jusqu'à dix livres par mois.",
+            "Les salles de lecture sont calmes et bien éclairées.",
+            "Une collection de cartes historiques a été donnée l'an dernier.",
+            "Les chercheurs demandent souvent de l'aide aux bibliothécaires.",
+            "Le catalogue peut être consulté depuis n'importe quel ordinateur."});
+        SENTENCES.put("es", new String[]{
+            "La biblioteca de la universidad está abierta todos los días.",
+            "Los estudiantes pueden tomar prestados hasta diez libros.",
+            "Las salas de lectura son tranquilas y están bien iluminadas.",
+            "El año pasado se donó una colección de mapas históricos.",
+            "Los investigadores piden ayuda a los bibliotecarios a menudo.",
+            "El catálogo se puede consultar desde cualquier ordenador."});
+    }
+
+    @Param({"1000", "100000", "2000000"})
+    public int length;
+
+    @Param({"1000"})
+    public int sampleLength;
+
+    @Param({"3"})
+    public int samples;
+
+    @Param({"0.99"})
+    public double confidence;
+
+    private final List<String> languages = new ArrayList<>(SENTENCES.keySet());
+
+    private final List<String> documents = new ArrayList<>();
+
+    @Setup
+    public void setUp() throws LangDetectException {
+        CybozuLanguageDetectionService.load(languages);
+
+        Random random = new Random(42);
+        for (String language : languages) {
+            List<String> sentences = new ArrayList<>(
+                    Arrays.asList(SENTENCES.get(language)));
+            // a mixed-language document, like a paper with a foreign abstract
+            if (language.equals("en") || language.equals("it")) {
+                sentences.add(SENTENCES.get(language.equals("en") 
+                        ? "it" : "en")[0]);
+            }
+
+            StringBuilder document = new StringBuilder();
+            while (document.length() < length) {
+                Collections.shuffle(sentences, random);
+                for (String sentence : sentences) {
+                    document.append(sentence).append(' ');
+                }
+            }
+            documents.add(document.substring(0, length));
+        }
+
+        for (int i = 0; i < documents.size(); i++) {
+            System.out.println(String.format(
+                    "%s document: %s with the whole text, %s with sampling",
+                    languages.get(i),
+                    CybozuLanguageDetectionService.detect(
+                            documents.get(i), languages),
+                    CybozuLanguageDetectionService.detect(documents.get(i),
+                            languages, sampleLength, samples, confidence)));
+        }
+    }
+
+    @Benchmark
+    public void wholeText(Blackhole blackhole) throws LangDetectException {
+        for (String document : documents) {
+            blackhole.consume(CybozuLanguageDetectionService.detect(
+                    document, languages));
+        }
+    }
+
+    @Benchmark
+    public void sampled(Blackhole blackhole) throws LangDetectException {
+        for (String document : documents) {
+            blackhole.consume(CybozuLanguageDetectionService.detect(
+                    document, languages, sampleLength, samples, confidence));
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2016 Artificial Intelligence
+ * Laboratory @ University of Udine.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package it.uniud.ailab.dcore.benchmark;
+
+import it.uniud.ailab.dcore.Blackboard;
+import it.uniud.ailab.dcore.annotation.annotators.DocumentPhraseMaximalityAnnotator;
+import it.uniud.ailab.dcore.annotation.annotators.StatisticalAnnotator;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the time taken by the {@link DocumentPhraseMaximalityAnnotator}
+ * on synthetic documents with 1,000, 10,000 and 50,000 candidate 
+ * keyphrases. The candidates are the n-grams of up to three tokens of the
+ * document, so many of them are contained in others.
+ *
+ * @author agent
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class PhraseMaximalityBenchmark {
+
+    @Param({"1000", "10000", "50000"})
+    public int candidates;
+
+    private final DocumentPhraseMaximalityAnnotator annotator
+            = new DocumentPhraseMaximalityAnnotator();
+
+    private Blackboard blackboard;
+
+    @Setup
+    public void setUp() {
+        blackboard = SyntheticDocuments.getDocument(0, candidates, false);
+
+        // maximality needs the frequency of the candidates
+        new StatisticalAnnotator().annotate(blackboard, 
+                blackboard.getStructure());
+    }
+
+    @Benchmark
+    public Blackboard annotate() {
+        annotator.annotate(blackboard, blackboard.getStructure());
+        return blackboard;
+    }
+}
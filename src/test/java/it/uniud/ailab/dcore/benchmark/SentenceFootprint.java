@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2016 Artificial Intelligence
+ * Laboratory @ University of Udine.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package it.uniud.ailab.dcore.benchmark;
+
+import it.uniud.ailab.dcore.Blackboard;
+import it.uniud.ailab.dcore.annotation.annotations.FeatureAnnotation;
+import it.uniud.ailab.dcore.persistence.Sentence;
+import it.uniud.ailab.dcore.persistence.Token;
+import java.util.ArrayList;
+import java.util.List;
+import org.openjdk.jol.info.GraphLayout;
+
+/**
+ * Prints the memory retained by every token of a document of 100,000
+ * tokens, stored in {@link Sentence}s or in 
+ * {@link it.uniud.ailab.dcore.persistence.CompactSentence}s, when the 
+ * tokens have no annotations, few annotations (that fit in the inline 
+ * storage of {@link it.uniud.ailab.dcore.annotation.Annotable}) or more 
+ * annotations. The strings in the symbol table of the document are not 
+ * counted, since they are the same for both representations.
+ *
+ * @author agent
+ */
+public class SentenceFootprint {
+
+    private static final int SENTENCES = 5000;
+
+    private static final String[] FEATURES = new String[]{"Feature0",
+        "Feature1", "Feature2", "Feature3", "Feature4", "Feature5"};
+
+    public static void main(String[] args) {
+        int tokens = SENTENCES * SyntheticDocuments.SENTENCE_LENGTH;
+        System.out.println(String.format("%-16s %12s %12s",
+                "annotations", "Sentence", "Compact"));
+
+        for (int annotations : new int[]{0, 2, FEATURES.length}) {
+            StringBuilder row = new StringBuilder(
+                    String.format("%-16d", annotations));
+            for (boolean compact : new boolean[]{false, true}) {
+                Blackboard blackboard = new Blackboard();
+                List<Sentence> sentences = new ArrayList<>();
+                for (int s = 0; s < SENTENCES; s++) {
+                    Sentence sentence = SyntheticDocuments.getSentence(
+                            SyntheticDocuments.getWords(
+                                    SyntheticDocuments.SENTENCE_LENGTH, s),
+                            "" + s, compact, blackboard);
+                    for (Token t : sentence.getTokens()) {
+                        for (int a = 0; a < annotations; a++) {
+                            t.addAnnotation(new FeatureAnnotation(
+                                    FEATURES[a], a));
+                        }
+                    }
+                    sentences.add(sentence);
+                }
+
+                long size = GraphLayout.parseInstance(sentences).totalSize()
+                        - GraphLayout.parseInstance(
+                                blackboard.getSymbolTable()).totalSize();
+                row.append(String.format(" %12.1f", (double) size / tokens));
+            }
+            System.out.println(row);
+        }
+        System.out.println("(bytes per token)");
+    }
+}
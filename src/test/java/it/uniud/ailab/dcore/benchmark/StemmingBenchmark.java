@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2016 Artificial Intelligence
+ * Laboratory @ University of Udine.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package it.uniud.ailab.dcore.benchmark;
+
+import it.uniud.ailab.dcore.utils.SnowballStemmerSelector;
+import it.uniud.ailab.dcore.utils.StemCache;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.tartarus.snowball.SnowballStemmer;
+
+/**
+ * Measures the time taken to stem a corpus of 100,000 English words with a
+ * Zipfian distribution, running the Snowball stemmer on every word or using
+ * the {@link StemCache}. The hit rate of the cache is printed at the end of
+ * the run.
+ *
+ * @author agent
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StemmingBenchmark {
+
+    private static final int CORPUS_SIZE = 100000;
+
+    private String[] corpus;
+
+    private StemCache cache;
+
+    @Setup
+    public void setUp() {
+        corpus = SyntheticDocuments.getWords(CORPUS_SIZE, 0);
+        cache = StemCache.forLanguage(Locale.ENGLISH);
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.out.println("Stem cache: " + cache);
+    }
+
+    /**
+     * Stems every word with a new stemmer, as every run of the stemmer
+     * annotator did before the cache.
+     *
+     * @param blackhole the sink of the stems.
+     */
+    @Benchmark
+    public void stemmer(Blackhole blackhole) {
+        SnowballStemmer stemmer = SnowballStemmerSelector
+                .getStemmerForLanguage(Locale.ENGLISH);
+        for (String word : corpus) {
+            stemmer.setCurrent(word);
+            stemmer.stem();
+            blackhole.consume(stemmer.getCurrent());
+        }
+    }
+
+    @Benchmark
+    public void cache(Blackhole blackhole) {
+        for (String word : corpus) {
+            blackhole.consume(cache.stem(word));
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void cacheConcurrent(Blackhole blackhole) {
+        cache(blackhole);
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2016 Artificial Intelligence
+ * Laboratory @ University of Udine.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package it.uniud.ailab.dcore.benchmark;
+
+import it.uniud.ailab.dcore.Blackboard;
+import it.uniud.ailab.dcore.persistence.CompactSentence;
+import it.uniud.ailab.dcore.persistence.DocumentComposite;
+import it.uniud.ailab.dcore.persistence.Keyphrase;
+import it.uniud.ailab.dcore.persistence.Sentence;
+import it.uniud.ailab.dcore.persistence.Token;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Builds the synthetic English documents used by the benchmarks. The words
+ * are taken from Liu Bing's opinion lexicon, shipped with the Distiller,
+ * and drawn with a Zipfian distribution, like the words of a natural
+ * language text. Every document is generated from a fixed seed, so all the
+ * runs of a benchmark see the same document.
+ *
+ * @author agent
+ */
+final class SyntheticDocuments {
+
+    /**
+     * The number of tokens of every sentence.
+     */
+    static final int SENTENCE_LENGTH = 20;
+
+    /**
+     * The maximum number of tokens of a candidate keyphrase.
+     */
+    static final int MAX_GRAM_SIZE = 3;
+
+    private static final long SEED = 42;
+
+    private static List<String> vocabulary;
+
+    private SyntheticDocuments() {
+    }
+
+    /**
+     * Gets the words of the lexicon, in a random but fixed order: the
+     * position of a word is its frequency rank.
+     *
+     * @return the words.
+     */
+    static synchronized List<String> getVocabulary() {
+        if (vocabulary == null) {
+            List<String> words = new ArrayList<>();
+            for (String file : Arrays.asList("bingliu/positive-words.txt",
+                    "bingliu/negative-words.txt")) {
+                try (InputStream in = SyntheticDocuments.class
+                        .getClassLoader().getResourceAsStream(file);
+                        BufferedReader reader = new BufferedReader(
+                                new InputStreamReader(in, "ISO-8859-1"))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        if (!line.isEmpty() && !line.startsWith(";")) {
+                            words.add(line.trim());
+                        }
+                    }
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+            Collections.shuffle(words, new Random(SEED));
+            vocabulary = Collections.unmodifiableList(words);
+        }
+        return vocabulary;
+    }
+
+    /**
+     * Draws words from the vocabulary with a Zipfian distribution, where the
+     * frequency of a word is inversely proportional to its rank.
+     *
+     * @param count the number of words to draw.
+     * @param seed the seed of the generator.
+     * @return the words.
+     */
+    static String[] getWords(int count, long seed) {
+        List<String> words = getVocabulary();
+        double[] cumulative = new double[words.size()];
+        double sum = 0;
+        for (int i = 0; i < cumulative.length; i++) {
+            sum += 1.0 / (i + 1);
+            cumulative[i] = sum;
+        }
+
+        Random random = new Random(seed);
+        String[] result = new String[count];
+        for (int i = 0; i < count; i++) {
+            int rank = Arrays.binarySearch(cumulative,
+                    random.nextDouble() * sum);
+            result[i] = words.get(rank < 0 ? -rank - 1 : rank);
+        }
+        return result;
+    }
+
+    /**
+     * Creates a document of sentences of {@link #SENTENCE_LENGTH} tokens.
+     * The stem of every token is its text, and all the n-grams of up to
+     * {@link #MAX_GRAM_SIZE} tokens of every sentence are added to the
+     * blackboard as candidate keyphrases, until the requested number of
+     * distinct candidates is reached.
+     *
+     * @param sentences the number of sentences; if lower or equal than zero,
+     * sentences are added until there are enough candidates.
+     * @param candidates the number of distinct candidates; if lower or equal
+     * than zero, every n-gram is a candidate.
+     * @param compact true to use {@link CompactSentence}s.
+     * @return the blackboard with the document.
+     */
+    static Blackboard getDocument(int sentences, int candidates,
+            boolean compact) {
+
+        if (sentences <= 0 && candidates <= 0) {
+            throw new IllegalArgumentException(
+                    "Either the sentences or the candidates must be bounded");
+        }
+
+        // generate the words first, since the blackboard needs the text
+        List<String[]> words = new ArrayList<>();
+        Set<String> identifiers = new HashSet<>();
+        while ((sentences <= 0 || words.size() < sentences)
+                && (candidates <= 0 || identifiers.size() < candidates)) {
+            String[] sentence = getWords(SENTENCE_LENGTH, SEED + words.size());
+            words.add(sentence);
+            for (int i = 0; i < sentence.length; i++) {
+                for (int n = 1; n <= MAX_GRAM_SIZE
+                        && i + n <= sentence.length; n++) {
+                    identifiers.add(String.join(" ",
+                            Arrays.copyOfRange(sentence, i, i + n)));
+                }
+            }
+        }
+
+        StringBuilder text = new StringBuilder();
+        for (String[] sentence : words) {
+            text.append(String.join(" ", sentence)).append(".\n");
+        }
+
+        Blackboard blackboard = new Blackboard();
+        blackboard.createDocument(text.toString());
+        DocumentComposite root = (DocumentComposite) blackboard.getStructure();
+        root.setLanguage(Locale.ENGLISH);
+
+        identifiers.clear();
+        for (int s = 0; s < words.size(); s++) {
+            Sentence sentence = getSentence(words.get(s), "" + s, compact,
+                    blackboard);
+            root.addComponent(sentence);
+
+            List<Token> tokens = sentence.getTokens();
+            for (int i = 0; i < tokens.size(); i++) {
+                for (int n = 1; n <= MAX_GRAM_SIZE
+                        && i + n <= tokens.size(); n++) {
+                    String identifier = String.join(" ",
+                            Arrays.copyOfRange(words.get(s), i, i + n));
+                    if (candidates > 0 && identifiers.size() >= candidates
+                            && !identifiers.contains(identifier)) {
+                        continue;
+                    }
+                    identifiers.add(identifier);
+                    blackboard.addGram(sentence, new Keyphrase(identifier,
+                            new ArrayList<>(tokens.subList(i, i + n)),
+                            identifier));
+                }
+            }
+        }
+
+        return blackboard;
+    }
+
+    /**
+     * Creates a sentence.
+     *
+     * @param words the words of the sentence.
+     * @param identifier the identifier of the sentence.
+     * @param compact true to create a {@link CompactSentence}.
+     * @param blackboard the blackboard whose symbol table stores the strings
+     * of the tokens.
+     * @return the sentence.
+     */
+    static Sentence getSentence(String[] words, String identifier,
+            boolean compact, Blackboard blackboard) {
+        String text = String.join(" ", words);
+        Sentence sentence = compact
+                ? new CompactSentence(text, Locale.ENGLISH, identifier,
+                        blackboard.getSymbolTable())
+                : new Sentence(text, Locale.ENGLISH, identifier);
+
+        int offset = 0;
+        for (String word : words) {
+            Token t = new Token(word, blackboard.getSymbolTable());
+            t.setStem(word);
+            t.setPoS("NN");
+            t.setOffsets(offset, offset + word.length());
+            offset += word.length() + 1;
+            sentence.addToken(t);
+        }
+        if (compact) {
+            // as the bootstrappers do
+            ((CompactSentence) sentence).trimToSize();
+        }
+        return sentence;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2016 Artificial Intelligence
+ * Laboratory @ University of Udine.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package it.uniud.ailab.dcore.utils;
+
+import it.uniud.ailab.dcore.annotation.annotators.GenericEvaluatorAnnotator;
+import it.uniud.ailab.dcore.persistence.Keyphrase;
+import it.uniud.ailab.dcore.persistence.Token;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * Tests the {@link KeyphraseRanking}, comparing the best keyphrases it finds
+ * with the ones found by a stable sort of all the keyphrases.
+ *
+ * @author agent
+ */
+public class KeyphraseRankingTest {
+
+    /**
+     * Creates keyphrases with random scores; the scores are drawn from a
+     * small set, so that many keyphrases have the same score.
+     *
+     * @param count the number of keyphrases.
+     * @param seed the seed of the scores.
+     * @return the keyphrases.
+     */
+    private static List<Keyphrase> getKeyphrases(int count, long seed) {
+        Random random = new Random(seed);
+        List<Keyphrase> keyphrases = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String text = "k" + i;
+            Keyphrase k = new Keyphrase(text,
+                    Collections.singletonList(new Token(text)), text);
+            k.putFeature(GenericEvaluatorAnnotator.SCORE,
+                    random.nextInt(5) / 4.0);
+            keyphrases.add(k);
+        }
+        return keyphrases;
+    }
+
+    /**
+     * Sorts the keyphrases by descending score, keeping the keyphrases with
+     * the same score in their order.
+     *
+     * @param keyphrases the keyphrases.
+     * @return the sorted keyphrases.
+     */
+    private static List<Keyphrase> sort(List<Keyphrase> keyphrases) {
+        List<Keyphrase> sorted = new ArrayList<>(keyphrases);
+        sorted.sort(Comparator.comparingDouble((Keyphrase k)
+                -> k.getFeature(GenericEvaluatorAnnotator.SCORE)).reversed());
+        return sorted;
+    }
+
+    /**
+     * Checks the best and the discarded keyphrases of a ranking.
+     */
+    private static void assertRanking(List<Keyphrase> keyphrases,
+            KeyphraseRanking ranking, int k) {
+        List<Keyphrase> top = sort(keyphrases).subList(0,
+                Math.max(0, Math.min(k, keyphrases.size())));
+        assertEquals("top " + k, top, ranking.getTop(k));
+
+        double[] scores = new double[top.size()];
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] = top.get(i).getFeature(GenericEvaluatorAnnotator.SCORE);
+        }
+        assertArrayEquals(scores, ranking.getTopScores(k), 0);
+
+        List<Keyphrase> discarded = new ArrayList<>(keyphrases);
+        discarded.removeAll(top);
+        assertEquals("discarded " + k, discarded, ranking.getDiscarded(k));
+    }
+
+    @Test
+    public void testTiesAndBounds() {
+        for (int n : new int[]{0, 1, 2, 7, 100}) {
+            List<Keyphrase> keyphrases = getKeyphrases(n, n);
+            for (int k : new int[]{-1, 0, 1, 3, n - 1, n, n + 1, 2 * n + 10}) {
+                assertRanking(keyphrases, new KeyphraseRanking(keyphrases), k);
+            }
+        }
+    }
+
+    @Test
+    public void testReusedSelection() {
+        // the ranking keeps its last selection: ask for more and then less
+        // keyphrases than before
+        List<Keyphrase> keyphrases = getKeyphrases(200, 42);
+        KeyphraseRanking ranking = new KeyphraseRanking(keyphrases);
+        for (int k : Arrays.asList(10, 5, 0, 50, 200, 300, 20, 1)) {
+            assertRanking(keyphrases, ranking, k);
+        }
+    }
+
+    @Test
+    public void testAllTied() {
+        List<Keyphrase> keyphrases = getKeyphrases(30, 0);
+        for (Keyphrase k : keyphrases) {
+            k.putFeature(GenericEvaluatorAnnotator.SCORE, 0.5);
+        }
+        KeyphraseRanking ranking = new KeyphraseRanking(keyphrases);
+        assertEquals(keyphrases.subList(0, 10), ranking.getTop(10));
+        assertEquals(keyphrases.subList(10, 30), ranking.getDiscarded(10));
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2016 Artificial Intelligence
+ * Laboratory @ University of Udine.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package it.uniud.ailab.dcore.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Tests the {@link MultiPatternMatcher}, comparing its occurrences with the
+ * ones found by searching every pattern on its own.
+ *
+ * @author agent
+ */
+public class MultiPatternMatcherTest {
+
+    /**
+     * Finds the occurrences of some patterns with the matcher.
+     *
+     * @param patterns the patterns.
+     * @param text the text to scan.
+     * @return the occurrences as "pattern:start-end", sorted.
+     */
+    private static List<String> match(List<String> patterns, String text) {
+        List<String> found = new ArrayList<>();
+        new MultiPatternMatcher(patterns).match(text,
+                (p, start, end) -> found.add(p + ":" + start + "-" + end));
+        Collections.sort(found);
+        return found;
+    }
+
+    /**
+     * Finds the occurrences of some patterns searching every pattern at every
+     * position of the text.
+     *
+     * @param patterns the patterns.
+     * @param text the text to scan.
+     * @return the occurrences as "pattern:start-end", sorted.
+     */
+    private static List<String> naiveMatch(List<String> patterns, String text) {
+        List<String> found = new ArrayList<>();
+        for (int p = 0; p < patterns.size(); p++) {
+            String pattern = patterns.get(p);
+            for (int i = 0; i + pattern.length() <= text.length(); i++) {
+                if (text.startsWith(pattern, i)) {
+                    found.add(p + ":" + i + "-" + (i + pattern.length()));
+                }
+            }
+        }
+        Collections.sort(found);
+        return found;
+    }
+
+    @Test
+    public void testEmptyPatternMatchesEverywhere() {
+        assertEquals(Arrays.asList("0:0-0", "0:1-1", "0:2-2", "1:0-2"),
+                match(Arrays.asList("", "ab"), "ab"));
+        assertEquals(Arrays.asList("0:0-0"),
+                match(Arrays.asList(""), ""));
+    }
+
+    @Test
+    public void testNoPatterns() {
+        assertEquals(Collections.emptyList(),
+                match(Collections.<String>emptyList(), "some text"));
+    }
+
+    @Test
+    public void testOverlappingMatches() {
+        assertEquals(Arrays.asList("0:0-2", "0:1-3", "0:2-4"),
+                match(Arrays.asList("aa"), "aaaa"));
+
+        // the classic example: "she" and "he" end at the same position, and
+        // "hers" overlaps both
+        assertEquals(naiveMatch(Arrays.asList("he", "she", "his", "hers"),
+                "ushers"),
+                match(Arrays.asList("he", "she", "his", "hers"), "ushers"));
+        assertEquals(Arrays.asList("0:2-4", "1:1-4", "3:2-6"),
+                match(Arrays.asList("he", "she", "his", "hers"), "ushers"));
+    }
+
+    @Test
+    public void testRepeatedPatterns() {
+        assertEquals(Arrays.asList("0:1-3", "1:1-3", "2:0-3"),
+                match(Arrays.asList("bc", "bc", "abc"), "abc"));
+    }
+
+    @Test
+    public void testFailureLinks() {
+        // after "abc" the automaton must fall back to "bc" to find "bce"
+        assertEquals(Arrays.asList("1:1-4"),
+                match(Arrays.asList("abcd", "bce"), "abce"));
+
+        // the output links report the suffixes of a longer match
+        assertEquals(Arrays.asList("0:0-4", "1:1-4", "2:3-4"),
+                match(Arrays.asList("abcd", "bcd", "d"), "abcd"));
+
+        // a mismatch after a partial match falls back to the longest suffix
+        // that is a prefix of a pattern
+        assertEquals(Arrays.asList("0:2-5"),
+                match(Arrays.asList("abc"), "ababc"));
+        assertEquals(Arrays.asList("0:2-6"),
+                match(Arrays.asList("aabc"), "aaaabc"));
+    }
+
+    @Test
+    public void testRandomTexts() {
+        Random random = new Random(42);
+        for (int round = 0; round < 200; round++) {
+            List<String> patterns = new ArrayList<>();
+            int n = 1 + random.nextInt(8);
+            for (int i = 0; i < n; i++) {
+                patterns.add(randomString(random, random.nextInt(5)));
+            }
+            String text = randomString(random, random.nextInt(40));
+            assertEquals(patterns + " in " + text,
+                    naiveMatch(patterns, text), match(patterns, text));
+        }
+    }
+
+    @Test
+    public void testWordBoundaries() {
+        String text = "new-york city_hall";
+        assertTrue(MultiPatternMatcher.isWordBoundary(text, 0));
+        assertTrue(MultiPatternMatcher.isWordBoundary(text, 3));
+        assertTrue(MultiPatternMatcher.isWordBoundary(text, 4));
+        assertFalse(MultiPatternMatcher.isWordBoundary(text, 2));
+        assertFalse(MultiPatternMatcher.isWordBoundary(text, 13));
+        assertTrue(MultiPatternMatcher.isWordBoundary(text, text.length()));
+        assertFalse(MultiPatternMatcher.isWordBoundary("", 0));
+        assertFalse(MultiPatternMatcher.isWordBoundary("a  b", 2));
+    }
+
+    /**
+     * Creates a random string over a small alphabet, so that patterns occur
+     * often and overlap.
+     *
+     * @param random the random generator.
+     * @param length the length of the string.
+     * @return the string.
+     */
+    private static String randomString(Random random, int length) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            sb.append("abc".charAt(random.nextInt(3)));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright (C) 2016 Artificial Intelligence
+ * Laboratory @ University of Udine.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package it.uniud.ailab.dcore.utils;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.io.FileUtils;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the {@link WikipediaCache} in front of a {@link WikipediaClient} that
+ * queries a stub of the Wikipedia API, checking the hit rate, the expiration
+ * of the entries and their persistence on disk.
+ *
+ * @author agent
+ */
+public class WikipediaCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * The stub of the Wikipedia API.
+     */
+    private HttpServer server;
+
+    /**
+     * The number of requests received by the stub.
+     */
+    private final AtomicInteger requests = new AtomicInteger();
+
+    private WikipediaClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", (exchange) -> {
+            requests.incrementAndGet();
+            byte[] body = answer(exchange.getRequestURI().getRawQuery())
+                    .getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type",
+                    "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+
+        client = new WikipediaClient(2, 0, "http://127.0.0.1:"
+                + server.getAddress().getPort() + "/%s/w/api.php");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        client.close();
+        server.stop(0);
+    }
+
+    /**
+     * Answers a query of the API: every page has a category and a link named
+     * after its title.
+     *
+     * @param query the query string of the request.
+     * @return the JSON answer.
+     */
+    private static String answer(String query) {
+        Map<String, String> parameters = new HashMap<>();
+        for (String parameter : query.split("&")) {
+            String[] kv = parameter.split("=", 2);
+            try {
+                parameters.put(kv[0], kv.length > 1
+                        ? URLDecoder.decode(kv[1], "UTF-8") : "");
+            } catch (java.io.UnsupportedEncodingException ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+
+        StringBuilder pages = new StringBuilder();
+        int id = 1;
+        for (String title : parameters.get("titles").split("\\|")) {
+            if (pages.length() > 0) {
+                pages.append(',');
+            }
+            pages.append(String.format("\"%d\":{\"title\":\"%s\","
+                    + "\"categories\":[{\"title\":\"Category:%s_category\"}],"
+                    + "\"links\":[{\"title\":\"%s_link\"}]}",
+                    id++, title, title, title));
+        }
+        return "{\"query\":{\"pages\":{" + pages + "}}}";
+    }
+
+    /**
+     * Gets some pages as the Wikipedia inference annotator does: first from
+     * the cache, then from Wikipedia, caching what has been downloaded.
+     *
+     * @param cache the cache.
+     * @param titles the titles of the pages.
+     * @return the categories and links of the pages.
+     * @throws IOException if the stub can't be queried.
+     */
+    private Map<String, Pair<List<String>, List<String>>> lookup(
+            WikipediaCache cache, String... titles) throws IOException {
+
+        Map<String, Pair<List<String>, List<String>>> found = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String title : titles) {
+            Pair<List<String>, List<String>> info = cache.get("en:" + title);
+            if (info == null) {
+                missing.add(title);
+            } else {
+                found.put(title, info);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            for (Map.Entry<String, Pair<List<String>, List<String>>> e
+                    : client.getCategoriesAndLinks("en", missing, null)
+                    .entrySet()) {
+                cache.put("en:" + e.getKey(), e.getValue().getLeft(),
+                        e.getValue().getRight());
+                found.put(e.getKey(), e.getValue());
+            }
+        }
+        return found;
+    }
+
+    @Test
+    public void testHitRate() throws IOException {
+        WikipediaCache cache = new WikipediaCache(100, WikipediaCache.DEFAULT_TTL,
+                folder.newFolder());
+
+        Map<String, Pair<List<String>, List<String>>> pages
+                = lookup(cache, "Software", "Engineering");
+        assertEquals(1, requests.get());
+        assertEquals(Arrays.asList("Category:Software_category"),
+                pages.get("Software").getLeft());
+        assertEquals(Arrays.asList("Engineering_link"),
+                pages.get("Engineering").getRight());
+        assertEquals(0, cache.getHitRate(), 0);
+
+        pages = lookup(cache, "Software", "Engineering", "Science");
+        assertEquals(2, requests.get());
+        assertEquals(Arrays.asList("Science_link"),
+                pages.get("Science").getRight());
+        assertEquals(5, cache.getRequests());
+        assertEquals(2, cache.getMemoryHits());
+        assertEquals(0.4, cache.getHitRate(), 1e-9);
+
+        lookup(cache, "Science");
+        assertEquals(2, requests.get());
+        assertEquals(0.5, cache.getHitRate(), 1e-9);
+    }
+
+    @Test
+    public void testDiskRoundTrip() throws IOException {
+        File directory = folder.newFolder();
+        WikipediaCache cache = new WikipediaCache(100,
+                WikipediaCache.DEFAULT_TTL, directory);
+        lookup(cache, "Software", "Engineering");
+        assertEquals(1, requests.get());
+        assertEquals(2, directory.listFiles().length);
+
+        // a new cache, e.g. of another run, reads the entries from disk
+        WikipediaCache other = new WikipediaCache(100,
+                WikipediaCache.DEFAULT_TTL, directory);
+        Map<String, Pair<List<String>, List<String>>> pages
+                = lookup(other, "Software", "Engineering");
+        assertEquals(1, requests.get());
+        assertEquals(2, other.getDiskHits());
+        assertEquals(Arrays.asList("Category:Software_category"),
+                pages.get("Software").getLeft());
+        assertEquals(Arrays.asList("Engineering_link"),
+                pages.get("Engineering").getRight());
+
+        // the second time, the entries are in memory
+        lookup(other, "Software");
+        assertEquals(2, other.getDiskHits());
+        assertEquals(1, other.getMemoryHits());
+    }
+
+    @Test
+    public void testExpiration() throws IOException, InterruptedException {
+        File directory = folder.newFolder();
+        WikipediaCache cache = new WikipediaCache(100, 200, directory);
+        lookup(cache, "Software");
+        assertEquals(1, requests.get());
+        File entry = directory.listFiles()[0];
+
+        Thread.sleep(400);
+
+        // the expired entry is missed in both levels, and its file deleted
+        assertNull(cache.get("en:Software"));
+        assertFalse(entry.exists());
+
+        // so it is downloaded again
+        lookup(cache, "Software");
+        assertEquals(2, requests.get());
+        assertTrue(entry.exists());
+        assertEquals(0, cache.getHitRate(), 0);
+    }
+
+    @Test
+    public void testPurgeAtStartup() throws IOException {
+        File directory = folder.newFolder();
+        WikipediaCache cache = new WikipediaCache(100,
+                WikipediaCache.DEFAULT_TTL, directory);
+        lookup(cache, "Software", "Engineering");
+
+        File[] files = directory.listFiles();
+        assertEquals(2, files.length);
+        files[0].setLastModified(System.currentTimeMillis()
+                - 2 * WikipediaCache.DEFAULT_TTL);
+
+        new WikipediaCache(100, WikipediaCache.DEFAULT_TTL, directory);
+        assertEquals(1, directory.listFiles().length);
+        assertTrue(files[1].exists());
+    }
+
+    @Test
+    public void testCorruptEntries() throws IOException {
+        File directory = folder.newFolder();
+        WikipediaCache cache = new WikipediaCache(100,
+                WikipediaCache.DEFAULT_TTL, directory);
+        lookup(cache, "Software", "Engineering", "Science");
+        File[] files = directory.listFiles();
+
+        FileUtils.writeStringToFile(files[0], "not json", "UTF-8");
+        FileUtils.writeStringToFile(files[1], "[1, 2]", "UTF-8");
+        String entry = FileUtils.readFileToString(files[2], "UTF-8");
+        FileUtils.writeStringToFile(files[2], entry.replaceAll(
+                "\"categories\":\\[[^\\]]*\\]", "\"categories\":[1,null]"),
+                "UTF-8");
+
+        // corrupt entries are misses: the pages are downloaded again
+        WikipediaCache other = new WikipediaCache(100,
+                WikipediaCache.DEFAULT_TTL, directory);
+        Map<String, Pair<List<String>, List<String>>> pages
+                = lookup(other, "Software", "Engineering", "Science");
+        assertEquals(0, other.getHitRate(), 0);
+        assertEquals(2, requests.get());
+        for (Pair<List<String>, List<String>> page : pages.values()) {
+            for (String category : page.getLeft()) {
+                assertTrue(category.startsWith("Category:"));
+            }
+        }
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright (C) 2016 Artificial Intelligence
+ * Laboratory @ University of Udine.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package it.uniud.ailab.dcore.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.apache.commons.io.FileUtils;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the {@link WikipediaGraphIndexBuilder} on small dumps with the layout
+ * of the link tables used before and after the introduction of the linktarget
+ * table.
+ *
+ * @author agent
+ */
+public class WikipediaGraphIndexBuilderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final String PAGE
+            = "CREATE TABLE `page` (\n"
+            + "  `page_id` int(8) unsigned NOT NULL AUTO_INCREMENT,\n"
+            + "  `page_namespace` int(11) NOT NULL DEFAULT 0,\n"
+            + "  `page_title` varbinary(255) NOT NULL DEFAULT '',\n"
+            + "  `page_is_redirect` tinyint(1) unsigned NOT NULL DEFAULT 0,\n"
+            + "  PRIMARY KEY (`page_id`),\n"
+            + "  KEY `page_name_title` (`page_namespace`,`page_title`)\n"
+            + ") ENGINE=InnoDB DEFAULT CHARSET=binary;\n"
+            + "INSERT INTO `page` VALUES (1,0,'Software_engineering',0),"
+            + "(2,0,'Computer_science',0),(3,14,'Engineering',0),"
+            + "(4,0,'Barry_Boehm',0);\n";
+
+    private static final String OLD_CATEGORY_LINKS
+            = "CREATE TABLE `categorylinks` (\n"
+            + "  `cl_from` int(8) unsigned NOT NULL DEFAULT 0,\n"
+            + "  `cl_to` varbinary(255) NOT NULL DEFAULT '',\n"
+            + "  `cl_sortkey` varbinary(230) NOT NULL DEFAULT '',\n"
+            + "  PRIMARY KEY (`cl_from`,`cl_to`)\n"
+            + ") ENGINE=InnoDB DEFAULT CHARSET=binary;\n"
+            + "INSERT INTO `categorylinks` VALUES (1,'Engineering','SE'),"
+            + "(1,'Computer_science','SE'),(4,'Software_engineers','B'),"
+            + "(3,'Engineering','E');\n";
+
+    private static final String OLD_PAGE_LINKS
+            = "CREATE TABLE `pagelinks` (\n"
+            + "  `pl_from` int(8) unsigned NOT NULL DEFAULT 0,\n"
+            + "  `pl_namespace` int(11) NOT NULL DEFAULT 0,\n"
+            + "  `pl_title` varbinary(255) NOT NULL DEFAULT '',\n"
+            + "  `pl_from_namespace` int(11) NOT NULL DEFAULT 0,\n"
+            + "  PRIMARY KEY (`pl_from`,`pl_namespace`,`pl_title`)\n"
+            + ") ENGINE=InnoDB DEFAULT CHARSET=binary;\n"
+            + "INSERT INTO `pagelinks` VALUES (1,0,'Computer_science',0),"
+            + "(1,0,'Barry_Boehm',0),(1,0,'Missing_page',0),"
+            + "(4,0,'Software_engineering',0),(4,14,'Engineering',0),"
+            + "(2,0,'Software_engineering',0);\n";
+
+    private static final String NEW_CATEGORY_LINKS
+            = "CREATE TABLE `categorylinks` (\n"
+            + "  `cl_from` int(8) unsigned NOT NULL DEFAULT 0,\n"
+            + "  `cl_sortkey` varbinary(230) NOT NULL DEFAULT '',\n"
+            + "  `cl_collation_id` smallint(5) unsigned NOT NULL DEFAULT 0,\n"
+            + "  `cl_target_id` bigint(20) unsigned NOT NULL,\n"
+            + "  PRIMARY KEY (`cl_from`,`cl_target_id`)\n"
+            + ") ENGINE=InnoDB DEFAULT CHARSET=binary;\n"
+            + "INSERT INTO `categorylinks` VALUES (1,'SE',1,10),(1,'SE',1,11),"
+            + "(4,'B',1,12),(3,'E',1,10);\n";
+
+    private static final String NEW_PAGE_LINKS
+            = "CREATE TABLE `pagelinks` (\n"
+            + "  `pl_from` int(8) unsigned NOT NULL DEFAULT 0,\n"
+            + "  `pl_from_namespace` int(11) NOT NULL DEFAULT 0,\n"
+            + "  `pl_target_id` bigint(20) unsigned NOT NULL,\n"
+            + "  PRIMARY KEY (`pl_from`,`pl_target_id`)\n"
+            + ") ENGINE=InnoDB DEFAULT CHARSET=binary;\n"
+            + "INSERT INTO `pagelinks` VALUES (1,0,20),(1,0,21),(1,0,22),"
+            + "(4,0,23),(4,0,10),(2,0,23);\n";
+
+    private static final String LINK_TARGET
+            = "CREATE TABLE `linktarget` (\n"
+            + "  `lt_id` bigint(20) unsigned NOT NULL AUTO_INCREMENT,\n"
+            + "  `lt_namespace` int(11) NOT NULL,\n"
+            + "  `lt_title` varbinary(255) NOT NULL,\n"
+            + "  PRIMARY KEY (`lt_id`)\n"
+            + ") ENGINE=InnoDB DEFAULT CHARSET=binary;\n"
+            + "INSERT INTO `linktarget` VALUES (10,14,'Engineering'),"
+            + "(11,14,'Computer_science'),(12,14,'Software_engineers'),"
+            + "(20,0,'Computer_science'),(21,0,'Barry_Boehm'),"
+            + "(22,0,'Missing_page'),(23,0,'Software_engineering'),"
+            + "(24,14,'Unused_category');\n";
+
+    private static final String PAGE_PROPS
+            = "CREATE TABLE `page_props` (\n"
+            + "  `pp_page` int(10) unsigned NOT NULL,\n"
+            + "  `pp_propname` varbinary(60) NOT NULL,\n"
+            + "  `pp_value` blob NOT NULL,\n"
+            + "  `pp_sortkey` float DEFAULT NULL,\n"
+            + "  PRIMARY KEY (`pp_page`,`pp_propname`)\n"
+            + ") ENGINE=InnoDB DEFAULT CHARSET=binary;\n"
+            + "INSERT INTO `page_props` VALUES (1,'wikibase_item','Q80993',NULL),"
+            + "(3,'wikibase_item','Q11023',NULL),(5,'hiddencat','',NULL);\n";
+
+    /**
+     * The title of a hidden category, the page 5 of the page_props dump.
+     */
+    private static final String HIDDEN = "Articles_with_short_description";
+
+    /**
+     * Adds a row to the INSERT statement of a dump.
+     */
+    private static String addRow(String dump, String row) {
+        return dump.substring(0, dump.lastIndexOf(";\n")) + "," + row + ";\n";
+    }
+
+    private File write(String name, String content) throws IOException {
+        File f = new File(folder.getRoot(), name);
+        FileUtils.writeStringToFile(f, content, "UTF-8");
+        return f;
+    }
+
+    private static void assertGraph(WikipediaGraphIndex index) {
+        assertEquals(5, index.size());
+
+        Pair<List<String>, List<String>> page
+                = index.getCategoriesAndLinks("Software_engineering");
+        assertEquals(Arrays.asList("Engineering", "Computer science"),
+                page.getLeft());
+        assertEquals(Arrays.asList("Computer science", "Barry Boehm"),
+                page.getRight());
+
+        page = index.getCategoriesAndLinks("Barry Boehm");
+        assertEquals(Arrays.asList("Software engineers"), page.getLeft());
+        assertEquals(Arrays.asList("Software engineering"), page.getRight());
+
+        page = index.getCategoriesAndLinks("Computer science");
+        assertEquals(Collections.emptyList(), page.getLeft());
+        assertEquals(Arrays.asList("Software engineering"), page.getRight());
+
+        assertEquals(-1, index.getId("Unused category"));
+        assertEquals(-1, index.getId("Missing page"));
+    }
+
+    @Test
+    public void testOldLayout() throws IOException {
+        File output = new File(folder.getRoot(), "old.idx");
+        WikipediaGraphIndexBuilder.build(write("page.sql", PAGE),
+                write("categorylinks.sql", OLD_CATEGORY_LINKS),
+                write("pagelinks.sql", OLD_PAGE_LINKS), output);
+        assertGraph(new WikipediaGraphIndex(output));
+    }
+
+    @Test
+    public void testLinkTargetLayout() throws IOException {
+        File output = new File(folder.getRoot(), "new.idx");
+        WikipediaGraphIndexBuilder.build(write("page.sql", PAGE),
+                write("categorylinks.sql", NEW_CATEGORY_LINKS),
+                write("pagelinks.sql", NEW_PAGE_LINKS),
+                write("linktarget.sql", LINK_TARGET), output);
+        assertGraph(new WikipediaGraphIndex(output));
+    }
+
+    @Test
+    public void testMixedLayouts() throws IOException {
+        File output = new File(folder.getRoot(), "mixed.idx");
+        WikipediaGraphIndexBuilder.build(write("page.sql", PAGE),
+                write("categorylinks.sql", OLD_CATEGORY_LINKS),
+                write("pagelinks.sql", NEW_PAGE_LINKS),
+                write("linktarget.sql", LINK_TARGET), output);
+        assertGraph(new WikipediaGraphIndex(output));
+    }
+
+    @Test
+    public void testHiddenCategories() throws IOException {
+        File pages = write("page.sql", addRow(PAGE, "(5,14,'" + HIDDEN + "',0)"));
+        File pageProps = write("page_props.sql", PAGE_PROPS);
+
+        // the old layout, with the hidden category kept without page_props
+        File categoryLinks = write("categorylinks.sql",
+                addRow(OLD_CATEGORY_LINKS, "(1,'" + HIDDEN + "','SE')"));
+        File output = new File(folder.getRoot(), "hidden.idx");
+        WikipediaGraphIndexBuilder.build(pages, categoryLinks,
+                write("pagelinks.sql", OLD_PAGE_LINKS), null, pageProps,
+                output);
+        assertGraph(new WikipediaGraphIndex(output));
+        assertEquals(-1, new WikipediaGraphIndex(output).getId(HIDDEN));
+
+        output = new File(folder.getRoot(), "kept.idx");
+        WikipediaGraphIndexBuilder.build(pages, categoryLinks,
+                write("pagelinks.sql", OLD_PAGE_LINKS), output);
+        assertEquals(Arrays.asList("Engineering", "Computer science",
+                "Articles with short description"),
+                new WikipediaGraphIndex(output)
+                        .getCategoriesAndLinks("Software engineering")
+                        .getLeft());
+
+        // the linktarget layout
+        output = new File(folder.getRoot(), "hidden-new.idx");
+        WikipediaGraphIndexBuilder.build(pages,
+                write("categorylinks.sql",
+                        addRow(NEW_CATEGORY_LINKS, "(1,'SE',1,13)")),
+                write("pagelinks.sql", NEW_PAGE_LINKS),
+                write("linktarget.sql",
+                        addRow(LINK_TARGET, "(13,14,'" + HIDDEN + "')")),
+                pageProps, output);
+        assertGraph(new WikipediaGraphIndex(output));
+        assertEquals(-1, new WikipediaGraphIndex(output).getId(HIDDEN));
+    }
+
+    @Test
+    public void testMissingLinkTargets() throws IOException {
+        try {
+            WikipediaGraphIndexBuilder.build(write("page.sql", PAGE),
+                    write("categorylinks.sql", NEW_CATEGORY_LINKS),
+                    write("pagelinks.sql", NEW_PAGE_LINKS),
+                    new File(folder.getRoot(), "out.idx"));
+            fail("The linktarget dump is required");
+        } catch (IOException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().contains("linktarget"));
+        }
+    }
+
+    @Test
+    public void testUnsupportedLayout() throws IOException {
+        try {
+            WikipediaGraphIndexBuilder.build(write("page.sql", PAGE),
+                    write("categorylinks.sql", OLD_CATEGORY_LINKS),
+                    write("pagelinks.sql", OLD_PAGE_LINKS.replace(
+                            "pl_title", "pl_something")),
+                    new File(folder.getRoot(), "out.idx"));
+            fail("The layout of the pagelinks dump is not supported");
+        } catch (IOException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().contains("pl_target_id"));
+        }
+
+        try {
+            WikipediaGraphIndexBuilder.build(write("page.sql", PAGE),
+                    write("categorylinks.sql",
+                            "INSERT INTO `categorylinks` VALUES (1,'A');\n"),
+                    write("pagelinks.sql", OLD_PAGE_LINKS),
+                    new File(folder.getRoot(), "out.idx"));
+            fail("The dumps must declare their tables");
+        } catch (IOException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().contains("CREATE TABLE"));
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2016 Artificial Intelligence
+ * Laboratory @ University of Udine.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package it.uniud.ailab.dcore.wrappers.external;
+
+import com.cybozu.labs.langdetect.LangDetectException;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Checks the sampled detection of the {@link CybozuLanguageDetectionService}
+ * on a document whose first window is in a different language from the
+ * rest.
+ *
+ * @author agent
+ */
+public class CybozuLanguageDetectionServiceTest {
+
+    private static final List<String> LANGUAGES = Arrays.asList("en", "it");
+
+    private static final String ENGLISH
+            = "The library of the university is open every day of the week, "
+            + "and students can borrow up to ten books for a period of one "
+            + "month. The reading rooms are quiet and well lit, with many "
+            + "desks and comfortable chairs. A new collection of historical "
+            + "maps was donated last year by a local family. ";
+
+    private static final String ITALIAN
+            = "La biblioteca dell'università è aperta tutti i giorni della "
+            + "settimana, e gli studenti possono prendere in prestito fino a "
+            + "dieci libri per un mese. Le sale di lettura sono silenziose e "
+            + "ben illuminate, con molti tavoli e sedie comode. L'anno scorso "
+            + "una famiglia della città ha donato una collezione di mappe "
+            + "storiche. ";
+
+    /**
+     * An English window followed by two Italian ones.
+     */
+    private static final String MIXED = ENGLISH + ITALIAN + ITALIAN + ITALIAN
+            + ITALIAN + ITALIAN;
+
+    private static final int SAMPLE_LENGTH = 3 * ENGLISH.length();
+
+    @BeforeClass
+    public static void loadProfiles() throws LangDetectException {
+        CybozuLanguageDetectionService.load(LANGUAGES);
+    }
+
+    @Test
+    public void testAllWindowsAreRead() throws LangDetectException {
+        // a confidence that can't be reached, so that every window is read:
+        // the majority of the sample is Italian
+        assertEquals("it", CybozuLanguageDetectionService.detect(
+                MIXED, LANGUAGES, SAMPLE_LENGTH, 3, 2.0));
+    }
+
+    @Test
+    public void testEarlyTermination() throws LangDetectException {
+        // the first window alone is enough for a low confidence
+        assertEquals("en", CybozuLanguageDetectionService.detect(
+                MIXED, LANGUAGES, SAMPLE_LENGTH, 3, 0.5));
+    }
+
+    @Test
+    public void testWholeText() throws LangDetectException {
+        assertEquals("it", CybozuLanguageDetectionService.detect(
+                MIXED, LANGUAGES));
+        assertEquals("en", CybozuLanguageDetectionService.detect(
+                ENGLISH, LANGUAGES, SAMPLE_LENGTH, 3, 0.99));
+    }
+}